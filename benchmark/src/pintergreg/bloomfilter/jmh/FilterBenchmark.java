@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pintergreg.bloomfilter.A2BloomFilter;
+import pintergreg.bloomfilter.AbstractBloomFilter;
+import pintergreg.bloomfilter.BloomFilter;
+import pintergreg.bloomfilter.Clock;
+import pintergreg.bloomfilter.ExtendedBloomFilter;
+import pintergreg.bloomfilter.ScalableBloomFilter;
+
+/**
+ * JMH benchmark of adding and searching items, for every combination of
+ *
+ * - filter: BloomFilter, ExtendedBloomFilter, ScalableBloomFilter with 1, 4
+ * and 16 layers of the same size and A2BloomFilter,
+ *
+ * - items: the number of stored items, 10 thousand (12 KB, in L1/L2 cache),
+ * 1 million (1.2 MB, in the last level cache) and 50 million (60 MB, much
+ * larger than the last level cache), at 0.01 false positive probability,
+ *
+ * - key type: Long, 16 byte and 256 byte arrays.
+ *
+ * The search benchmark reads one filled filter from every thread, half of the
+ * searched items are stored. The add benchmark writes a separate filter per
+ * thread (the filters are not thread-safe), it is recreated empty before every
+ * iteration; only the newest layer of a Scalable Bloom Filter is written, so
+ * the number of layers does not change the cost of adding.
+ *
+ * The number of threads is given on the command line (-t), the build.xml
+ * target "jmh" runs the suite with 1, 2 and 4 threads.
+ *
+ * @author Gergő Pintér
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class FilterBenchmark {
+
+    static final double P = 0.01;
+    // one hour in milliseconds, the A2 Bloom Filters do not switch during a run
+    static final int TTL = 3600000;
+
+    /**
+     * The parameters, the key set and the filled filter searched by every
+     * thread
+     */
+    @State(Scope.Benchmark)
+    public static class Shared {
+
+        @Param({"bloom", "extended", "scalable1", "scalable4", "scalable16", "a2"})
+        public String filter;
+
+        @Param({"10000", "1000000", "50000000"})
+        public long items;
+
+        @Param({"long", "bytes16", "bytes256"})
+        public String keyType;
+
+        Keys keys;
+        AbstractBloomFilter bf;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            keys = Keys.create(keyType, items);
+            bf = create(filter, items);
+            keys.fill(bf, items);
+            if (bf instanceof ScalableBloomFilter && ((ScalableBloomFilter) bf).getSize() != layers(filter)) {
+                throw new IllegalStateException("Scalable Bloom Filter with " + ((ScalableBloomFilter) bf).getSize()
+                        + " layers instead of " + layers(filter));
+            }
+        }
+    }
+
+    /**
+     * The position of a thread in the searched items
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            // the threads do not read the same items at the same time
+            next = (int) (Thread.currentThread().getId() * 0x9E3779B9L);
+        }
+    }
+
+    /**
+     * The filter of a thread for the add benchmark, empty at the beginning of
+     * every iteration
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+
+        AbstractBloomFilter bf;
+
+        @Setup(Level.Iteration)
+        public void setUp(Shared shared) {
+            bf = create(shared.filter, shared.items);
+        }
+    }
+
+    @Benchmark
+    public void add(Shared shared, Writer writer, Cursor cursor) {
+        shared.keys.add(writer.bf, cursor.next++ & Keys.MASK);
+    }
+
+    @Benchmark
+    public boolean include(Shared shared, Cursor cursor) {
+        return shared.keys.include(shared.bf, cursor.next++ & Keys.MASK);
+    }
+
+    /**
+     * Creates an empty filter for the given number of items
+     */
+    static AbstractBloomFilter create(String filter, long items) {
+        switch (filter) {
+            case "bloom":
+                return new BloomFilter(items, P);
+            case "extended":
+                return new ExtendedBloomFilter(items, P);
+            case "scalable1":
+            case "scalable4":
+            case "scalable16":
+                return scalable(items, layers(filter));
+            case "a2":
+                return new A2BloomFilter(items, P, TTL, Clock.SYSTEM);
+            default:
+                throw new IllegalArgumentException("Unknown filter: " + filter);
+        }
+    }
+
+    private static int layers(String filter) {
+        return filter.startsWith("scalable") ? Integer.parseInt(filter.substring(8)) : 0;
+    }
+
+    /**
+     * Scalable Bloom Filter with layers of the same size, the given number of
+     * items fill the given number of layers. The capacity of a layer is
+     * rounded down by the filter, so the layers are created 10% larger than
+     * items / layers.
+     */
+    private static ScalableBloomFilter scalable(long items, int layers) {
+        long n = (long) Math.ceil(items * 1.1 / layers);
+        return new ScalableBloomFilter(n, P, 1, 1, false);
+    }
+
+}
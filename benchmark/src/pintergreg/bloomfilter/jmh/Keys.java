@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter.jmh;
+
+import java.util.Random;
+import pintergreg.bloomfilter.AbstractBloomFilter;
+
+/**
+ * Items of the benchmarks. The i-th stored item is derived from i, so a
+ * filter of any size can be filled without keeping its items in memory. The
+ * searched items are a fixed pool of 2^16 items drawn from twice as many
+ * items as stored, so about half of them are in the filter.
+ *
+ * @author Gergő Pintér
+ */
+abstract class Keys {
+
+    static final int POOL_SIZE = 1 << 16;
+    static final int MASK = POOL_SIZE - 1;
+
+    /**
+     * @param type - "long", "bytes16" or "bytes256"
+     * @param items - the number of stored items
+     * @return the items of the given type
+     */
+    static Keys create(String type, long items) {
+        switch (type) {
+            case "long":
+                return new LongKeys(items);
+            case "bytes16":
+                return new ByteKeys(items, 16);
+            case "bytes256":
+                return new ByteKeys(items, 256);
+            default:
+                throw new IllegalArgumentException("Unknown key type: " + type);
+        }
+    }
+
+    /**
+     * Adds the first count items to the filter
+     */
+    abstract void fill(AbstractBloomFilter bf, long count);
+
+    /**
+     * Adds the j-th item of the pool to the filter
+     */
+    abstract void add(AbstractBloomFilter bf, int j);
+
+    /**
+     * Searches the j-th item of the pool in the filter
+     */
+    abstract boolean include(AbstractBloomFilter bf, int j);
+
+    /**
+     * Indexes of the items of the pool, from 0 to 2 × items - 1
+     */
+    static long[] poolIndexes(long items) {
+        Random rand = new Random(42);
+        long[] result = new long[POOL_SIZE];
+        for (int j = 0; j < POOL_SIZE; j++) {
+            result[j] = (rand.nextLong() & Long.MAX_VALUE) % (2 * items);
+        }
+        return result;
+    }
+
+    /**
+     * The i-th item, the finalizer of SplitMix64
+     */
+    static long key(long i) {
+        long z = i * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Long items
+     */
+    static final class LongKeys extends Keys {
+
+        private final long[] pool;
+
+        LongKeys(long items) {
+            long[] indexes = poolIndexes(items);
+            pool = new long[POOL_SIZE];
+            for (int j = 0; j < POOL_SIZE; j++) {
+                pool[j] = key(indexes[j]);
+            }
+        }
+
+        @Override
+        void fill(AbstractBloomFilter bf, long count) {
+            for (long i = 0; i < count; i++) {
+                bf.add(key(i));
+            }
+        }
+
+        @Override
+        void add(AbstractBloomFilter bf, int j) {
+            bf.add(pool[j]);
+        }
+
+        @Override
+        boolean include(AbstractBloomFilter bf, int j) {
+            return bf.include(pool[j]);
+        }
+    }
+
+    /**
+     * Byte array items of the same length, the first 8 bytes are the Long
+     * item, the others are the same in every item
+     */
+    static final class ByteKeys extends Keys {
+
+        private final int length;
+        private final byte[][] pool;
+
+        ByteKeys(long items, int length) {
+            this.length = length;
+            long[] indexes = poolIndexes(items);
+            pool = new byte[POOL_SIZE][];
+            for (int j = 0; j < POOL_SIZE; j++) {
+                pool[j] = bytes(indexes[j], new byte[length]);
+            }
+        }
+
+        private static byte[] bytes(long i, byte[] result) {
+            long k = key(i);
+            for (int b = 0; b < 8; b++) {
+                result[b] = (byte) (k >>> (56 - 8 * b));
+            }
+            for (int b = 8; b < result.length; b++) {
+                result[b] = (byte) b;
+            }
+            return result;
+        }
+
+        @Override
+        void fill(AbstractBloomFilter bf, long count) {
+            byte[] buffer = new byte[length];
+            for (long i = 0; i < count; i++) {
+                bf.add(bytes(i, buffer));
+            }
+        }
+
+        @Override
+        void add(AbstractBloomFilter bf, int j) {
+            bf.add(pool[j]);
+        }
+
+        @Override
+        boolean include(AbstractBloomFilter bf, int j) {
+            return bf.include(pool[j]);
+        }
+    }
+
+}
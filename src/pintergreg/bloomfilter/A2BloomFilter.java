@@ -15,10 +15,14 @@
  */
 package pintergreg.bloomfilter;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import static java.lang.Thread.sleep;
-import java.nio.ByteBuffer;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A2 Bloom Filter consists of two @{link ScalableBloomFilter}. Elements added
@@ -27,18 +31,55 @@ import java.util.concurrent.atomic.AtomicInteger;
  * time and the new active is cleared. In this way an element is surely in the
  * Bloom Filter at least for the specified time.
  *
+ * The switch can be driven two ways. The (n, p, ttl) constructor starts a timer
+ * thread for the filter. The constructor with a @{link Clock} starts no
+ * thread: the clock is checked by every add and search, and the missed
+ * switches are done before the operation, so any number of filters can age
+ * without threads. In both modes the switches follow a fixed schedule, the
+ * time of the clearing does not delay the next switch.
+ *
+ * A switch never clears a Bloom Filter in place: it publishes a new, immutable
+ * pair of generations with an already zeroed spare as the active one, and the
+ * expired generation is zeroed by a shared background thread to become the
+ * next spare. Adds and searches register on the pair they read, and the
+ * cleaner waits until no operation uses the retired pair before it clears
+ * the expired generation. So they never see a partially cleared generation,
+ * they never write into a recycled one, and they are not slowed down by the
+ * switch.
+ *
  * @author Gergő Pintér
  */
-public class A2BloomFilter implements Serializable {
+public class A2BloomFilter extends AbstractBloomFilter implements Serializable {
 
     private static final long serialVersionUID = 1L;
-    private ScalableBloomFilter[] bloomFilters = new ScalableBloomFilter[2];
-    private final int m;
-    private final int k;
-    private final int ttl;
-    private boolean stop = false;
-    private AtomicInteger active = new AtomicInteger(0);
-    private Thread thread;
+    // package-private fields are read by BloomFilterFormat
+    volatile Generations generations;
+    final long m;
+    final int k;
+    final int ttl;
+    private volatile boolean stop = false;
+    // zeroed generations to be activated by the next switches, a slot is null
+    // while its generation is being cleared; two slots, because a switch after
+    // more than a Time To Live expires both generations at once
+    private transient AtomicReferenceArray<ScalableBloomFilter> spares =
+            new AtomicReferenceArray<ScalableBloomFilter>(2);
+
+    // the ways of switching the active Bloom Filter
+    static final int NO_ROTATION = 0;
+    static final int TIMER_THREAD = 1;
+    static final int CLOCK_CHECK = 2;
+
+    final int rotation;
+    // the clock is not serialized, the system clock is used after reading
+    private transient Clock clock = Clock.SYSTEM;
+    // clock time of the next switch in nanoseconds
+    private volatile long nextSwitch;
+    private transient Thread thread;
+
+    // statistics of the switches for FilterMetrics, they are not serialized
+    private transient volatile long rotations;
+    private transient volatile long lastRotationNanos;
+    private transient volatile long lastClearNanos;
 
     /**
      * Create A2 Bloom Filter based on bitvector size, the numbers of hash
@@ -49,16 +90,34 @@ public class A2BloomFilter implements Serializable {
      * @param ttl - time to live, it determines in milliseconds at least how
      * long the elements need to be alive, be in the Bloom Filter. Elements are
      * in the Bloom Filter at most 2×ttl time.
+     * @throws IllegalArgumentException if ttl is not positive
      *
      * It is not recommended to use this constructor, unless you really know
      * what you do
      */
-    public A2BloomFilter(int m, int k, int ttl) {
+    public A2BloomFilter(long m, int k, int ttl) {
+        this(m, k, ttl, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create A2 Bloom Filter based on bitvector size, the numbers of hash
+     * functions, the time to live parameter and the hash strategy of both
+     * generations
+     *
+     * @param m - size of the bitvector
+     * @param k - number of the hash functions
+     * @param ttl - time to live in milliseconds
+     * @param hashStrategy - the hash function of the keys
+     * @throws IllegalArgumentException if ttl is not positive
+     */
+    public A2BloomFilter(long m, int k, int ttl, HashStrategy hashStrategy) {
+        super(hashStrategy);
+        checkTtl(ttl);
         this.m = m;
         this.k = k;
         this.ttl = ttl;
-        bloomFilters[0] = new ScalableBloomFilter(this.m, this.k);
-        bloomFilters[1] = new ScalableBloomFilter(this.m, this.k);
+        this.rotation = NO_ROTATION;
+        this.generations = new Generations(new ScalableBloomFilter[]{newGeneration(), newGeneration()}, 0);
     }
 
     /**
@@ -70,113 +129,458 @@ public class A2BloomFilter implements Serializable {
      * @param ttl - time to live, it determines in milliseconds at least how
      * long the elements need to be alive, be in the Bloom Filter. Elements are
      * in the Bloom Filter at most 2×ttl time.
+     * @throws IllegalArgumentException if ttl is not positive
+     */
+    public A2BloomFilter(long n, double p, int ttl) {
+        this(n, p, ttl, TIMER_THREAD, Clock.SYSTEM, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create A2 Bloom Filter based on item number, false positive
+     * probability, the time to live parameter and the hash strategy of both
+     * generations
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     * @param ttl - time to live in milliseconds
+     * @param hashStrategy - the hash function of the keys
+     * @throws IllegalArgumentException if ttl is not positive
+     */
+    public A2BloomFilter(long n, double p, int ttl, HashStrategy hashStrategy) {
+        this(n, p, ttl, TIMER_THREAD, Clock.SYSTEM, hashStrategy);
+    }
+
+    /**
+     * Create A2 Bloom Filter based on item number, false positive probability
+     * and the time to live parameter, that ages its elements without a thread.
+     * The active Bloom Filter is switched by the adds and searches when they
+     * find that the time to live passed on the given clock.
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     * @param ttl - time to live, it determines in milliseconds at least how
+     * long the elements need to be alive, be in the Bloom Filter. Elements are
+     * in the Bloom Filter at most 2×ttl time.
+     * @param clock - the source of time, @{link Clock#SYSTEM} or a clock of a
+     * test
+     * @throws IllegalArgumentException if ttl is not positive
+     */
+    public A2BloomFilter(long n, double p, int ttl, Clock clock) {
+        this(n, p, ttl, CLOCK_CHECK, clock, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create A2 Bloom Filter aged by clock checks, like
+     * @{link #A2BloomFilter(long, double, int, Clock)}, with the given hash
+     * strategy of both generations
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     * @param ttl - time to live in milliseconds
+     * @param clock - the source of time
+     * @param hashStrategy - the hash function of the keys
+     * @throws IllegalArgumentException if ttl is not positive
      */
-    public A2BloomFilter(int n, double p, int ttl) {
+    public A2BloomFilter(long n, double p, int ttl, Clock clock, HashStrategy hashStrategy) {
+        this(n, p, ttl, CLOCK_CHECK, clock, hashStrategy);
+    }
+
+    private A2BloomFilter(long n, double p, int ttl, int rotation, Clock clock, HashStrategy hashStrategy) {
+        super(hashStrategy);
+        checkTtl(ttl);
         this.ttl = ttl;
+        this.rotation = rotation;
+        this.clock = clock;
         // the user given p should be valid for the two Bloom Filter, 
         // so q means the false posizitive probablity for one Bloom Filter 
         double q = 1 - Math.sqrt(1 - p);
         this.m = BloomFilterUtils.determineSize(n, q);
         this.k = BloomFilterUtils.determineHashNumber(this.m, n);
 
-        bloomFilters[0] = new ScalableBloomFilter(this.m, this.k);
-        bloomFilters[1] = new ScalableBloomFilter(this.m, this.k);
+        this.generations = new Generations(new ScalableBloomFilter[]{newGeneration(), newGeneration()}, 0);
+        this.spares.set(0, newGeneration());
 
-        startTimer();
+        startTimer(ttl);
     }
 
     /**
-     * Add item to A2 Bloom Filter
+     * Create A2 Bloom Filter from its stored state, used by
+     * @{link BloomFilterFormat}
      *
-     * @param key - an item to be added to the Bloom Filter
+     * @param rotation - the way of switching, the clock check mode uses the
+     * system clock
+     * @param elapsed - milliseconds passed since the last switch
+     */
+    A2BloomFilter(long m, int k, int ttl, ScalableBloomFilter[] bloomFilters, int active, int rotation, long elapsed) {
+        super(bloomFilters[0].hashStrategy);
+        this.m = m;
+        this.k = k;
+        this.ttl = ttl;
+        this.generations = new Generations(bloomFilters, active);
+        this.rotation = rotation;
+
+        if (rotation != NO_ROTATION) {
+            this.spares.set(0, newGeneration());
+            startTimer(Math.max(0, ttl - elapsed));
+        }
+    }
+
+    /**
+     * The switches are ttl apart, a zero period would never end
      */
-    public void add(byte[] key) {
-        bloomFilters[active.get()].add(key);
+    private static void checkTtl(int ttl) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("Time to live has to be positive: " + ttl);
+        }
     }
 
     /**
-     * Add item to A2 Bloom Filter
+     * Add item to A2 Bloom Filter based on its 64 bit hash value
      *
-     * @param key - a Long item to be added to the Bloom Filter
+     * @param hash - the 64 bit hash of the item
      */
-    public void add(long key) {
-        add(ByteBuffer.allocate(8).putLong(key).array());
+    @Override
+    protected void addHash(long hash) {
+        checkClock();
+        Generations current = enter();
+        try {
+            current.bloomFilters[current.active].addHash(hash);
+        } finally {
+            exit(current);
+        }
     }
 
     /**
-     * Search item in the A2 Bloom Filter
+     * Search item in the A2 Bloom Filter based on its 64 bit hash value
      *
-     * @param key - an item to be searched in the A2 Bloom Filter
+     * @param hash - the 64 bit hash of the item
      * @return True if either Bloom Filter contains the given item, False
      * otherwise
      */
-    public boolean include(byte[] key) {
-        // Calculate indexes only once, then uses the index-based search method
-        int[] indexes = BloomFilterUtils.multiHash(key, k, m);
-        return bloomFilters[0].include(indexes) || bloomFilters[1].include(indexes);
+    @Override
+    protected boolean includeHash(long hash) {
+        checkClock();
+        Generations current = enter();
+        try {
+            // The hash is calculated only once, both Bloom Filter derive the indexes from it
+            ScalableBloomFilter[] bloomFilters = current.bloomFilters;
+            return bloomFilters[0].includeHash(hash) || bloomFilters[1].includeHash(hash);
+        } finally {
+            exit(current);
+        }
     }
 
     /**
-     * Search item in the A2 Bloom Filter
+     * Add items to A2 Bloom Filter based on their 64 bit hash values
      *
-     * @param key - a Long item to be searched in the A2 Bloom Filter
-     * @return True if either Bloom Filter contains the given item, False
-     * otherwise
+     * @param hashes - the 64 bit hashes of the items
+     * @param count - the number of hashes to be used
+     */
+    @Override
+    protected void addHashes(long[] hashes, int count) {
+        checkClock();
+        Generations current = enter();
+        try {
+            current.bloomFilters[current.active].addHashes(hashes, count);
+        } finally {
+            exit(current);
+        }
+    }
+
+    /**
+     * Search items in the A2 Bloom Filter based on their 64 bit hash values,
+     * both Bloom Filter searches the whole batch at once
+     *
+     * @param hashes - the 64 bit hashes of the items
+     * @param count - the number of hashes to be used
+     * @param result - result[offset + j] is set to True if either Bloom Filter
+     * contains the j-th item, False otherwise
+     * @param offset - position of the first result
+     */
+    @Override
+    protected void includeHashes(long[] hashes, int count, boolean[] result, int offset) {
+        checkClock();
+        Generations current = enter();
+        try {
+            ScalableBloomFilter[] bloomFilters = current.bloomFilters;
+            boolean[] found = new boolean[count];
+            bloomFilters[0].includeHashes(hashes, count, result, offset);
+            bloomFilters[1].includeHashes(hashes, count, found, 0);
+            for (int j = 0; j < count; j++) {
+                result[offset + j] |= found[j];
+            }
+        } finally {
+            exit(current);
+        }
+    }
+
+    /**
+     * Registers the operation on the current pair of generations, it has to
+     * be unregistered by decrementing the users of the returned pair. If a
+     * switch published a new pair meanwhile, the registration is retried on
+     * it, so no operation registers on a retired pair after the cleaner found
+     * it unused.
+     *
+     * @return the pair of generations the operation has to use
      */
-    public boolean include(long key) {
-        return include(ByteBuffer.allocate(8).putLong(key).array());
+    Generations enter() {
+        while (true) {
+            Generations current = generations;
+            current.users.add(1);
+            if (current == generations) {
+                return current;
+            }
+            current.users.add(-1);
+        }
+    }
+
+    /**
+     * Unregisters the operation from the pair returned by @{link #enter()}
+     */
+    static void exit(Generations current) {
+        current.users.add(-1);
     }
 
     /* .......... TIMEING .......... */
     /**
-     * Starts the timer thread that ages the element according to the given Time
-     * To Live value
+     * Starts aging the elements according to the given Time To Live value,
+     * with a timer thread or with the clock checks
+     *
+     * @param delay - milliseconds until the first switch
      */
-    private void startTimer() {
-        thread = new TimerThread();
-        thread.setDaemon(true);
-        thread.start();
+    private void startTimer(long delay) {
+        nextSwitch = clock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        if (rotation == TIMER_THREAD) {
+            thread = new TimerThread();
+            thread.setDaemon(true);
+            thread.start();
+        }
     }
 
     /**
      * Stops the timer that ages the element according to the givel Time To Live
-     * value
+     * value, the elements are not switched out any more
      */
     public void stopTimer() {
         this.stop = true;
 
-        if (this.thread.isAlive()) {
+        if (this.thread != null && this.thread.isAlive()) {
             this.thread.interrupt();
-        } else {
         }
 
     }
 
     /**
-     * Switches between the two Bloom Filter
+     * Switches the active Bloom Filter if the time of the switch has come, used
+     * by the clock check mode. It costs a clock read and a volatile read.
+     */
+    private void checkClock() {
+        if (rotation == CLOCK_CHECK && !stop) {
+            long now = clock.nanoTime();
+            if (now - nextSwitch >= 0) {
+                rotate(now);
+            }
+        }
+    }
+
+    /**
+     * Does the switches that are due at the given time. If more than one Time
+     * To Live passed since the last switch, both Bloom Filters are cleared. The
+     * time of the next switch is counted from the schedule, not from now, so
+     * the switches do not drift.
+     *
+     * @param now - the current clock time in nanoseconds
+     */
+    private synchronized void rotate(long now) {
+        long due = now - nextSwitch;
+        if (due < 0) {
+            return; // done by an other thread
+        }
+        long start = System.nanoTime();
+        long period = TimeUnit.MILLISECONDS.toNanos(ttl);
+        long switches = due / period + 1;
+        if (switches == 1) {
+            switchActive();
+        } else {
+            // every element is older than the Time To Live
+            Generations current = generations;
+            ScalableBloomFilter[] next = new ScalableBloomFilter[2];
+            int nextActive = (int) ((current.active + switches) & 1);
+            next[nextActive] = takeSpare();
+            next[nextActive ^ 1] = takeSpare();
+            generations = new Generations(next, nextActive);
+            recycle(current, current.bloomFilters[0], current.bloomFilters[1]);
+        }
+        nextSwitch += switches * period;
+        rotations += switches;
+        lastRotationNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Switches between the two Bloom Filter. The expired one is replaced by the
+     * zeroed spare in a new pair of generations, then it is cleared in the
+     * background.
      */
     private void switchActive() {
-        int nextActive = this.active.get() == 0 ? 1 : 0;
-        // Next Bloom Filter needs to be cleared
-        this.bloomFilters[nextActive].clear();
-        this.active.set(nextActive);
+        Generations current = generations;
+        int nextActive = current.active ^ 1;
+        ScalableBloomFilter expired = current.bloomFilters[nextActive];
+        ScalableBloomFilter[] next = current.bloomFilters.clone();
+        next[nextActive] = takeSpare();
+        generations = new Generations(next, nextActive);
+        recycle(current, expired);
     }
 
     /**
-     * Timer Thread class that ages the element according to the given Time To
-     * Live value
+     * @return a zeroed spare, or a new Bloom Filter if the spares are still
+     * being cleared
+     */
+    private ScalableBloomFilter takeSpare() {
+        for (int i = 0; i < spares.length(); i++) {
+            ScalableBloomFilter result = spares.getAndSet(i, null);
+            if (result != null) {
+                return result;
+            }
+        }
+        return newGeneration();
+    }
+
+    /**
+     * Creates an empty generation with the hash strategy of the filter
+     */
+    private ScalableBloomFilter newGeneration() {
+        return new ScalableBloomFilter(this.m, this.k, false, this.hashStrategy);
+    }
+
+    /**
+     * Clears the expired generations on the cleaner thread and makes them
+     * spares. The cleaner first waits until no add or search uses the retired
+     * pair, the operations are short, so it only yields meanwhile. The pairs
+     * retired before are already unused: the cleaner is one thread and runs
+     * the tasks in the order of the switches.
+     *
+     * @param retired - the pair replaced by the switch
+     * @param expired - the generations of the retired pair that are not in
+     * the new one
+     */
+    private void recycle(final Generations retired, final ScalableBloomFilter... expired) {
+        Cleaner.EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (retired.users.sum() != 0) {
+                    Thread.yield();
+                }
+                for (ScalableBloomFilter generation : expired) {
+                    long start = System.nanoTime();
+                    generation.clear();
+                    lastClearNanos = System.nanoTime() - start;
+                    offerSpare(generation);
+                }
+            }
+        });
+    }
+
+    /**
+     * Puts the zeroed generation into a free spare slot, it is dropped if
+     * both slots are taken
+     */
+    private void offerSpare(ScalableBloomFilter generation) {
+        for (int i = 0; i < spares.length(); i++) {
+            if (spares.compareAndSet(i, null, generation)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return milliseconds passed since the last switch, -1 if the elements
+     * are not aged, used by @{link BloomFilterFormat}
+     */
+    long elapsed() {
+        if (rotation == NO_ROTATION || stop) {
+            return -1;
+        }
+        long remaining = TimeUnit.NANOSECONDS.toMillis(nextSwitch - clock.nanoTime());
+        return Math.min(ttl, Math.max(0, ttl - remaining));
+    }
+
+    /**
+     * The timer thread and the clock are not serialized, the system clock is
+     * used and the aging is started again with a full Time To Live period if
+     * it was running
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        clock = Clock.SYSTEM;
+        spares = new AtomicReferenceArray<ScalableBloomFilter>(2);
+        if (rotation != NO_ROTATION && !stop) {
+            spares.set(0, newGeneration());
+            startTimer(ttl);
+        }
+    }
+
+    /**
+     * Immutable pair of the two generations and the index of the active one,
+     * a switch publishes a new pair. The adds and searches using the pair are
+     * counted on a striped counter, so they do not contend on one cache line.
      */
-    private class TimerThread extends Thread implements Serializable {
+    static final class Generations implements Serializable {
 
         private static final long serialVersionUID = 1L;
 
+        final ScalableBloomFilter[] bloomFilters;
+        final int active;
+        // number of the operations using the pair
+        final transient StripedCounter users = new StripedCounter();
+
+        Generations(ScalableBloomFilter[] bloomFilters, int active) {
+            this.bloomFilters = bloomFilters;
+            this.active = active;
+        }
+
+        /**
+         * The user counter is not serialized, the pair is created again with
+         * a new one
+         */
+        private Object readResolve() {
+            return new Generations(bloomFilters, active);
+        }
+    }
+
+    /**
+     * The thread that clears the expired generations of every A2 Bloom Filter,
+     * it is started on first use
+     */
+    private static class Cleaner {
+
+        static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "A2BloomFilter cleaner");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Timer Thread class that ages the element according to the given Time To
+     * Live value. It sleeps until the scheduled time of the next switch.
+     */
+    private class TimerThread extends Thread {
+
         @Override
         public void run() {
 
             while (!stop) {
                 try {
-                    sleep(ttl);
-                    switchActive();
+                    long now = clock.nanoTime();
+                    long wait = nextSwitch - now;
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } else {
+                        rotate(now);
+                    }
                 } catch (InterruptedException ex) {
                     stop = true;
                 }
@@ -185,4 +589,96 @@ public class A2BloomFilter implements Serializable {
         }
     };
 
+    /* .......... CARDINALITY .......... */
+    /**
+     * Estimates the number of distinct items in both generations, see
+     * @{link ScalableBloomFilter#estimateCardinality()}. An item added again
+     * after a switch is in both generations and it is counted twice.
+     *
+     * @return the estimated number of distinct items
+     */
+    public double estimateCardinality() {
+        Generations current = enter();
+        try {
+            return current.bloomFilters[0].estimateCardinality() + current.bloomFilters[1].estimateCardinality();
+        } finally {
+            exit(current);
+        }
+    }
+
+    /**
+     * Estimates the number of distinct items in the active generation, the
+     * ones added since the last switch
+     *
+     * @return the estimated number of distinct items
+     */
+    public double estimateActiveCardinality() {
+        Generations current = enter();
+        try {
+            return current.bloomFilters[current.active].estimateCardinality();
+        } finally {
+            exit(current);
+        }
+    }
+
+    /* .......... METRICS .......... */
+    @Override
+    long bitCount() {
+        Generations current = enter();
+        try {
+            return current.bloomFilters[0].bitCount() + current.bloomFilters[1].bitCount();
+        } finally {
+            exit(current);
+        }
+    }
+
+    @Override
+    long bitSize() {
+        ScalableBloomFilter[] bloomFilters = generations.bloomFilters;
+        return bloomFilters[0].bitSize() + bloomFilters[1].bitSize();
+    }
+
+    /**
+     * @return 1 - (1 - the estimate of one generation) × (1 - the estimate of
+     * the other one)
+     */
+    @Override
+    double estimatedFalsePositiveProbability() {
+        Generations current = enter();
+        try {
+            return 1 - (1 - current.bloomFilters[0].estimatedFalsePositiveProbability())
+                    * (1 - current.bloomFilters[1].estimatedFalsePositiveProbability());
+        } finally {
+            exit(current);
+        }
+    }
+
+    @Override
+    int layerCount() {
+        ScalableBloomFilter[] bloomFilters = generations.bloomFilters;
+        return bloomFilters[0].layerCount() + bloomFilters[1].layerCount();
+    }
+
+    /**
+     * @return the number of switches since the filter was created or read
+     */
+    long rotations() {
+        return rotations;
+    }
+
+    /**
+     * @return the duration of the last switch in nanoseconds, without the
+     * clearing of the expired generation
+     */
+    long lastRotationNanos() {
+        return lastRotationNanos;
+    }
+
+    /**
+     * @return the duration of the last clearing of an expired generation in
+     * nanoseconds, done on the cleaner thread
+     */
+    long lastClearNanos() {
+        return lastClearNanos;
+    }
 }
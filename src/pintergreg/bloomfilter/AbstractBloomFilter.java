@@ -0,0 +1,277 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Common base of the Bloom Filter implementations that items can be added
+ * to. Every key type is hashed to a 64 bit value with the
+ * @{link HashStrategy} of the filter and the implementations work only with
+ * this value, so adding and searching items does not allocate any object.
+ *
+ * @author Gergő Pintér
+ */
+public abstract class AbstractBloomFilter extends AbstractFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create the filter with the default @{link HashStrategy#MURMUR_HASH_64A}
+     */
+    protected AbstractBloomFilter() {
+        super();
+    }
+
+    /**
+     * Create the filter with the given hash strategy
+     *
+     * @param hashStrategy - the hash function of the keys
+     */
+    protected AbstractBloomFilter(HashStrategy hashStrategy) {
+        super(hashStrategy);
+    }
+
+    /**
+     * Add item to the Bloom Filter based on its 64 bit hash value
+     *
+     * @param hash - the 64 bit hash of the item
+     */
+    protected abstract void addHash(long hash);
+
+    /**
+     * Add item to the Bloom Filter based on its 64 bit hash value and report
+     * whether it was new. By default it searches the item before adding it,
+     * the implementations can tell it from the changed bits instead.
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if the filter changed, so the item was surely not in it
+     * before, False otherwise
+     */
+    protected boolean putHash(long hash) {
+        boolean absent = !includeHash(hash);
+        addHash(hash);
+        return absent;
+    }
+
+    /**
+     * Add items to the Bloom Filter based on their 64 bit hash values. The
+     * implementations can override it to overlap the memory accesses of the
+     * items.
+     *
+     * @param hashes - the 64 bit hashes of the items
+     * @param count - the number of hashes to be used from the beginning of the
+     * array
+     */
+    protected void addHashes(long[] hashes, int count) {
+        for (int j = 0; j < count; j++) {
+            addHash(hashes[j]);
+        }
+    }
+
+    /**
+     * Adds the item through the metrics if they are enabled
+     */
+    private void addKey(long hash) {
+        FilterMetrics current = metrics;
+        if (current == null) {
+            addHash(hash);
+        } else {
+            current.add(this, hash);
+        }
+    }
+
+    /**
+     * Puts the item through the metrics if they are enabled
+     */
+    private boolean putKey(long hash) {
+        FilterMetrics current = metrics;
+        return current == null ? putHash(hash) : current.put(this, hash);
+    }
+
+    /**
+     * Add item to Bloom Filter
+     *
+     * @param key - an item to be added to the Bloom Filter
+     */
+    public void add(byte[] key) {
+        addKey(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Add item to Bloom Filter
+     *
+     * @param key - array containing the item to be added to the Bloom Filter
+     * @param offset - the first byte of the item
+     * @param length - the number of bytes of the item
+     */
+    public void add(byte[] key, int offset, int length) {
+        addKey(this.hashStrategy.hash(key, offset, length));
+    }
+
+    /**
+     * Add item to Bloom Filter
+     *
+     * @param key - the remaining bytes of the buffer are added to the Bloom
+     * Filter, the position of the buffer is not changed
+     */
+    public void add(ByteBuffer key) {
+        addKey(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Add item to Bloom Filter
+     *
+     * @param key - a character sequence to be added to the Bloom Filter, it is
+     * handled as its UTF-8 representation
+     */
+    public void add(CharSequence key) {
+        addKey(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Add item to Bloom Filter
+     *
+     * @param key - a Long item to be added to the Bloom Filter
+     */
+    public void add(long key) {
+        addKey(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Add item to Bloom Filter
+     *
+     * @param key - an Integer item to be added to the Bloom Filter
+     */
+    public void add(int key) {
+        addKey(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Add item to Bloom Filter and report whether the filter changed. A False
+     * result means that the item was already in the filter or it was a false
+     * positive, the filters counting their items do not count it again.
+     *
+     * @param key - an item to be added to the Bloom Filter
+     * @return True if the filter changed, False otherwise
+     */
+    public boolean put(byte[] key) {
+        return putKey(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Add item to Bloom Filter and report whether the filter changed, see
+     * @{link #put(byte[])}
+     *
+     * @param key - array containing the item to be added to the Bloom Filter
+     * @param offset - the first byte of the item
+     * @param length - the number of bytes of the item
+     * @return True if the filter changed, False otherwise
+     */
+    public boolean put(byte[] key, int offset, int length) {
+        return putKey(this.hashStrategy.hash(key, offset, length));
+    }
+
+    /**
+     * Add item to Bloom Filter and report whether the filter changed, see
+     * @{link #put(byte[])}
+     *
+     * @param key - the remaining bytes of the buffer are added to the Bloom
+     * Filter, the position of the buffer is not changed
+     * @return True if the filter changed, False otherwise
+     */
+    public boolean put(ByteBuffer key) {
+        return putKey(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Add item to Bloom Filter and report whether the filter changed, see
+     * @{link #put(byte[])}
+     *
+     * @param key - a character sequence to be added to the Bloom Filter, it is
+     * handled as its UTF-8 representation
+     * @return True if the filter changed, False otherwise
+     */
+    public boolean put(CharSequence key) {
+        return putKey(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Add item to Bloom Filter and report whether the filter changed, see
+     * @{link #put(byte[])}
+     *
+     * @param key - a Long item to be added to the Bloom Filter
+     * @return True if the filter changed, False otherwise
+     */
+    public boolean put(long key) {
+        return putKey(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Add item to Bloom Filter and report whether the filter changed, see
+     * @{link #put(byte[])}
+     *
+     * @param key - an Integer item to be added to the Bloom Filter
+     * @return True if the filter changed, False otherwise
+     */
+    public boolean put(int key) {
+        return putKey(this.hashStrategy.hash(key));
+    }
+
+    /* .......... BATCH OPERATIONS .......... */
+    /**
+     * Add items to the Bloom Filter. The items are hashed in batches, then
+     * the batch is added at once.
+     *
+     * @param keys - Long items to be added to the Bloom Filter
+     */
+    public void addAll(long[] keys) {
+        long[] hashes = new long[Math.min(BATCH_SIZE, keys.length)];
+        for (int from = 0; from < keys.length; from += BATCH_SIZE) {
+            int count = Math.min(BATCH_SIZE, keys.length - from);
+            for (int j = 0; j < count; j++) {
+                hashes[j] = this.hashStrategy.hash(keys[from + j]);
+            }
+            addHashes(hashes, count);
+        }
+        FilterMetrics current = metrics;
+        if (current != null) {
+            current.addBatch(keys.length);
+        }
+    }
+
+    /**
+     * Add items to the Bloom Filter. The items are hashed in batches, then
+     * the batch is added at once.
+     *
+     * @param keys - items to be added to the Bloom Filter
+     */
+    public void addAll(byte[][] keys) {
+        long[] hashes = new long[Math.min(BATCH_SIZE, keys.length)];
+        for (int from = 0; from < keys.length; from += BATCH_SIZE) {
+            int count = Math.min(BATCH_SIZE, keys.length - from);
+            for (int j = 0; j < count; j++) {
+                hashes[j] = this.hashStrategy.hash(keys[from + j]);
+            }
+            addHashes(hashes, count);
+        }
+        FilterMetrics current = metrics;
+        if (current != null) {
+            current.addBatch(keys.length);
+        }
+    }
+}
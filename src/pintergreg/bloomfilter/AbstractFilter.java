@@ -0,0 +1,344 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import javax.management.JMException;
+
+/**
+ * Common base of the filters that can be searched. Every key type is hashed
+ * to a 64 bit value with the @{link HashStrategy} of the filter and the
+ * implementations work only with this value, so searching items does not
+ * allocate any object. The filters that can be changed extend
+ * @{link AbstractBloomFilter}, an immutable filter like
+ * @{link BinaryFuseFilter} has no add methods at all.
+ *
+ * @author Gergő Pintér
+ */
+public abstract class AbstractFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // number of keys hashed at once by the batch methods
+    static final int BATCH_SIZE = 1024;
+
+    protected final HashStrategy hashStrategy;
+
+    // null unless the metrics are enabled, they are not serialized; read by
+    // the add methods of AbstractBloomFilter
+    transient volatile FilterMetrics metrics;
+
+    /**
+     * Create the filter with the default @{link HashStrategy#MURMUR_HASH_64A}
+     */
+    protected AbstractFilter() {
+        this(HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create the filter with the given hash strategy
+     *
+     * @param hashStrategy - the hash function of the keys
+     */
+    protected AbstractFilter(HashStrategy hashStrategy) {
+        if (hashStrategy == null) {
+            throw new IllegalArgumentException("The hash strategy is null");
+        }
+        this.hashStrategy = hashStrategy;
+    }
+
+    /**
+     * @return the hash strategy the filter was built with
+     */
+    public HashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    /**
+     * Search item in the Bloom Filter based on its 64 bit hash value
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if Bloom Filter contains the given item, False otherwise
+     */
+    protected abstract boolean includeHash(long hash);
+
+    /**
+     * Search items in the Bloom Filter based on their 64 bit hash values. The
+     * implementations can override it to overlap the memory accesses of the
+     * items.
+     *
+     * @param hashes - the 64 bit hashes of the items
+     * @param count - the number of hashes to be used from the beginning of the
+     * array
+     * @param result - result[offset + j] is set to True if the j-th item is in
+     * the Bloom Filter, False otherwise
+     * @param offset - position of the first result
+     */
+    protected void includeHashes(long[] hashes, int count, boolean[] result, int offset) {
+        for (int j = 0; j < count; j++) {
+            result[offset + j] = includeHash(hashes[j]);
+        }
+    }
+
+    /**
+     * Searches the item through the metrics if they are enabled
+     */
+    private boolean includeKey(long hash) {
+        FilterMetrics current = metrics;
+        return current == null ? includeHash(hash) : current.include(hash);
+    }
+
+    /**
+     * Search item in the Bloom Filter
+     *
+     * @param key - an item to be searched in the Bloom Filter
+     * @return True if Bloom Filter contains the given item, False otherwise
+     */
+    public boolean include(byte[] key) {
+        return includeKey(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Search item in the Bloom Filter
+     *
+     * @param key - array containing the item to be searched in the Bloom Filter
+     * @param offset - the first byte of the item
+     * @param length - the number of bytes of the item
+     * @return True if Bloom Filter contains the given item, False otherwise
+     */
+    public boolean include(byte[] key, int offset, int length) {
+        return includeKey(this.hashStrategy.hash(key, offset, length));
+    }
+
+    /**
+     * Search item in the Bloom Filter
+     *
+     * @param key - the remaining bytes of the buffer are searched in the Bloom
+     * Filter, the position of the buffer is not changed
+     * @return True if Bloom Filter contains the given item, False otherwise
+     */
+    public boolean include(ByteBuffer key) {
+        return includeKey(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Search item in the Bloom Filter
+     *
+     * @param key - a character sequence to be searched in the Bloom Filter, it
+     * is handled as its UTF-8 representation
+     * @return True if Bloom Filter contains the given item, False otherwise
+     */
+    public boolean include(CharSequence key) {
+        return includeKey(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Search item in the Bloom Filter
+     *
+     * @param key - a Long item to be searched in the Bloom Filter
+     * @return True if Bloom Filter contains the given item, False otherwise
+     */
+    public boolean include(long key) {
+        return includeKey(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Search item in the Bloom Filter
+     *
+     * @param key - an Integer item to be searched in the Bloom Filter
+     * @return True if Bloom Filter contains the given item, False otherwise
+     */
+    public boolean include(int key) {
+        return includeKey(this.hashStrategy.hash(key));
+    }
+
+    /* .......... BATCH OPERATIONS .......... */
+    /**
+     * Search items in the Bloom Filter. The items are hashed in batches, then
+     * the batch is searched at once, so the memory accesses of the items can
+     * overlap.
+     *
+     * @param keys - Long items to be searched in the Bloom Filter
+     * @param result - result[j] is set to True if keys[j] is in the Bloom
+     * Filter, False otherwise, it has to be at least as long as keys
+     */
+    public void includeAll(long[] keys, boolean[] result) {
+        long[] hashes = new long[Math.min(BATCH_SIZE, keys.length)];
+        for (int from = 0; from < keys.length; from += BATCH_SIZE) {
+            int count = Math.min(BATCH_SIZE, keys.length - from);
+            for (int j = 0; j < count; j++) {
+                hashes[j] = this.hashStrategy.hash(keys[from + j]);
+            }
+            includeHashes(hashes, count, result, from);
+        }
+        FilterMetrics current = metrics;
+        if (current != null) {
+            current.includeBatch(result, 0, keys.length);
+        }
+    }
+
+    /**
+     * Search items in the Bloom Filter. The items are hashed in batches, then
+     * the batch is searched at once, so the memory accesses of the items can
+     * overlap.
+     *
+     * @param keys - items to be searched in the Bloom Filter
+     * @param result - result[j] is set to True if keys[j] is in the Bloom
+     * Filter, False otherwise, it has to be at least as long as keys
+     */
+    public void includeAll(byte[][] keys, boolean[] result) {
+        long[] hashes = new long[Math.min(BATCH_SIZE, keys.length)];
+        for (int from = 0; from < keys.length; from += BATCH_SIZE) {
+            int count = Math.min(BATCH_SIZE, keys.length - from);
+            for (int j = 0; j < count; j++) {
+                hashes[j] = this.hashStrategy.hash(keys[from + j]);
+            }
+            includeHashes(hashes, count, result, from);
+        }
+        FilterMetrics current = metrics;
+        if (current != null) {
+            current.includeBatch(result, 0, keys.length);
+        }
+    }
+
+    /**
+     * Search items in the Bloom Filter
+     *
+     * @param keys - Long items to be searched in the Bloom Filter
+     * @return bitmap of the results, bit j % 64 of word j / 64 is one if
+     * keys[j] is in the Bloom Filter
+     */
+    public long[] includeAll(long[] keys) {
+        boolean[] result = new boolean[keys.length];
+        includeAll(keys, result);
+        return toBitmap(result);
+    }
+
+    /**
+     * Search items in the Bloom Filter
+     *
+     * @param keys - items to be searched in the Bloom Filter
+     * @return bitmap of the results, bit j % 64 of word j / 64 is one if
+     * keys[j] is in the Bloom Filter
+     */
+    public long[] includeAll(byte[][] keys) {
+        boolean[] result = new boolean[keys.length];
+        includeAll(keys, result);
+        return toBitmap(result);
+    }
+
+    /**
+     * Packs the results into a bitmap, bit j % 64 of word j / 64 is result[j]
+     */
+    private static long[] toBitmap(boolean[] result) {
+        long[] bitmap = new long[(result.length + 63) >>> 6];
+        for (int j = 0; j < result.length; j++) {
+            if (result[j]) {
+                bitmap[j >>> 6] |= 1L << j;
+            }
+        }
+        return bitmap;
+    }
+
+    /* .......... METRICS .......... */
+    /**
+     * Starts collecting runtime metrics with the default sampling of the
+     * latencies. Without metrics an add or a search costs only a null check.
+     *
+     * @return the metrics of the filter, the same object if they are already
+     * enabled
+     */
+    public FilterMetrics enableMetrics() {
+        return enableMetrics(FilterMetrics.DEFAULT_SAMPLING_SHIFT);
+    }
+
+    /**
+     * Starts collecting runtime metrics
+     *
+     * @param samplingShift - the latency of one of 2^samplingShift operations
+     * of a thread is measured, from 0 to 62
+     * @return the metrics of the filter, the same object if they are already
+     * enabled, whatever the sampling of them is
+     */
+    public synchronized FilterMetrics enableMetrics(int samplingShift) {
+        if (metrics == null) {
+            metrics = new FilterMetrics(this, samplingShift);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the metrics of the filter, null if they are not enabled
+     */
+    public FilterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops collecting runtime metrics, and removes them from JMX if they were
+     * registered
+     *
+     * @throws JMException if the MBean is removed by an other way
+     */
+    public synchronized void disableMetrics() throws JMException {
+        if (metrics != null) {
+            metrics.unregister();
+            metrics = null;
+        }
+    }
+
+    /**
+     * @return the number of one bits, -1 if the filter is not a bitvector,
+     * used by @{link FilterMetrics}
+     */
+    long bitCount() {
+        return -1;
+    }
+
+    /**
+     * @return the size of the filter in bits, -1 if it is not known, used by
+     * @{link FilterMetrics}
+     */
+    long bitSize() {
+        return -1;
+    }
+
+    /**
+     * @return the ratio of the one bits, NaN if the filter is not a bitvector,
+     * used by @{link FilterMetrics}
+     */
+    double fillRatio() {
+        long count = bitCount();
+        return count < 0 ? Double.NaN : (double) count / bitSize();
+    }
+
+    /**
+     * @return the false positive probability estimated from the current state
+     * of the filter, NaN if it is not known, used by @{link FilterMetrics}
+     */
+    double estimatedFalsePositiveProbability() {
+        return Double.NaN;
+    }
+
+    /**
+     * @return the number of Bloom Filter layers, used by @{link FilterMetrics}
+     */
+    int layerCount() {
+        return 1;
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe bitvector stored in AtomicLongArrays. Bits are set with a
+ * compare-and-set loop, so writers never block each other and readers are
+ * wait-free. Every set is a volatile write, so a thread that sees a bit also
+ * sees everything that happened before it was set. The words are segmented
+ * the same way as in @{link LongBitArray}.
+ *
+ * @author Gergő Pintér
+ */
+public class AtomicBitArray implements BitArray, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final AtomicLongArray[] segments;
+    private final long bitSize;
+
+    /**
+     * Create a bitvector with every bit set to zero
+     *
+     * @param bitSize - the number of bits
+     */
+    public AtomicBitArray(long bitSize) {
+        this.bitSize = bitSize;
+        long words = LongBitArray.wordCount(bitSize);
+        this.segments = new AtomicLongArray[LongBitArray.segmentCount(words)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new AtomicLongArray(LongBitArray.segmentLength(words, i));
+        }
+    }
+
+    @Override
+    public long bitSize() {
+        return bitSize;
+    }
+
+    @Override
+    public boolean set(long index) {
+        long w = index >>> 6;
+        AtomicLongArray segment = segments[(int) (w >>> LongBitArray.SEGMENT_SHIFT)];
+        int i = (int) w & LongBitArray.SEGMENT_MASK;
+        long mask = 1L << index;
+        long word;
+
+        do {
+            word = segment.get(i);
+            if ((word & mask) != 0) {
+                // already set, no write needed, so no cache line ping-pong
+                return false;
+            }
+        } while (!segment.compareAndSet(i, word, word | mask));
+
+        return true;
+    }
+
+    @Override
+    public boolean get(long index) {
+        long w = index >>> 6;
+        AtomicLongArray segment = segments[(int) (w >>> LongBitArray.SEGMENT_SHIFT)];
+        return (segment.get((int) w & LongBitArray.SEGMENT_MASK) & (1L << index)) != 0;
+    }
+
+    @Override
+    public long getWord(long index) {
+        return segments[(int) (index >>> LongBitArray.SEGMENT_SHIFT)].get((int) index & LongBitArray.SEGMENT_MASK);
+    }
+
+    /**
+     * Sets 64 bits at once. It overwrites the bits that other threads set
+     * concurrently in the same word.
+     */
+    @Override
+    public void setWord(long index, long word) {
+        segments[(int) (index >>> LongBitArray.SEGMENT_SHIFT)].set((int) index & LongBitArray.SEGMENT_MASK, word);
+    }
+
+    /* .......... BULK OPERATIONS .......... */
+    /**
+     * Sets the bits that are one in the other bitvector, every word is
+     * updated atomically, so bits set concurrently are not lost
+     */
+    @Override
+    public void or(BitArray other) {
+        or(other, 0, LongBitArray.wordCount(bitSize));
+    }
+
+    /**
+     * Sets the bits of the given words that are one in the other bitvector,
+     * every word is updated atomically
+     */
+    @Override
+    public void or(BitArray other, long from, long to) {
+        LongBitArray.checkRange(this, other, from, to);
+        for (long w = from; w < to; w++) {
+            AtomicLongArray segment = segments[(int) (w >>> LongBitArray.SEGMENT_SHIFT)];
+            int i = (int) w & LongBitArray.SEGMENT_MASK;
+            long bits = other.getWord(w);
+            long word;
+            do {
+                word = segment.get(i);
+                if ((word | bits) == word) {
+                    break;
+                }
+            } while (!segment.compareAndSet(i, word, word | bits));
+        }
+    }
+
+    /**
+     * Clears the bits that are zero in the other bitvector, every word is
+     * updated atomically
+     */
+    @Override
+    public void and(BitArray other) {
+        and(other, 0, LongBitArray.wordCount(bitSize));
+    }
+
+    /**
+     * Clears the bits of the given words that are zero in the other
+     * bitvector, every word is updated atomically
+     */
+    @Override
+    public void and(BitArray other, long from, long to) {
+        LongBitArray.checkRange(this, other, from, to);
+        for (long w = from; w < to; w++) {
+            AtomicLongArray segment = segments[(int) (w >>> LongBitArray.SEGMENT_SHIFT)];
+            int i = (int) w & LongBitArray.SEGMENT_MASK;
+            long bits = other.getWord(w);
+            long word;
+            do {
+                word = segment.get(i);
+                if ((word & bits) == word) {
+                    break;
+                }
+            } while (!segment.compareAndSet(i, word, word & bits));
+        }
+    }
+
+    /**
+     * Flips the bits that are one in the other bitvector, every word is
+     * updated atomically
+     */
+    @Override
+    public void xor(BitArray other) {
+        xor(other, 0, LongBitArray.wordCount(bitSize));
+    }
+
+    /**
+     * Flips the bits of the given words that are one in the other bitvector,
+     * every word is updated atomically
+     */
+    @Override
+    public void xor(BitArray other, long from, long to) {
+        LongBitArray.checkRange(this, other, from, to);
+        for (long w = from; w < to; w++) {
+            AtomicLongArray segment = segments[(int) (w >>> LongBitArray.SEGMENT_SHIFT)];
+            int i = (int) w & LongBitArray.SEGMENT_MASK;
+            long bits = other.getWord(w);
+            if (bits == 0) {
+                continue;
+            }
+            long word;
+            do {
+                word = segment.get(i);
+            } while (!segment.compareAndSet(i, word, word ^ bits));
+        }
+    }
+
+    /**
+     * Sets every bit to zero. It is not atomic, concurrent searches can see
+     * a partially cleared bitvector.
+     */
+    @Override
+    public void clear() {
+        clear(0, LongBitArray.wordCount(bitSize));
+    }
+
+    /**
+     * Sets the bits of the given words to zero, every word is written
+     * atomically, but not the range
+     */
+    @Override
+    public void clear(long from, long to) {
+        LongBitArray.checkRange(this, this, from, to);
+        for (long w = from; w < to; w++) {
+            segments[(int) (w >>> LongBitArray.SEGMENT_SHIFT)].set((int) w & LongBitArray.SEGMENT_MASK, 0L);
+        }
+    }
+
+    @Override
+    public long cardinality() {
+        return cardinality(0, LongBitArray.wordCount(bitSize));
+    }
+
+    @Override
+    public long cardinality(long from, long to) {
+        LongBitArray.checkRange(this, this, from, to);
+        long result = 0;
+        for (long w = from; w < to; w++) {
+            result += Long.bitCount(getWord(w));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.Serializable;
+
+/**
+ * Bitvector of the Bloom Filters. The implementations differ in where and how
+ * the bits are stored, the filters work the same way on any of them.
+ *
+ * @author Gergő Pintér
+ */
+public interface BitArray extends Serializable {
+
+    /**
+     * @return the number of bits
+     */
+    long bitSize();
+
+    /**
+     * Sets the bit to one
+     *
+     * @param index - index of the bit
+     * @return True if the bit was zero before, False otherwise
+     */
+    boolean set(long index);
+
+    /**
+     * @param index - index of the bit
+     * @return True if the bit is one, False otherwise
+     */
+    boolean get(long index);
+
+    /**
+     * Gets 64 bits at once, bit i of the word is the bit 64 × index + i of the
+     * bitvector
+     *
+     * @param index - index of the word
+     * @return the word
+     */
+    long getWord(long index);
+
+    /**
+     * Sets 64 bits at once, bit i of the word is the bit 64 × index + i of the
+     * bitvector
+     *
+     * @param index - index of the word
+     * @param word - the new value of the word
+     */
+    void setWord(long index, long word);
+
+    /**
+     * Sets the bits that are one in the other bitvector (bitwise OR)
+     *
+     * @param other - bitvector of the same size
+     */
+    void or(BitArray other);
+
+    /**
+     * Sets the bits of the given words that are one in the other bitvector
+     *
+     * @param other - bitvector of the same size
+     * @param from - index of the first word
+     * @param to - index after the last word
+     */
+    void or(BitArray other, long from, long to);
+
+    /**
+     * Clears the bits that are zero in the other bitvector (bitwise AND)
+     *
+     * @param other - bitvector of the same size
+     */
+    void and(BitArray other);
+
+    /**
+     * Clears the bits of the given words that are zero in the other bitvector
+     *
+     * @param other - bitvector of the same size
+     * @param from - index of the first word
+     * @param to - index after the last word
+     */
+    void and(BitArray other, long from, long to);
+
+    /**
+     * Flips the bits that are one in the other bitvector (bitwise XOR), then
+     * the one bits are the ones that differ
+     *
+     * @param other - bitvector of the same size
+     */
+    void xor(BitArray other);
+
+    /**
+     * Flips the bits of the given words that are one in the other bitvector
+     *
+     * @param other - bitvector of the same size
+     * @param from - index of the first word
+     * @param to - index after the last word
+     */
+    void xor(BitArray other, long from, long to);
+
+    /**
+     * Sets every bit to zero
+     */
+    void clear();
+
+    /**
+     * Sets the bits of the given words to zero
+     *
+     * @param from - index of the first word
+     * @param to - index after the last word
+     */
+    void clear(long from, long to);
+
+    /**
+     * @return the number of one value bits
+     */
+    long cardinality();
+
+    /**
+     * @param from - index of the first word
+     * @param to - index after the last word
+     * @return the number of one value bits in the given words
+     */
+    long cardinality(long from, long to);
+
+}
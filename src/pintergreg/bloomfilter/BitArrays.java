@@ -0,0 +1,244 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Whole-bitvector operations: OR, AND, XOR, clearing, counting the one bits,
+ * counting the differing bits and equality. Every operation runs on the
+ * calling thread if the pool is null, otherwise the words are split into
+ * ranges of at least 2^16 words (512 KiB) that are processed on the pool.
+ *
+ * Merging many bitvectors into one goes range by range: the sources are ORed
+ * into a 32 KiB range of the target while it is in the cache, so the target is
+ * read and written once instead of once per source.
+ *
+ * @author Gergő Pintér
+ */
+public class BitArrays {
+
+    // smallest range of a task in words
+    static final long TASK_WORDS = 1L << 16;
+    // range of the target that every source is merged into at once
+    static final long BLOCK_WORDS = 1L << 12;
+
+    private static final int OR = 0;
+    private static final int AND = 1;
+    private static final int XOR = 2;
+    private static final int CLEAR = 3;
+    private static final int CARDINALITY = 4;
+    private static final int DIFFERENCE = 5;
+    private static final int EQUALS = 6;
+
+    private BitArrays() {
+    }
+
+    /**
+     * Sets the bits of the target that are one in the source
+     *
+     * @param target - the changed bitvector
+     * @param source - bitvector of the same size
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     */
+    public static void or(BitArray target, BitArray source, ForkJoinPool pool) {
+        run(OR, target, new BitArray[]{source}, pool);
+    }
+
+    /**
+     * Sets the bits of the target that are one in any source. Every range of
+     * the target is merged with every source at once.
+     *
+     * @param target - the changed bitvector
+     * @param sources - bitvectors of the same size
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     */
+    public static void orAll(BitArray target, BitArray[] sources, ForkJoinPool pool) {
+        if (sources.length > 0) {
+            run(OR, target, sources.clone(), pool);
+        }
+    }
+
+    /**
+     * Clears the bits of the target that are zero in the source
+     *
+     * @param target - the changed bitvector
+     * @param source - bitvector of the same size
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     */
+    public static void and(BitArray target, BitArray source, ForkJoinPool pool) {
+        run(AND, target, new BitArray[]{source}, pool);
+    }
+
+    /**
+     * Flips the bits of the target that are one in the source
+     *
+     * @param target - the changed bitvector
+     * @param source - bitvector of the same size
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     */
+    public static void xor(BitArray target, BitArray source, ForkJoinPool pool) {
+        run(XOR, target, new BitArray[]{source}, pool);
+    }
+
+    /**
+     * Sets every bit to zero
+     *
+     * @param target - the changed bitvector
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     */
+    public static void clear(BitArray target, ForkJoinPool pool) {
+        run(CLEAR, target, new BitArray[0], pool);
+    }
+
+    /**
+     * @param bits - the bitvector
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     * @return the number of one bits
+     */
+    public static long cardinality(BitArray bits, ForkJoinPool pool) {
+        return run(CARDINALITY, bits, new BitArray[0], pool);
+    }
+
+    /**
+     * Counts the bits that differ, the one bits of a XOR b, without changing
+     * the bitvectors
+     *
+     * @param a - a bitvector
+     * @param b - bitvector of the same size
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     * @return the number of differing bits
+     */
+    public static long difference(BitArray a, BitArray b, ForkJoinPool pool) {
+        return run(DIFFERENCE, a, new BitArray[]{b}, pool);
+    }
+
+    /**
+     * Compares the bitvectors word by word, a range stops at its first
+     * differing word
+     *
+     * @param a - a bitvector
+     * @param b - an other bitvector
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     * @return True if the sizes and every bit are the same, False otherwise
+     */
+    public static boolean equals(BitArray a, BitArray b, ForkJoinPool pool) {
+        if (a.bitSize() != b.bitSize()) {
+            return false;
+        }
+        return run(EQUALS, a, new BitArray[]{b}, pool) == 0;
+    }
+
+    private static long run(int operation, BitArray target, BitArray[] sources, ForkJoinPool pool) {
+        long words = LongBitArray.wordCount(target.bitSize());
+        for (BitArray source : sources) {
+            LongBitArray.checkSize(target, source);
+        }
+        if (pool == null || words <= TASK_WORDS) {
+            return range(operation, target, sources, 0, words);
+        }
+        return pool.invoke(new Task(operation, target, sources, 0, words));
+    }
+
+    /**
+     * Does the operation on a range of words
+     *
+     * @return the number of bits counted by the operation, for equality the
+     * number of differing words found (0 or 1), 0 for the others
+     */
+    static long range(int operation, BitArray target, BitArray[] sources, long from, long to) {
+        switch (operation) {
+            case OR:
+                if (sources.length == 1) {
+                    target.or(sources[0], from, to);
+                } else {
+                    for (long block = from; block < to; block += BLOCK_WORDS) {
+                        long end = Math.min(to, block + BLOCK_WORDS);
+                        for (BitArray source : sources) {
+                            target.or(source, block, end);
+                        }
+                    }
+                }
+                return 0;
+            case AND:
+                target.and(sources[0], from, to);
+                return 0;
+            case XOR:
+                target.xor(sources[0], from, to);
+                return 0;
+            case CLEAR:
+                target.clear(from, to);
+                return 0;
+            case CARDINALITY:
+                return target.cardinality(from, to);
+            case DIFFERENCE: {
+                long result = 0;
+                for (long w = from; w < to; w++) {
+                    result += Long.bitCount(target.getWord(w) ^ sources[0].getWord(w));
+                }
+                return result;
+            }
+            case EQUALS:
+                for (long w = from; w < to; w++) {
+                    if (target.getWord(w) != sources[0].getWord(w)) {
+                        return 1;
+                    }
+                }
+                return 0;
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+
+    /**
+     * Splits its range in two until it is at most TASK_WORDS long, the
+     * results of the parts are summed
+     */
+    private static class Task extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int operation;
+        private final BitArray target;
+        private final BitArray[] sources;
+        private final long from;
+        private final long to;
+
+        Task(int operation, BitArray target, BitArray[] sources, long from, long to) {
+            this.operation = operation;
+            this.target = target;
+            this.sources = sources;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (this.to - this.from <= TASK_WORDS) {
+                return range(this.operation, this.target, this.sources, this.from, this.to);
+            }
+            // split at a multiple of the block size, the halves do not share a
+            // cache line
+            long middle = ((this.from + this.to) >>> 1) & -BLOCK_WORDS;
+            Task left = new Task(this.operation, this.target, this.sources, this.from, middle);
+            Task right = new Task(this.operation, this.target, this.sources, middle, this.to);
+            left.fork();
+            long result = right.compute();
+            return result + left.join();
+        }
+    }
+}
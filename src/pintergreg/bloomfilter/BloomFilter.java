@@ -16,21 +16,21 @@
 package pintergreg.bloomfilter;
 
 import java.io.Serializable;
-import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Basic Bloom Filter implementation
  *
  * @author Gergő Pintér
  */
-public class BloomFilter implements Serializable{
+public class BloomFilter extends AbstractBloomFilter implements Serializable{
     
     private static final long serialVersionUID = 1L;
 
-    protected int m;
+    protected long m;
     protected int k;
 
-    protected BitSet bitSet;
+    protected BitArray bitSet;
 
     /**
      * Create Bloom Filter based on bitvector size and the numbers of hash
@@ -42,11 +42,24 @@ public class BloomFilter implements Serializable{
      * It is not recommended to use this constructor, unless you really know
      * what you do
      */
-    public BloomFilter(int m, int k) {
+    public BloomFilter(long m, int k) {
+        this(m, k, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Bloom Filter based on bitvector size, the numbers of hash
+     * functions and the hash strategy
+     *
+     * @param m - size of the bitvector
+     * @param k - number of the hash functions
+     * @param hashStrategy - the hash function of the keys
+     */
+    public BloomFilter(long m, int k, HashStrategy hashStrategy) {
+        super(hashStrategy);
         this.m = m;
         this.k = k;
 
-        this.bitSet = new BitSet(m);
+        this.bitSet = new LongBitArray(m);
     }
 
     /**
@@ -56,36 +69,93 @@ public class BloomFilter implements Serializable{
      * @param n - number of elements to be stored
      * @param p - false positive probability
      */
-    public BloomFilter(int n, double p) {
+    public BloomFilter(long n, double p) {
+        this(n, p, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Bloom Filter based on item number, false positive probability
+     * and the hash strategy
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     * @param hashStrategy - the hash function of the keys
+     */
+    public BloomFilter(long n, double p, HashStrategy hashStrategy) {
+        super(hashStrategy);
         this.m = BloomFilterUtils.determineSize(n, p);
         this.k = BloomFilterUtils.determineHashNumber(this.m, n);
 
-        this.bitSet = new BitSet(this.m);
+        this.bitSet = new LongBitArray(this.m);
+    }
+
+    /**
+     * Create Bloom Filter on the given bitvector, for example on a
+     * @{link MappedBitArray} to open a Bloom Filter stored in a file. The
+     * bitvector is used as it is, so it can contain already added items.
+     *
+     * @param bitSet - the bitvector, its size is m
+     * @param k - number of the hash functions
+     */
+    public BloomFilter(BitArray bitSet, int k) {
+        this(bitSet, k, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Bloom Filter on the given bitvector with the hash strategy that
+     * built it
+     *
+     * @param bitSet - the bitvector, its size is m
+     * @param k - number of the hash functions
+     * @param hashStrategy - the hash function of the keys
+     */
+    public BloomFilter(BitArray bitSet, int k, HashStrategy hashStrategy) {
+        super(hashStrategy);
+        this.m = bitSet.bitSize();
+        this.k = k;
+
+        this.bitSet = bitSet;
     }
 
     /**
-     * Add item to Bloom Filter
+     * Add item to Bloom Filter based on its 64 bit hash value
      *
-     * @param key - an item to be added to the Bloom Filter
+     * @param hash - the 64 bit hash of the item
      */
-    public void add(byte[] key) {
+    @Override
+    protected void addHash(long hash) {
+        putHash(hash);
+    }
 
-        for (int i : BloomFilterUtils.multiHash(key, this.k, this.m)) {
-            this.bitSet.set(i);
+    /**
+     * Add item to Bloom Filter based on its 64 bit hash value
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if any bit of the item was zero before, False otherwise
+     */
+    @Override
+    protected boolean putHash(long hash) {
+        boolean changed = false;
+
+        for (int i = 0; i < this.k; i++) {
+            changed |= this.bitSet.set(this.hashStrategy.index(hash, i, this.m));
         }
+
+        return changed;
     }
 
     /**
-     * Search item in the Bloom Filter
+     * Search item in the Bloom Filter based on its 64 bit hash value
      *
-     * @param key - an item to be searched in the Bloom Filter
+     * @param hash - the 64 bit hash of the item
      * @return True if Bloom Filter contains the given item, False otherwise
      */
-    public boolean include(byte[] key) {
+    @Override
+    protected boolean includeHash(long hash) {
         boolean result = true;
 
-        for (int i : BloomFilterUtils.multiHash(key, this.k, this.m)) {
-            boolean s = this.bitSet.get(i);
+        for (int i = 0; i < this.k; i++) {
+            boolean s = this.bitSet.get(this.hashStrategy.index(hash, i, this.m));
             if (s == false) {
                 result = false;
                 break;
@@ -95,4 +165,362 @@ public class BloomFilter implements Serializable{
         return result;
     }
 
+    /**
+     * Add items to the Bloom Filter based on their 64 bit hash values. The
+     * batch is processed one hash function at a time, the indexes of every
+     * item are computed first, then the bits are set back to back, so the
+     * cache misses of the different items overlap.
+     *
+     * @param hashes - the 64 bit hashes of the items
+     * @param count - the number of hashes to be used
+     */
+    @Override
+    protected void addHashes(long[] hashes, int count) {
+        putHashes(hashes, count);
+    }
+
+    /**
+     * Add items to the Bloom Filter based on their 64 bit hash values, like
+     * @{link #addHashes(long[], int)}, and count the items that changed any
+     * bit. An item repeated in the batch finds the bits of its first copy set.
+     *
+     * @param hashes - the 64 bit hashes of the items
+     * @param count - the number of hashes to be used
+     * @return the number of items that changed the bitvector
+     */
+    protected int putHashes(long[] hashes, int count) {
+        long[] indexes = new long[count];
+        boolean[] changed = new boolean[count];
+        for (int i = 0; i < this.k; i++) {
+            for (int j = 0; j < count; j++) {
+                indexes[j] = this.hashStrategy.index(hashes[j], i, this.m);
+            }
+            for (int j = 0; j < count; j++) {
+                changed[j] |= this.bitSet.set(indexes[j]);
+            }
+        }
+        return count(changed, count);
+    }
+
+    /**
+     * @return the number of True values among the first count flags
+     */
+    static int count(boolean[] flags, int count) {
+        int result = 0;
+        for (int j = 0; j < count; j++) {
+            if (flags[j]) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Search items in the Bloom Filter based on their 64 bit hash values. The
+     * batch is probed one hash function at a time: the i-th index of every
+     * still possible item is checked before the (i+1)-th ones. These reads do
+     * not depend on each other and the indexes are computed before them, so
+     * their cache misses overlap instead of stalling one by one. Items are
+     * dropped from the next rounds at their first zero bit.
+     *
+     * @param hashes - the 64 bit hashes of the items
+     * @param count - the number of hashes to be used
+     * @param result - result[offset + j] is set to True if the j-th item is in
+     * the Bloom Filter, False otherwise
+     * @param offset - position of the first result
+     */
+    @Override
+    protected void includeHashes(long[] hashes, int count, boolean[] result, int offset) {
+        // positions of the current probe of the still possible items
+        long[] indexes = new long[count];
+        int[] alive = new int[count];
+        int remaining = count;
+        for (int j = 0; j < count; j++) {
+            result[offset + j] = true;
+            alive[j] = j;
+        }
+
+        for (int i = 0; i < this.k && remaining > 0; i++) {
+            // compute every index first, so the reads are issued back to back
+            for (int a = 0; a < remaining; a++) {
+                indexes[a] = this.hashStrategy.index(hashes[alive[a]], i, this.m);
+            }
+            int next = 0;
+            for (int a = 0; a < remaining; a++) {
+                if (this.bitSet.get(indexes[a])) {
+                    alive[next++] = alive[a];
+                } else {
+                    result[offset + alive[a]] = false;
+                }
+            }
+            remaining = next;
+        }
+    }
+
+    /* .......... MERGING .......... */
+    /**
+     * Checks whether the other Bloom Filter can be merged into this one. The
+     * bitvector size, the number of hash functions, the hash strategy and the
+     * way the indexes are derived from the hash have to be the same, the
+     * bitvector implementation can differ.
+     *
+     * @param other - the other Bloom Filter
+     * @return True if the two Bloom Filters can be merged, False otherwise
+     */
+    public boolean isCompatible(BloomFilter other) {
+        return other != null && this.m == other.m && this.k == other.k
+                && this.hashStrategy.equals(other.hashStrategy)
+                && this.sameLayout(other) && other.sameLayout(this);
+    }
+
+    /**
+     * Adds every item of the other Bloom Filter to this one with a word-wise
+     * OR of the bitvectors. The result is the same as if the items of both
+     * Bloom Filters were added to this one.
+     *
+     * @param other - a compatible Bloom Filter, it is not changed
+     * @throws IllegalArgumentException if the Bloom Filters are not compatible
+     */
+    public void union(BloomFilter other) {
+        union(other, null);
+    }
+
+    /**
+     * Adds every item of the other Bloom Filter to this one, the ranges of the
+     * bitvectors are ORed on the given pool
+     *
+     * @param other - a compatible Bloom Filter, it is not changed
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     * @throws IllegalArgumentException if the Bloom Filters are not compatible
+     */
+    public void union(BloomFilter other, ForkJoinPool pool) {
+        checkCompatible(other);
+        BitArrays.or(this.bitSet, other.bitSet, pool);
+    }
+
+    /**
+     * Adds every item of the other Bloom Filters to this one. A range of this
+     * bitvector is ORed with the same range of every other one while it is
+     * in the cache, so merging many Bloom Filters costs about one pass over
+     * each.
+     *
+     * @param others - compatible Bloom Filters, they are not changed
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     * @throws IllegalArgumentException if any Bloom Filter is not compatible
+     */
+    public void unionAll(BloomFilter[] others, ForkJoinPool pool) {
+        BitArray[] sources = new BitArray[others.length];
+        for (int i = 0; i < others.length; i++) {
+            checkCompatible(others[i]);
+            sources[i] = others[i].bitSet;
+        }
+        BitArrays.orAll(this.bitSet, sources, pool);
+    }
+
+    /**
+     * Keeps only the bits that are set in both Bloom Filters with a word-wise
+     * AND of the bitvectors. Every item contained by both Bloom Filters is
+     * still included, but the false positive probability is higher than the
+     * one of a Bloom Filter built from the common items only.
+     *
+     * @param other - a compatible Bloom Filter, it is not changed
+     * @throws IllegalArgumentException if the Bloom Filters are not compatible
+     */
+    public void intersect(BloomFilter other) {
+        intersect(other, null);
+    }
+
+    /**
+     * Keeps only the bits that are set in both Bloom Filters, the ranges of
+     * the bitvectors are ANDed on the given pool
+     *
+     * @param other - a compatible Bloom Filter, it is not changed
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     * @throws IllegalArgumentException if the Bloom Filters are not compatible
+     */
+    public void intersect(BloomFilter other, ForkJoinPool pool) {
+        checkCompatible(other);
+        BitArrays.and(this.bitSet, other.bitSet, pool);
+    }
+
+    /**
+     * Counts the bits that differ in the two Bloom Filters, the one bits of
+     * the word-wise XOR, without changing them. It shows how far two replicas
+     * or two periods drifted apart.
+     *
+     * @param other - a compatible Bloom Filter
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     * @return the number of differing bits
+     * @throws IllegalArgumentException if the Bloom Filters are not compatible
+     */
+    public long difference(BloomFilter other, ForkJoinPool pool) {
+        checkCompatible(other);
+        return BitArrays.difference(this.bitSet, other.bitSet, pool);
+    }
+
+    /**
+     * Checks whether the two Bloom Filters contain exactly the same bits, so
+     * every search gives the same result
+     *
+     * @param other - the other Bloom Filter
+     * @return True if the Bloom Filters are compatible and their bitvectors
+     * are equal, False otherwise
+     */
+    public boolean contentEquals(BloomFilter other) {
+        return contentEquals(other, null);
+    }
+
+    /**
+     * Checks whether the two Bloom Filters contain exactly the same bits, the
+     * ranges of the bitvectors are compared on the given pool
+     *
+     * @param other - the other Bloom Filter
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     * @return True if the Bloom Filters are compatible and their bitvectors
+     * are equal, False otherwise
+     */
+    public boolean contentEquals(BloomFilter other, ForkJoinPool pool) {
+        return isCompatible(other) && BitArrays.equals(this.bitSet, other.bitSet, pool);
+    }
+
+    /**
+     * @return the number of one bits
+     */
+    public long cardinality() {
+        return this.bitSet.cardinality();
+    }
+
+    /**
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     * @return the number of one bits, counted in ranges on the given pool
+     */
+    public long cardinality(ForkJoinPool pool) {
+        return BitArrays.cardinality(this.bitSet, pool);
+    }
+
+    /**
+     * Clear the Bloom Filter, set every bit to zero in the bitvector
+     */
+    public void clear() {
+        clear(null);
+    }
+
+    /**
+     * Clear the Bloom Filter, the ranges of the bitvector are zeroed on the
+     * given pool
+     *
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     */
+    public void clear(ForkJoinPool pool) {
+        BitArrays.clear(this.bitSet, pool);
+    }
+
+    /**
+     * Checks whether the other Bloom Filter derives the bit indexes from the
+     * hash the same way. The subclasses with a different index derivation
+     * override it.
+     *
+     * @param other - the other Bloom Filter
+     * @return True if the indexes are derived the same way, False otherwise
+     */
+    protected boolean sameLayout(BloomFilter other) {
+        return !(other instanceof BlockedBloomFilter);
+    }
+
+    private void checkCompatible(BloomFilter other) {
+        if (!isCompatible(other)) {
+            throw new IllegalArgumentException("The Bloom Filters are not compatible");
+        }
+    }
+
+    /* .......... CARDINALITY .......... */
+    /**
+     * Estimates the number of distinct items added to the Bloom Filter from
+     * the number of one bits, see
+     * @{link BloomFilterUtils#estimateCardinality(long, int, long)}. Unlike
+     * the number of adds, duplicated items are not counted. The relative error
+     * is well below 1% up to several times the designed capacity, it grows as
+     * the bitvector saturates.
+     *
+     * @return the estimated number of distinct items, infinite if every bit is
+     * one
+     */
+    public double estimateCardinality() {
+        return estimate(null);
+    }
+
+    /**
+     * Estimates the number of distinct items added to either Bloom Filter,
+     * from the number of one bits of the word-wise OR of the bitvectors. The
+     * bitvectors are not changed.
+     *
+     * @param other - a compatible Bloom Filter
+     * @return the estimated number of distinct items of the union
+     * @throws IllegalArgumentException if the Bloom Filters are not compatible
+     */
+    public double estimateUnionCardinality(BloomFilter other) {
+        checkCompatible(other);
+        return estimate(other);
+    }
+
+    /**
+     * Estimates the number of distinct items added to both Bloom Filters as
+     * |A| + |B| - |A ∪ B|. The absolute error is about the one of the union,
+     * so a small intersection of large sets is imprecise.
+     *
+     * @param other - a compatible Bloom Filter
+     * @return the estimated number of common items, at least 0, NaN if the
+     * union is saturated
+     * @throws IllegalArgumentException if the Bloom Filters are not compatible
+     */
+    public double estimateIntersectionCardinality(BloomFilter other) {
+        checkCompatible(other);
+        double union = estimate(other);
+        if (Double.isInfinite(union)) {
+            return Double.NaN;
+        }
+        double result = estimate(null) + other.estimate(null) - union;
+        return result < 0 ? 0 : result;
+    }
+
+    /**
+     * Estimates the number of distinct items from the one bits of this
+     * bitvector, ORed with the ones of the other if it is not null. The
+     * subclasses with a different index derivation override it.
+     *
+     * @param other - a compatible Bloom Filter or null
+     * @return the estimated number of distinct items
+     */
+    double estimate(BloomFilter other) {
+        long count;
+        if (other == null) {
+            count = this.bitSet.cardinality();
+        } else {
+            count = 0;
+            long words = LongBitArray.wordCount(this.m);
+            for (long w = 0; w < words; w++) {
+                count += Long.bitCount(this.bitSet.getWord(w) | other.bitSet.getWord(w));
+            }
+        }
+        return BloomFilterUtils.estimateCardinality(this.m, this.k, count);
+    }
+
+    /* .......... METRICS .......... */
+    @Override
+    long bitCount() {
+        return cardinality();
+    }
+
+    @Override
+    long bitSize() {
+        return this.m;
+    }
+
+    /**
+     * @return (one bits / m)^k
+     */
+    @Override
+    double estimatedFalsePositiveProbability() {
+        return Math.pow((double) bitCount() / this.m, this.k);
+    }
 }
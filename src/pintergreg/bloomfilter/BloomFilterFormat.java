@@ -0,0 +1,649 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Compact, versioned binary format of the Bloom Filters. It replaces Java
+ * serialization for storing and transferring filters: only the parameters and
+ * the raw words of the bitvectors are written, through a direct buffer in
+ * large blocks.
+ *
+ * Every number is little-endian. A file starts with an 8 byte header:
+ *
+ * <pre>
+ * offset  size  field
+ * 0       4     magic: the ASCII bytes "BLMF"
+ * 4       4     format version, currently 1
+ * 8             one structure
+ * </pre>
+ *
+ * Every structure starts with its 4 byte type. Bitvector structures (type 1
+ * BloomFilter, 2 ExtendedBloomFilter, 3 BlockedBloomFilter, 4
+ * ConcurrentBloomFilter, 8 PartitionedBloomFilter):
+ *
+ * <pre>
+ * 0       4     type
+ * 4       4     k, number of hash functions
+ * 8       8     m, size of the bitvector in bits
+ * 16      4     hash strategy id, see HashStrategy#getId()
+ * 20      4     reserved, 0
+ * 24      8     hash seed
+ * 32      8     n, capacity (0 for type 1 and 4)
+ * 40      8     number of stored elements (0 for type 1 and 4)
+ * 48      8×w   the w = ceil(m / 64) words of the bitvector, bit i of word j
+ *               is the bit 64 × j + i
+ * </pre>
+ *
+ * ScalableBloomFilter (type 5):
+ *
+ * <pre>
+ * 0       4     type
+ * 4       4     k
+ * 8       8     m of a layer
+ * 16      8     n of a layer
+ * 24      4     flags, bit 0: the layers are BlockedBloomFilters
+ * 28      4     L, number of layers
+ * 32      4     growth factor of the layer capacity
+ * 36      4     reserved, 0
+ * 40      8     tightening ratio, IEEE 754 double
+ * 48      8     false positive probability of the first layer, IEEE 754
+ *               double
+ * 56            L bitvector structures, the oldest layer first, every layer
+ *               has its own k and m
+ * </pre>
+ *
+ * A2BloomFilter (type 6):
+ *
+ * <pre>
+ * 0       4     type
+ * 4       4     ttl in milliseconds
+ * 8       8     m
+ * 16      4     k
+ * 20      4     index of the active generation, 0 or 1
+ * 24      8     milliseconds passed since the last switch when it was written,
+ *               -1 if no timer was running
+ * 32      4     rotation: 0 none, 1 timer thread, 2 clock checks
+ * 36      4     reserved, 0
+ * 40            two ScalableBloomFilter structures, generation 0 and 1
+ * </pre>
+ *
+ * BinaryFuseFilter (type 7):
+ *
+ * <pre>
+ * 0       4     type
+ * 4       4     fingerprint size in bits, 8 or 16
+ * 8       4     hash strategy id, see above
+ * 12      4     reserved, 0
+ * 16      8     hash seed
+ * 24      8     seed of the filter construction
+ * 32      4     segment length
+ * 36      4     segment count
+ * 40      8     number of stored elements
+ * 48      f×a   the a = (segment count + 2) × segment length fingerprints of
+ *               f = 1 or 2 bytes, padded with zeros to a multiple of 8 bytes
+ * </pre>
+ *
+ * Only the built-in hash strategies can be stored, every layer of a scalable
+ * structure and both generations of an A2 structure have the same one.
+ *
+ * Readers accept every version up to their own, new fields are added by
+ * increasing the version. A single Bloom Filter file can also be opened
+ * memory-mapped with @{link #map(File, boolean)}, then the words are used in
+ * place.
+ *
+ * @author Gergő Pintér
+ */
+public class BloomFilterFormat {
+
+    public static final int MAGIC = 0x464D4C42; // "BLMF" read little-endian
+    public static final int VERSION = 1;
+
+    public static final int BLOOM_FILTER = 1;
+    public static final int EXTENDED_BLOOM_FILTER = 2;
+    public static final int BLOCKED_BLOOM_FILTER = 3;
+    public static final int CONCURRENT_BLOOM_FILTER = 4;
+    public static final int SCALABLE_BLOOM_FILTER = 5;
+    public static final int A2_BLOOM_FILTER = 6;
+    public static final int BINARY_FUSE_FILTER = 7;
+    public static final int PARTITIONED_BLOOM_FILTER = 8;
+
+    // size of the file header and the header of a bitvector structure
+    private static final int FILE_HEADER = 8;
+    private static final int BITVECTOR_HEADER = 48;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private BloomFilterFormat() {
+    }
+
+    /**
+     * Writes the Bloom Filter to the file, the file is overwritten
+     *
+     * @param bf - BloomFilter (or subclass), ScalableBloomFilter,
+     * A2BloomFilter or BinaryFuseFilter
+     * @param file - the destination
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(AbstractFilter bf, File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            write(bf, raf.getChannel());
+        }
+    }
+
+    /**
+     * Writes the Bloom Filter to the channel. The filter should not be changed
+     * while it is written.
+     *
+     * @param bf - BloomFilter (or subclass), ScalableBloomFilter,
+     * A2BloomFilter or BinaryFuseFilter
+     * @param channel - the destination
+     * @throws IOException if the channel cannot be written
+     */
+    public static void write(AbstractFilter bf, WritableByteChannel channel) throws IOException {
+        Output out = new Output(channel);
+        out.ensure(FILE_HEADER);
+        out.buffer.putInt(MAGIC).putInt(VERSION);
+
+        if (bf instanceof A2BloomFilter) {
+            writeA2(out, (A2BloomFilter) bf);
+        } else if (bf instanceof ScalableBloomFilter) {
+            writeScalable(out, (ScalableBloomFilter) bf);
+        } else if (bf instanceof BloomFilter) {
+            writeBitvector(out, (BloomFilter) bf);
+        } else if (bf instanceof BinaryFuseFilter) {
+            writeBinaryFuse(out, (BinaryFuseFilter) bf);
+        } else {
+            throw new IllegalArgumentException("Unsupported filter: " + bf.getClass().getName());
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a Bloom Filter from the file, it is loaded to the heap
+     *
+     * @param file - the source
+     * @return the Bloom Filter, its class is the same as the written one
+     * @throws IOException if the file cannot be read or it is not valid
+     */
+    public static AbstractFilter read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return read(raf.getChannel());
+        }
+    }
+
+    /**
+     * Reads a Bloom Filter from the channel
+     *
+     * @param channel - the source
+     * @return the Bloom Filter, its class is the same as the written one
+     * @throws IOException if the channel cannot be read or the data is not valid
+     */
+    public static AbstractFilter read(ReadableByteChannel channel) throws IOException {
+        Input in = new Input(channel);
+        in.require(FILE_HEADER);
+        readFileHeader(in.buffer);
+
+        in.require(4);
+        int type = in.buffer.getInt(in.buffer.position());
+        switch (type) {
+            case A2_BLOOM_FILTER:
+                return readA2(in);
+            case SCALABLE_BLOOM_FILTER:
+                return readScalable(in);
+            case BINARY_FUSE_FILTER:
+                return readBinaryFuse(in);
+            default:
+                return readBitvector(in);
+        }
+    }
+
+    /**
+     * Opens a Bloom Filter file memory-mapped, the words are not loaded, they
+     * are used in the file. Only the files of BloomFilter, ExtendedBloomFilter,
+     * BlockedBloomFilter and PartitionedBloomFilter can be opened this way. The stored number of
+     * elements is not updated in the file when items are added.
+     *
+     * @param file - the file written by @{link #write(AbstractFilter, File)}
+     * @param readOnly - map the file read-only, then items cannot be added
+     * @return the Bloom Filter on a @{link MappedBitArray}
+     * @throws IOException if the file cannot be mapped or it is not valid
+     */
+    public static BloomFilter map(File file, boolean readOnly) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER + BITVECTOR_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new EOFException(file + " is too short");
+                }
+            }
+        }
+        header.flip();
+        readFileHeader(header);
+
+        int type = header.getInt();
+        int k = header.getInt();
+        long m = header.getLong();
+        HashStrategy hashStrategy = readHashStrategy(header);
+        long n = header.getLong();
+        long size = header.getLong();
+
+        MappedBitArray bits = new MappedBitArray(file, FILE_HEADER + BITVECTOR_HEADER, m, readOnly);
+        switch (type) {
+            case BLOOM_FILTER:
+                return new BloomFilter(bits, k, hashStrategy);
+            case EXTENDED_BLOOM_FILTER:
+                return new ExtendedBloomFilter(bits, k, n, size, hashStrategy);
+            case BLOCKED_BLOOM_FILTER:
+                return new BlockedBloomFilter(bits, k, n, size, hashStrategy);
+            case PARTITIONED_BLOOM_FILTER:
+                return new PartitionedBloomFilter(bits, k, n, size, hashStrategy);
+            default:
+                throw new IOException("Type " + type + " cannot be memory-mapped");
+        }
+    }
+
+    /* .......... WRITING .......... */
+    private static void writeBitvector(Output out, BloomFilter bf) throws IOException {
+        int type;
+        long n = 0;
+        long size = 0;
+        if (bf instanceof BlockedBloomFilter) {
+            type = BLOCKED_BLOOM_FILTER;
+        } else if (bf instanceof PartitionedBloomFilter) {
+            type = PARTITIONED_BLOOM_FILTER;
+        } else if (bf instanceof ExtendedBloomFilter) {
+            type = EXTENDED_BLOOM_FILTER;
+        } else if (bf instanceof ConcurrentBloomFilter) {
+            type = CONCURRENT_BLOOM_FILTER;
+        } else {
+            type = BLOOM_FILTER;
+        }
+        if (bf instanceof ExtendedBloomFilter) {
+            n = ((ExtendedBloomFilter) bf).n;
+            size = ((ExtendedBloomFilter) bf).size;
+        }
+
+        out.ensure(BITVECTOR_HEADER);
+        out.buffer.putInt(type).putInt(bf.k).putLong(bf.m)
+                .putInt(strategyId(bf.hashStrategy)).putInt(0).putLong(bf.hashStrategy.getSeed())
+                .putLong(n).putLong(size);
+
+        BitArray bits = bf.bitSet;
+        if (bits instanceof LongBitArray) {
+            // bulk copy, the buffer is little-endian like the long arrays
+            for (long[] segment : ((LongBitArray) bits).segments) {
+                for (int i = 0; i < segment.length;) {
+                    out.ensure(8);
+                    LongBuffer view = out.buffer.asLongBuffer();
+                    int length = Math.min(view.remaining(), segment.length - i);
+                    view.put(segment, i, length);
+                    out.buffer.position(out.buffer.position() + length * 8);
+                    i += length;
+                }
+            }
+            return;
+        }
+
+        long words = LongBitArray.wordCount(bf.m);
+        for (long i = 0; i < words;) {
+            out.ensure(8);
+            long end = Math.min(words, i + out.buffer.remaining() / 8);
+            for (; i < end; i++) {
+                out.buffer.putLong(bits.getWord(i));
+            }
+        }
+    }
+
+    private static void writeScalable(Output out, ScalableBloomFilter sbf) throws IOException {
+        ExtendedBloomFilter[] layers = sbf.layers;
+        out.ensure(56);
+        out.buffer.putInt(SCALABLE_BLOOM_FILTER).putInt(sbf.k).putLong(sbf.m).putLong(sbf.n)
+                .putInt(sbf.blocked ? 1 : 0).putInt(layers.length)
+                .putInt(sbf.growth).putInt(0).putDouble(sbf.ratio).putDouble(sbf.p0);
+        for (ExtendedBloomFilter layer : layers) {
+            writeBitvector(out, layer);
+        }
+    }
+
+    private static void writeA2(Output out, A2BloomFilter a2) throws IOException {
+        // the generations are not cleared by a switch while they are written
+        A2BloomFilter.Generations generations = a2.enter();
+        try {
+            long elapsed = a2.elapsed();
+            int rotation = elapsed < 0 ? A2BloomFilter.NO_ROTATION : a2.rotation;
+
+            out.ensure(40);
+            out.buffer.putInt(A2_BLOOM_FILTER).putInt(a2.ttl).putLong(a2.m).putInt(a2.k)
+                    .putInt(generations.active).putLong(elapsed)
+                    .putInt(rotation).putInt(0);
+            writeScalable(out, generations.bloomFilters[0]);
+            writeScalable(out, generations.bloomFilters[1]);
+        } finally {
+            A2BloomFilter.exit(generations);
+        }
+    }
+
+    private static void writeBinaryFuse(Output out, BinaryFuseFilter bff) throws IOException {
+        out.ensure(48);
+        out.buffer.putInt(BINARY_FUSE_FILTER).putInt(bff.fingerprintBits)
+                .putInt(strategyId(bff.hashStrategy)).putInt(0).putLong(bff.hashStrategy.getSeed())
+                .putLong(bff.seed).putInt(bff.segmentLength).putInt(bff.segmentCount)
+                .putLong(bff.size);
+
+        int bytes;
+        if (bff.fingerprints8 != null) {
+            byte[] fingerprints = bff.fingerprints8;
+            for (int i = 0; i < fingerprints.length;) {
+                out.ensure(8);
+                int length = Math.min(out.buffer.remaining(), fingerprints.length - i);
+                out.buffer.put(fingerprints, i, length);
+                i += length;
+            }
+            bytes = fingerprints.length;
+        } else {
+            short[] fingerprints = bff.fingerprints16;
+            for (int i = 0; i < fingerprints.length;) {
+                out.ensure(8);
+                ShortBuffer view = out.buffer.asShortBuffer();
+                int length = Math.min(view.remaining(), fingerprints.length - i);
+                view.put(fingerprints, i, length);
+                out.buffer.position(out.buffer.position() + length * 2);
+                i += length;
+            }
+            bytes = fingerprints.length * 2;
+        }
+        int padding = -bytes & 7;
+        out.ensure(padding);
+        for (int i = 0; i < padding; i++) {
+            out.buffer.put((byte) 0);
+        }
+    }
+
+    /**
+     * @return the id of a built-in hash strategy
+     * @throws IllegalArgumentException if the strategy is not built-in
+     */
+    private static int strategyId(HashStrategy hashStrategy) {
+        if (HashStrategy.forId(hashStrategy.getId()) != hashStrategy) {
+            throw new IllegalArgumentException("Only the built-in hash strategies can be stored: " + hashStrategy);
+        }
+        return hashStrategy.getId();
+    }
+
+    /* .......... READING .......... */
+    private static void readFileHeader(ByteBuffer buffer) throws IOException {
+        int magic = buffer.getInt();
+        int version = buffer.getInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a Bloom Filter file");
+        }
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported format version: " + version);
+        }
+    }
+
+    private static HashStrategy readHashStrategy(ByteBuffer buffer) throws IOException {
+        int id = buffer.getInt();
+        buffer.getInt(); // reserved
+        long seed = buffer.getLong();
+        HashStrategy result = HashStrategy.forId(id);
+        if (result == null || seed != result.getSeed()) {
+            throw new IOException("Unsupported hash strategy: " + id + ", seed " + seed);
+        }
+        return result;
+    }
+
+    private static BloomFilter readBitvector(Input in) throws IOException {
+        in.require(BITVECTOR_HEADER);
+        ByteBuffer buffer = in.buffer;
+        int type = buffer.getInt();
+        int k = buffer.getInt();
+        long m = buffer.getLong();
+        HashStrategy hashStrategy = readHashStrategy(buffer);
+        long n = buffer.getLong();
+        long size = buffer.getLong();
+
+        BitArray bits;
+        if (type == CONCURRENT_BLOOM_FILTER) {
+            bits = new AtomicBitArray(m);
+            long words = LongBitArray.wordCount(m);
+            for (long i = 0; i < words;) {
+                in.require(8);
+                long end = Math.min(words, i + buffer.remaining() / 8);
+                for (; i < end; i++) {
+                    bits.setWord(i, buffer.getLong());
+                }
+            }
+        } else {
+            bits = new LongBitArray(m);
+            for (long[] segment : ((LongBitArray) bits).segments) {
+                for (int i = 0; i < segment.length;) {
+                    in.require(8);
+                    LongBuffer view = buffer.asLongBuffer();
+                    int length = Math.min(view.remaining(), segment.length - i);
+                    view.get(segment, i, length);
+                    buffer.position(buffer.position() + length * 8);
+                    i += length;
+                }
+            }
+        }
+
+        switch (type) {
+            case BLOOM_FILTER:
+                return new BloomFilter(bits, k, hashStrategy);
+            case EXTENDED_BLOOM_FILTER:
+                return new ExtendedBloomFilter(bits, k, n, size, hashStrategy);
+            case BLOCKED_BLOOM_FILTER:
+                return new BlockedBloomFilter(bits, k, n, size, hashStrategy);
+            case PARTITIONED_BLOOM_FILTER:
+                return new PartitionedBloomFilter(bits, k, n, size, hashStrategy);
+            case CONCURRENT_BLOOM_FILTER:
+                return new ConcurrentBloomFilter((AtomicBitArray) bits, k, hashStrategy);
+            default:
+                throw new IOException("Unknown structure type: " + type);
+        }
+    }
+
+    private static ScalableBloomFilter readScalable(Input in) throws IOException {
+        in.require(56);
+        ByteBuffer buffer = in.buffer;
+        int type = buffer.getInt();
+        if (type != SCALABLE_BLOOM_FILTER) {
+            throw new IOException("Scalable Bloom Filter expected, found type " + type);
+        }
+        int k = buffer.getInt();
+        long m = buffer.getLong();
+        long n = buffer.getLong();
+        boolean blocked = (buffer.getInt() & 1) != 0;
+        int count = buffer.getInt();
+        int growth = buffer.getInt();
+        buffer.getInt(); // reserved
+        double ratio = buffer.getDouble();
+        double p0 = buffer.getDouble();
+        if (growth < 1 || !(ratio > 0 && ratio <= 1)) {
+            throw new IOException("Invalid growth of Scalable Bloom Filter: " + growth + ", " + ratio);
+        }
+
+        if (count <= 0) {
+            throw new IOException("Scalable Bloom Filter without layers");
+        }
+        ExtendedBloomFilter[] layers = new ExtendedBloomFilter[count];
+        for (int i = 0; i < count; i++) {
+            BloomFilter layer = readBitvector(in);
+            if (!(layer instanceof ExtendedBloomFilter)) {
+                throw new IOException("Invalid layer type in Scalable Bloom Filter");
+            }
+            layers[i] = (ExtendedBloomFilter) layer;
+            if (layers[i].hashStrategy != layers[0].hashStrategy) {
+                throw new IOException("The layers of the Scalable Bloom Filter have different hash strategies");
+            }
+        }
+        return new ScalableBloomFilter(m, k, n, blocked, growth, ratio, p0, layers);
+    }
+
+    private static BinaryFuseFilter readBinaryFuse(Input in) throws IOException {
+        in.require(48);
+        ByteBuffer buffer = in.buffer;
+        buffer.getInt(); // type
+        int fingerprintBits = buffer.getInt();
+        HashStrategy hashStrategy = readHashStrategy(buffer);
+        long seed = buffer.getLong();
+        int segmentLength = buffer.getInt();
+        int segmentCount = buffer.getInt();
+        long size = buffer.getLong();
+        long length = (long) (segmentCount + 2) * segmentLength;
+        if ((fingerprintBits != 8 && fingerprintBits != 16) || Integer.bitCount(segmentLength) != 1
+                || segmentCount < 1 || length > Integer.MAX_VALUE) {
+            throw new IOException("Invalid binary fuse filter header");
+        }
+
+        byte[] fingerprints8 = null;
+        short[] fingerprints16 = null;
+        int bytes;
+        if (fingerprintBits == 8) {
+            fingerprints8 = new byte[(int) length];
+            for (int i = 0; i < fingerprints8.length;) {
+                in.require(1);
+                int count = Math.min(buffer.remaining(), fingerprints8.length - i);
+                buffer.get(fingerprints8, i, count);
+                i += count;
+            }
+            bytes = fingerprints8.length;
+        } else {
+            fingerprints16 = new short[(int) length];
+            for (int i = 0; i < fingerprints16.length;) {
+                in.require(2);
+                ShortBuffer view = buffer.asShortBuffer();
+                int count = Math.min(view.remaining(), fingerprints16.length - i);
+                view.get(fingerprints16, i, count);
+                buffer.position(buffer.position() + count * 2);
+                i += count;
+            }
+            bytes = fingerprints16.length * 2;
+        }
+        int padding = -bytes & 7;
+        in.require(padding);
+        buffer.position(buffer.position() + padding);
+
+        return new BinaryFuseFilter(fingerprintBits, seed, segmentLength, segmentCount, size,
+                fingerprints8, fingerprints16, hashStrategy);
+    }
+
+    private static A2BloomFilter readA2(Input in) throws IOException {
+        in.require(40);
+        ByteBuffer buffer = in.buffer;
+        buffer.getInt(); // type
+        int ttl = buffer.getInt();
+        long m = buffer.getLong();
+        int k = buffer.getInt();
+        int active = buffer.getInt();
+        long elapsed = buffer.getLong();
+        if (active != 0 && active != 1) {
+            throw new IOException("Invalid active generation: " + active);
+        }
+        if (ttl <= 0) {
+            throw new IOException("Invalid time to live of A2 Bloom Filter: " + ttl);
+        }
+        int rotation = buffer.getInt();
+        buffer.getInt(); // reserved
+        if (rotation < A2BloomFilter.NO_ROTATION || rotation > A2BloomFilter.CLOCK_CHECK) {
+            throw new IOException("Invalid rotation of A2 Bloom Filter: " + rotation);
+        }
+
+        ScalableBloomFilter[] bloomFilters = new ScalableBloomFilter[2];
+        bloomFilters[0] = readScalable(in);
+        bloomFilters[1] = readScalable(in);
+        if (bloomFilters[0].hashStrategy != bloomFilters[1].hashStrategy) {
+            throw new IOException("The generations of the A2 Bloom Filter have different hash strategies");
+        }
+        return new A2BloomFilter(m, k, ttl, bloomFilters, active, rotation, elapsed);
+    }
+
+    /* .......... BUFFERS .......... */
+    /**
+     * Little-endian direct buffer that is written to the channel when it is full
+     */
+    private static class Output {
+
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Makes room for at least the given number of bytes
+         */
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Little-endian direct buffer that is filled from the channel on demand
+     */
+    private static class Input {
+
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        Input(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip(); // empty
+        }
+
+        /**
+         * Makes at least the given number of bytes available in the buffer
+         */
+        void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Unexpected end of the Bloom Filter data");
+                }
+            }
+            buffer.flip();
+        }
+    }
+
+}
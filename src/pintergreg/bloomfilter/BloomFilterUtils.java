@@ -16,6 +16,8 @@
 package pintergreg.bloomfilter;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Common methods for Bloom Filter implementations
@@ -23,9 +25,14 @@ import java.io.Serializable;
  * @author Gergő Pintér
  */
 public class BloomFilterUtils implements Serializable{
-    
+
     private static final long serialVersionUID = 1L;
 
+    // MurmurHash64A constants, the seed is the one used since the beginning
+    private static final long SEED = 42;
+    private static final long MULTIPLIER = 0xc6a4a7935bd1e995L;
+    private static final int SHIFT = 47;
+
     /**
      * Calculates k pseudo hash for the given key and maps them to an m long
      * vector
@@ -38,20 +45,301 @@ public class BloomFilterUtils implements Serializable{
      */
     public static int[] multiHash(byte[] key, int k, int m) {
         int[] result = new int[k];
-        long h = redis.clients.util.MurmurHash.hash64A(key, 42); // get a 64 bit Murmur hash
-        int a = (int) ((h & 0xFFFFFFFF00000000L) >> 32); // get higher bits
-        int b = (int) (h & 0xFFFFFFFF); // get lower bits
+        long h = hash(key); // get a 64 bit Murmur hash
 
         // create k pseudo hash
         for (int i = 0; i < k; i++) {
-            // a + b * (i + 1) is a signed 32 bit integer, but an unsigned value 
-            // required in the [0, m] interval, so mod m and Math.abs used
-            result[i] = Math.abs((a + b * (i + 1)) % m);
+            result[i] = index(h, i, m);
+        }
+
+        return result;
+    }
+
+    /**
+     * Maps the i-th pseudo hash of a 64 bit hash value to an m long vector.
+     * This is the allocation free counterpart of
+     * @{link #multiHash(byte[], int, int)}, the probe positions are computed
+     * one by one, so they never have to be stored.
+     *
+     * @param hash - 64 bit hash of the item, see the hash methods
+     * @param i - index of the pseudo hash, from 0 to k - 1
+     * @param m - the length where the hashing maps
+     * @return the i-th index where the item is hashed to
+     */
+    public static int index(long hash, int i, int m) {
+        int a = (int) (hash >> 32); // get higher bits
+        int b = (int) hash; // get lower bits
+        // a + b * (i + 1) is a signed 32 bit integer, but an unsigned value
+        // required in the [0, m] interval, so mod m and Math.abs used
+        return Math.abs((a + b * (i + 1)) % m);
+    }
+
+    /**
+     * Maps the i-th pseudo hash of a 64 bit hash value to an m long vector,
+     * where m can be larger than 2^31. Vectors that fit into an integer use the
+     * same indexes as @{link #index(long, int, int)}, larger ones use 64 bit
+     * double hashing, so the indexes cover the whole vector.
+     *
+     * @param hash - 64 bit hash of the item, see the hash methods
+     * @param i - index of the pseudo hash, from 0 to k - 1
+     * @param m - the length where the hashing maps
+     * @return the i-th index where the item is hashed to
+     */
+    public static long index(long hash, int i, long m) {
+        if (m <= Integer.MAX_VALUE) {
+            return index(hash, i, (int) m);
+        }
+        // the 32 bit halves of the hash are not enough, the step of the double
+        // hashing is a remixed (odd) 64 bit value
+        long b = ((hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL) | 1;
+        return ((hash + b * (i + 1)) & Long.MAX_VALUE) % m;
+    }
+
+    /**
+     * Maps the i-th pseudo hash of a 64 bit hash value to an m long vector
+     * without division. The pseudo hashes come from enhanced double hashing
+     * (Dillinger and Manolios): a + i × b + (i^3 - i) / 6, where a is the hash
+     * and b is the hash with its halves swapped. The cubic term keeps two
+     * items from sharing every index when their a and b collide only in part.
+     * The result is mapped to [0, m) with a multiply-shift, the high bits of
+     * the product of the pseudo hash and m, which has no modulo bias.
+     *
+     * @param hash - 64 bit hash of the item, see the hash methods
+     * @param i - index of the pseudo hash, from 0 to k - 1
+     * @param m - the length where the hashing maps
+     * @return the i-th index where the item is hashed to
+     */
+    public static long enhancedIndex(long hash, int i, long m) {
+        long x = hash + i * Long.rotateLeft(hash, 32) + ((long) i * i * i - i) / 6;
+        if (m <= 0xFFFFFFFFL) {
+            return ((x >>> 32) * m) >>> 32;
+        }
+        return unsignedMultiplyHigh(x, m);
+    }
+
+    /**
+     * @return the upper 64 bits of the unsigned 128 bit product of a and b
+     */
+    static long unsignedMultiplyHigh(long a, long b) {
+        long aLow = a & 0xFFFFFFFFL;
+        long aHigh = a >>> 32;
+        long bLow = b & 0xFFFFFFFFL;
+        long bHigh = b >>> 32;
+        long low = aLow * bLow;
+        long middle1 = aHigh * bLow + (low >>> 32);
+        long middle2 = aLow * bHigh + (middle1 & 0xFFFFFFFFL);
+        return aHigh * bHigh + (middle1 >>> 32) + (middle2 >>> 32);
+    }
+
+    /**
+     * Calculates the 64 bit Murmur hash (MurmurHash64A, seed 42) of the key
+     *
+     * @param key - the item to be hashed
+     * @return the 64 bit hash value
+     */
+    public static long hash(byte[] key) {
+        return hash(key, 0, key.length);
+    }
+
+    /**
+     * Calculates the 64 bit Murmur hash of a part of the given array without
+     * copying it
+     *
+     * @param key - array containing the item to be hashed
+     * @param offset - the first byte of the item
+     * @param length - the number of bytes of the item
+     * @return the 64 bit hash value
+     */
+    public static long hash(byte[] key, int offset, int length) {
+        long h = SEED ^ (length * MULTIPLIER);
+        int end = offset + length;
+        int i = offset;
+
+        for (; i + 8 <= end; i += 8) {
+            long w = (key[i] & 0xFFL)
+                    | (key[i + 1] & 0xFFL) << 8
+                    | (key[i + 2] & 0xFFL) << 16
+                    | (key[i + 3] & 0xFFL) << 24
+                    | (key[i + 4] & 0xFFL) << 32
+                    | (key[i + 5] & 0xFFL) << 40
+                    | (key[i + 6] & 0xFFL) << 48
+                    | (key[i + 7] & 0xFFL) << 56;
+            h = mix(h, w);
+        }
+
+        if (i < end) {
+            long w = 0;
+            for (int shift = 0; i < end; i++, shift += 8) {
+                w |= (key[i] & 0xFFL) << shift;
+            }
+            h ^= w;
+            h *= MULTIPLIER;
+        }
+
+        return finish(h);
+    }
+
+    /**
+     * Calculates the 64 bit Murmur hash of the remaining bytes of the buffer.
+     * Neither the position nor the byte order of the buffer is changed.
+     *
+     * @param key - buffer containing the item to be hashed
+     * @return the 64 bit hash value
+     */
+    public static long hash(ByteBuffer key) {
+        if (key.hasArray()) {
+            return hash(key.array(), key.arrayOffset() + key.position(), key.remaining());
+        }
+
+        boolean littleEndian = key.order() == ByteOrder.LITTLE_ENDIAN;
+        int end = key.limit();
+        int i = key.position();
+        long h = SEED ^ (key.remaining() * MULTIPLIER);
+
+        for (; i + 8 <= end; i += 8) {
+            long w = key.getLong(i);
+            h = mix(h, littleEndian ? w : Long.reverseBytes(w));
         }
 
+        if (i < end) {
+            long w = 0;
+            for (int shift = 0; i < end; i++, shift += 8) {
+                w |= (key.get(i) & 0xFFL) << shift;
+            }
+            h ^= w;
+            h *= MULTIPLIER;
+        }
+
+        return finish(h);
+    }
+
+    /**
+     * Calculates the 64 bit Murmur hash of a Long value. The result is the same
+     * as the hash of its 8 byte big-endian representation.
+     *
+     * @param key - the item to be hashed
+     * @return the 64 bit hash value
+     */
+    public static long hash(long key) {
+        long h = SEED ^ (8 * MULTIPLIER);
+        h = mix(h, Long.reverseBytes(key));
+        return finish(h);
+    }
+
+    /**
+     * Calculates the 64 bit Murmur hash of an Integer value. The result is the
+     * same as the hash of its 4 byte big-endian representation.
+     *
+     * @param key - the item to be hashed
+     * @return the 64 bit hash value
+     */
+    public static long hash(int key) {
+        long h = SEED ^ (4 * MULTIPLIER);
+        h ^= Integer.reverseBytes(key) & 0xFFFFFFFFL;
+        h *= MULTIPLIER;
+        return finish(h);
+    }
+
+    /**
+     * Calculates the 64 bit Murmur hash of a character sequence. The result is
+     * the same as the hash of its UTF-8 representation, but the characters are
+     * encoded on the fly, so no byte array is created.
+     *
+     * @param key - the item to be hashed
+     * @return the 64 bit hash value
+     */
+    public static long hash(CharSequence key) {
+        int length = key.length();
+        long h = SEED ^ (utf8Length(key) * MULTIPLIER);
+        long w = 0;
+        int shift = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            int bytes;
+            int count;
+
+            if (c < 0x80) {
+                bytes = c;
+                count = 1;
+            } else if (c < 0x800) {
+                bytes = (0xC0 | c >> 6) | (0x80 | c & 0x3F) << 8;
+                count = 2;
+            } else if (!Character.isSurrogate(c)) {
+                bytes = (0xE0 | c >> 12) | (0x80 | c >> 6 & 0x3F) << 8 | (0x80 | c & 0x3F) << 16;
+                count = 3;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(key.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, key.charAt(++i));
+                bytes = (0xF0 | cp >> 18) | (0x80 | cp >> 12 & 0x3F) << 8
+                        | (0x80 | cp >> 6 & 0x3F) << 16 | (0x80 | cp & 0x3F) << 24;
+                count = 4;
+            } else {
+                // malformed surrogate is replaced with '?' like String.getBytes does
+                bytes = '?';
+                count = 1;
+            }
+
+            for (; count > 0; count--, bytes >>>= 8) {
+                w |= (bytes & 0xFFL) << shift;
+                shift += 8;
+                if (shift == 64) {
+                    h = mix(h, w);
+                    w = 0;
+                    shift = 0;
+                }
+            }
+        }
+
+        if (shift > 0) {
+            h ^= w;
+            h *= MULTIPLIER;
+        }
+
+        return finish(h);
+    }
+
+    /**
+     * Counts the bytes of the UTF-8 representation of the character sequence,
+     * it is also used by @{link HashStrategy}
+     */
+    static int utf8Length(CharSequence key) {
+        int length = key.length();
+        int result = 0;
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c < 0x80) {
+                result += 1;
+            } else if (c < 0x800) {
+                result += 2;
+            } else if (!Character.isSurrogate(c)) {
+                result += 3;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(key.charAt(i + 1))) {
+                result += 4;
+                i++;
+            } else {
+                result += 1;
+            }
+        }
         return result;
     }
 
+    private static long mix(long h, long w) {
+        w *= MULTIPLIER;
+        w ^= w >>> SHIFT;
+        w *= MULTIPLIER;
+        h ^= w;
+        return h * MULTIPLIER;
+    }
+
+    private static long finish(long h) {
+        h ^= h >>> SHIFT;
+        h *= MULTIPLIER;
+        h ^= h >>> SHIFT;
+        return h;
+    }
+
     /**
      * Determinesthe bitvector size for the Bloom Filter based on capacity and
      * false positive probability
@@ -59,18 +347,58 @@ public class BloomFilterUtils implements Serializable{
      * @param n - number of elements to be stored
      * @param p - false positive probability
      * @return the bitvector size
+     * @throws IllegalArgumentException if the size is larger than
+     * Integer.MAX_VALUE, use @{link #determineSize(long, double)} for such
+     * Bloom Filters
      */
     public static int determineSize(int n, double p) {
-        // casted to integer, because it should not be larger than an integer
+        long m = determineSize((long) n, p);
+        if (m > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The bitvector size (" + m + ") is larger than " + Integer.MAX_VALUE);
+        }
+        return (int) m;
+    }
+
+    /**
+     * Determines the bitvector size for the Bloom Filter based on capacity and
+     * false positive probability, the result can be larger than 2^31
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     * @return the bitvector size
+     */
+    public static long determineSize(long n, double p) {
         // Math.log(2) * Math.log(2) = 0.4804530139182014D
-        return (int) Math.ceil((n * Math.log(p)) / -0.4804530139182014D);
-        //TODO throw exception if it is larger than maxint
+        return (long) Math.ceil((n * Math.log(p)) / -0.4804530139182014D);
     }
 
     public static int determineHashNumber(int m, int n) {
+        return determineHashNumber((long) m, (long) n);
+    }
+
+    public static int determineHashNumber(long m, long n) {
         // casted to integer, because it should not be a large number
         // Math.log(2) = 0.6931471805599453
         return (int) Math.ceil((m / n) * 0.6931471805599453D);
     }
 
+    /**
+     * Estimates the number of distinct items in a Bloom Filter from the number
+     * of one bits (Swamidass and Baldi, "Mathematical correction for
+     * fingerprint similarity measures to improve chemical retrieval", 2007):
+     * n = -(m / k) × ln(1 - X / m). Duplicated items set no new bit, so they
+     * are not counted.
+     *
+     * @param m - size of the bitvector
+     * @param k - number of the hash functions
+     * @param bitCount - number of one bits, X
+     * @return the estimated number of items, Double.POSITIVE_INFINITY if every
+     * bit is one
+     */
+    public static double estimateCardinality(long m, int k, long bitCount) {
+        if (bitCount < 0 || bitCount > m) {
+            throw new IllegalArgumentException("The number of one bits has to be from 0 to " + m + ": " + bitCount);
+        }
+        return -((double) m / k) * Math.log1p(-(double) bitCount / m);
+    }
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+/**
+ * Source of time for the aging Bloom Filters. The filters only measure
+ * elapsed time, so the value can have any origin, like
+ * @{link System#nanoTime()}. Tests can inject their own clock to move the time
+ * forward without sleeping.
+ *
+ * @author Gergő Pintér
+ */
+public interface Clock {
+
+    /**
+     * The clock of the JVM, @{link System#nanoTime()}
+     */
+    Clock SYSTEM = SystemClock.INSTANCE;
+
+    /**
+     * @return the current time in nanoseconds
+     */
+    long nanoTime();
+
+    /**
+     * Clock based on @{link System#nanoTime()}
+     */
+    enum SystemClock implements Clock {
+
+        INSTANCE;
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.Serializable;
+
+/**
+ * Thread-safe Bloom Filter without locks. The bitvector is an
+ * @{link AtomicBitArray}, so any number of threads can add and search items at
+ * the same time. An item is visible to every thread once its add returned.
+ *
+ * @author Gergő Pintér
+ */
+public class ConcurrentBloomFilter extends BloomFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create Concurrent Bloom Filter based on bitvector size and the numbers
+     * of hash functions
+     *
+     * @param m - size of the bitvector
+     * @param k - number of the hash functions
+     *
+     * It is not recommended to use this constructor, unless you really know
+     * what you do
+     */
+    public ConcurrentBloomFilter(long m, int k) {
+        this(m, k, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Concurrent Bloom Filter based on bitvector size, the numbers of
+     * hash functions and the hash strategy
+     *
+     * @param m - size of the bitvector
+     * @param k - number of the hash functions
+     * @param hashStrategy - the hash function of the keys
+     */
+    public ConcurrentBloomFilter(long m, int k, HashStrategy hashStrategy) {
+        super(new AtomicBitArray(m), k, hashStrategy);
+    }
+
+    /**
+     * Create Concurrent Bloom Filter based on item number and false positive
+     * probability. The bitvector size and the number of hash functions
+     * determined.
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     */
+    public ConcurrentBloomFilter(long n, double p) {
+        this(n, p, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Concurrent Bloom Filter based on item number, false positive
+     * probability and the hash strategy
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     * @param hashStrategy - the hash function of the keys
+     */
+    public ConcurrentBloomFilter(long n, double p, HashStrategy hashStrategy) {
+        super(new AtomicBitArray(BloomFilterUtils.determineSize(n, p)),
+                BloomFilterUtils.determineHashNumber(BloomFilterUtils.determineSize(n, p), n),
+                hashStrategy);
+    }
+
+    /**
+     * Create Concurrent Bloom Filter on the given bitvector, used by
+     * @{link BloomFilterFormat}
+     */
+    ConcurrentBloomFilter(AtomicBitArray bitSet, int k, HashStrategy hashStrategy) {
+        super(bitSet, k, hashStrategy);
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thread-safe Scalable Bloom Filter. The layers are
+ * @{link ConcurrentBloomFilter} instances, the layer array is never modified,
+ * a new layer is published by replacing the whole array with one CAS, so a
+ * search reads a consistent snapshot of the layers without any lock.
+ *
+ * Every layer counts the adds changing it in a striped counter, the threads
+ * increment different cache lines. The counter is summed only in every few
+ * adds of a thread, and the thread which finds the layer full first seals it and
+ * creates the next layer. So a layer may get somewhat more items than its
+ * capacity, roughly the number of the adding threads times the check
+ * interval, which is at most 64. The adds wait while a layer is sealed but
+ * the next one is not published yet, this is the only point where a thread
+ * may wait for an other one.
+ *
+ * The layers are sized like in @{link ScalableBloomFilter}. This class is not
+ * supported by @{link BloomFilterFormat}, but it is Serializable.
+ *
+ * @author Gergő Pintér
+ */
+public class ConcurrentScalableBloomFilter extends AbstractBloomFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final AtomicReference<Layer[]> layers;
+    // parameters of the first layer
+    private final long m;
+    private final int k;
+    private final long n;
+    private final int growth;
+    private final double ratio;
+    // false positive probability of the first layer
+    private final double p0;
+
+    /**
+     * A layer with its own add counter
+     */
+    private static final class Layer implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final ConcurrentBloomFilter filter;
+        // capacity of the layer
+        final long n;
+        final StripedCounter count = new StripedCounter();
+        // set by the thread which creates the next layer
+        final AtomicBoolean sealed = new AtomicBoolean();
+        // the counter is summed when the cell value & checkMask is zero
+        final int checkMask;
+
+        Layer(long m, int k, long n, HashStrategy hashStrategy) {
+            this.filter = new ConcurrentBloomFilter(m, k, hashStrategy);
+            this.n = n;
+            this.checkMask = Integer.highestOneBit((int) Math.max(1, Math.min(64, n >>> 10))) - 1;
+        }
+    }
+
+    /**
+     * Create Concurrent Scalable Bloom Filter based on item number and false
+     * positive probability, with the default growth factor and tightening
+     * ratio
+     *
+     * @param n - number of elements to be stored in the first layer
+     * @param p - false positive probability
+     */
+    public ConcurrentScalableBloomFilter(long n, double p) {
+        this(n, p, ScalableBloomFilter.DEFAULT_GROWTH, ScalableBloomFilter.DEFAULT_RATIO);
+    }
+
+    /**
+     * Create Concurrent Scalable Bloom Filter based on item number and false
+     * positive probability
+     *
+     * @param n - number of elements to be stored in the first layer
+     * @param p - false positive probability, the bound of the compound false
+     * positive probability of all layers
+     * @param growth - growth factor s of the layer capacity
+     * @param ratio - tightening ratio r of the layer false positive probability
+     * @throws IllegalArgumentException if the growth factor is smaller than 1
+     * or the ratio is not in the (0, 1] interval
+     */
+    public ConcurrentScalableBloomFilter(long n, double p, int growth, double ratio) {
+        this(n, p, growth, ratio, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Concurrent Scalable Bloom Filter based on item number and false
+     * positive probability, every layer uses the given hash strategy
+     *
+     * @param n - number of elements to be stored in the first layer
+     * @param p - false positive probability, the bound of the compound false
+     * positive probability of all layers
+     * @param growth - growth factor s of the layer capacity
+     * @param ratio - tightening ratio r of the layer false positive probability
+     * @param hashStrategy - the hash function of the keys
+     * @throws IllegalArgumentException if the growth factor is smaller than 1
+     * or the ratio is not in the (0, 1] interval
+     */
+    public ConcurrentScalableBloomFilter(long n, double p, int growth, double ratio, HashStrategy hashStrategy) {
+        super(hashStrategy);
+        if (growth < 1) {
+            throw new IllegalArgumentException("Growth factor has to be at least 1: " + growth);
+        }
+        if (!(ratio > 0 && ratio <= 1)) {
+            throw new IllegalArgumentException("Tightening ratio has to be in (0, 1]: " + ratio);
+        }
+        this.p0 = ratio < 1 ? p * (1 - ratio) : p;
+        this.m = BloomFilterUtils.determineSize(n, this.p0);
+        this.k = BloomFilterUtils.determineHashNumber(this.m, n);
+        this.n = (long) Math.floor(this.m * 0.6931471805599453D / this.k);
+        this.growth = growth;
+        this.ratio = ratio;
+        this.layers = new AtomicReference<Layer[]>(new Layer[]{newLayer(0)});
+    }
+
+    /**
+     * Creates the i-th layer, empty
+     */
+    private Layer newLayer(int i) {
+        if (i == 0 || (growth == 1 && ratio == 1)) {
+            return new Layer(m, k, n, hashStrategy);
+        }
+
+        long layerN = n;
+        for (int j = 0; j < i; j++) {
+            layerN = layerN > Long.MAX_VALUE / growth ? Long.MAX_VALUE : layerN * growth;
+        }
+        double layerP = p0 * Math.pow(ratio, i);
+        long layerM = BloomFilterUtils.determineSize(layerN, layerP);
+        int layerK = BloomFilterUtils.determineHashNumber(layerM, layerN);
+        return new Layer(layerM, layerK, (long) Math.floor(layerM * 0.6931471805599453D / layerK), hashStrategy);
+    }
+
+    /**
+     * Add item to the newest layer based on its 64 bit hash value
+     *
+     * @param hash - the 64 bit hash of the item
+     */
+    @Override
+    protected void addHash(long hash) {
+        putHash(hash);
+    }
+
+    /**
+     * Add item to the newest layer based on its 64 bit hash value, unless an
+     * older layer already contains it. Only the items changing the newest
+     * layer are counted. If the layer gets full, the first thread noticing it
+     * seals the layer and publishes a new one, the other threads wait for the
+     * new layer.
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if the newest layer changed, False otherwise
+     */
+    @Override
+    protected boolean putHash(long hash) {
+        Layer[] current = layers.get();
+        Layer last = current[current.length - 1];
+        // a preempted sealing thread would let the others overfill the layer
+        while (last.sealed.get()) {
+            Thread.yield();
+            current = layers.get();
+            last = current[current.length - 1];
+        }
+        for (int i = current.length - 2; i >= 0; i--) {
+            if (current[i].filter.includeHash(hash)) {
+                return false;
+            }
+        }
+
+        if (!last.filter.putHash(hash)) {
+            return false;
+        }
+        if ((last.count.increment() & last.checkMask) == 0
+                && last.count.sum() >= last.n
+                && last.sealed.compareAndSet(false, true)) {
+            Layer[] extended = Arrays.copyOf(current, current.length + 1);
+            try {
+                extended[current.length] = newLayer(current.length);
+            } catch (RuntimeException | Error ex) {
+                // let the next add try again instead of waiting forever
+                last.sealed.set(false);
+                throw ex;
+            }
+            // only the sealing thread replaces this snapshot, it cannot fail
+            layers.compareAndSet(current, extended);
+        }
+        return true;
+    }
+
+    /**
+     * Search item in the snapshot of the layers based on its 64 bit hash
+     * value, from the newest layer
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if the element is found in any layer, False otherwise.
+     */
+    @Override
+    protected boolean includeHash(long hash) {
+        Layer[] current = layers.get();
+        for (int i = current.length - 1; i >= 0; i--) {
+            if (current[i].filter.includeHash(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of layers, mainly for debugging purposes.
+     *
+     * @return the number of layers
+     */
+    public int getSize() {
+        return layers.get().length;
+    }
+
+    /**
+     * @return the total size of the bitvectors of the layers in bits
+     */
+    public long getBitSize() {
+        long result = 0;
+        for (Layer layer : layers.get()) {
+            result += layer.filter.m;
+        }
+        return result;
+    }
+
+    /* .......... CARDINALITY .......... */
+    /**
+     * Estimates the number of distinct items as the sum of the estimates of
+     * the layers, see @{link BloomFilter#estimateCardinality()}
+     *
+     * @return the estimated number of distinct items
+     */
+    public double estimateCardinality() {
+        double result = 0;
+        for (Layer layer : layers.get()) {
+            result += layer.filter.estimateCardinality();
+        }
+        return result;
+    }
+
+    /* .......... METRICS .......... */
+    @Override
+    long bitCount() {
+        long result = 0;
+        for (Layer layer : layers.get()) {
+            result += layer.filter.bitCount();
+        }
+        return result;
+    }
+
+    @Override
+    long bitSize() {
+        return getBitSize();
+    }
+
+    /**
+     * @return 1 - the product of (1 - the estimate of the layer)
+     */
+    @Override
+    double estimatedFalsePositiveProbability() {
+        double none = 1;
+        for (Layer layer : layers.get()) {
+            none *= 1 - layer.filter.estimatedFalsePositiveProbability();
+        }
+        return 1 - none;
+    }
+
+    @Override
+    int layerCount() {
+        return getSize();
+    }
+}
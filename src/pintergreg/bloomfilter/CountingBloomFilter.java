@@ -0,0 +1,324 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Counting Bloom Filter, that can remove items. Every position of the vector
+ * is a 4 bit counter instead of a bit, 16 counters are packed into a long. The
+ * indexes are the same as the ones of @{link BloomFilter} with the same
+ * @{link HashStrategy}.
+ *
+ * The counters saturate at 15: a saturated counter is never incremented or
+ * decremented again, because its real value is not known any more. An item
+ * that was never added must not be removed, otherwise other items can
+ * disappear; remove only checks that the item is included.
+ *
+ * @author Gergő Pintér
+ */
+public class CountingBloomFilter extends AbstractBloomFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // bits of a counter and the largest counter value
+    static final int COUNTER_BITS = 4;
+    static final long MAX_COUNT = (1L << COUNTER_BITS) - 1;
+
+    protected long m;
+    protected int k;
+
+    // 16 counters in a word, counter i is in word i / 16 at bit 4 * (i % 16)
+    protected LongBitArray counters;
+
+    /**
+     * Create Counting Bloom Filter based on vector size and the numbers of hash
+     * functions
+     *
+     * @param m - number of the counters
+     * @param k - number of the hash functions
+     *
+     * It is not recommended to use this constructor, unless you really know
+     * what you do
+     */
+    public CountingBloomFilter(long m, int k) {
+        this(m, k, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Counting Bloom Filter based on vector size, the numbers of hash
+     * functions and the hash strategy
+     *
+     * @param m - number of the counters
+     * @param k - number of the hash functions
+     * @param hashStrategy - the hash function of the keys
+     */
+    public CountingBloomFilter(long m, int k, HashStrategy hashStrategy) {
+        super(hashStrategy);
+        this.m = m;
+        this.k = k;
+
+        this.counters = new LongBitArray(m * COUNTER_BITS);
+    }
+
+    /**
+     * Create Counting Bloom Filter based on item number and false positive
+     * probability. The vector size and the number of hash functions
+     * determined, they are the same as the ones of @{link BloomFilter}.
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     */
+    public CountingBloomFilter(long n, double p) {
+        this(n, p, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Counting Bloom Filter based on item number, false positive
+     * probability and the hash strategy
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     * @param hashStrategy - the hash function of the keys
+     */
+    public CountingBloomFilter(long n, double p, HashStrategy hashStrategy) {
+        super(hashStrategy);
+        this.m = BloomFilterUtils.determineSize(n, p);
+        this.k = BloomFilterUtils.determineHashNumber(this.m, n);
+
+        this.counters = new LongBitArray(this.m * COUNTER_BITS);
+    }
+
+    /**
+     * Add item to Counting Bloom Filter based on its 64 bit hash value, the k
+     * counters are incremented
+     *
+     * @param hash - the 64 bit hash of the item
+     */
+    @Override
+    protected void addHash(long hash) {
+        for (int i = 0; i < this.k; i++) {
+            long index = this.hashStrategy.index(hash, i, this.m);
+            long w = index >>> 4;
+            long word = this.counters.getWord(w);
+            int shift = (int) (index & 15) << 2;
+            if ((word >>> shift & MAX_COUNT) != MAX_COUNT) {
+                this.counters.setWord(w, word + (1L << shift));
+            }
+        }
+    }
+
+    /**
+     * Search item in the Counting Bloom Filter based on its 64 bit hash value
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if Bloom Filter contains the given item, False otherwise
+     */
+    @Override
+    protected boolean includeHash(long hash) {
+        boolean result = true;
+
+        for (int i = 0; i < this.k; i++) {
+            long index = this.hashStrategy.index(hash, i, this.m);
+            if ((this.counters.getWord(index >>> 4) >>> ((int) (index & 15) << 2) & MAX_COUNT) == 0) {
+                result = false;
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Remove item from the Counting Bloom Filter based on its 64 bit hash
+     * value, the k counters are decremented if the item is included
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if the item was included and removed, False otherwise
+     */
+    protected boolean removeHash(long hash) {
+        boolean result = includeHash(hash);
+
+        if (result) {
+            for (int i = 0; i < this.k; i++) {
+                long index = this.hashStrategy.index(hash, i, this.m);
+                long w = index >>> 4;
+                long word = this.counters.getWord(w);
+                int shift = (int) (index & 15) << 2;
+                long count = word >>> shift & MAX_COUNT;
+                // a probe hashed twice can reach zero before the last one
+                if (count != MAX_COUNT && count != 0) {
+                    this.counters.setWord(w, word - (1L << shift));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Remove item from the Counting Bloom Filter
+     *
+     * @param key - an item to be removed from the Bloom Filter
+     * @return True if the item was included and removed, False otherwise
+     */
+    public boolean remove(byte[] key) {
+        return removeHash(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Remove item from the Counting Bloom Filter
+     *
+     * @param key - array containing the item to be removed from the Bloom
+     * Filter
+     * @param offset - the first byte of the item
+     * @param length - the number of bytes of the item
+     * @return True if the item was included and removed, False otherwise
+     */
+    public boolean remove(byte[] key, int offset, int length) {
+        return removeHash(this.hashStrategy.hash(key, offset, length));
+    }
+
+    /**
+     * Remove item from the Counting Bloom Filter
+     *
+     * @param key - the remaining bytes of the buffer are removed from the Bloom
+     * Filter, the position of the buffer is not changed
+     * @return True if the item was included and removed, False otherwise
+     */
+    public boolean remove(ByteBuffer key) {
+        return removeHash(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Remove item from the Counting Bloom Filter
+     *
+     * @param key - a character sequence to be removed from the Bloom Filter, it
+     * is handled as its UTF-8 representation
+     * @return True if the item was included and removed, False otherwise
+     */
+    public boolean remove(CharSequence key) {
+        return removeHash(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Remove item from the Counting Bloom Filter
+     *
+     * @param key - a Long item to be removed from the Bloom Filter
+     * @return True if the item was included and removed, False otherwise
+     */
+    public boolean remove(long key) {
+        return removeHash(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Remove item from the Counting Bloom Filter
+     *
+     * @param key - an Integer item to be removed from the Bloom Filter
+     * @return True if the item was included and removed, False otherwise
+     */
+    public boolean remove(int key) {
+        return removeHash(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Clear the Counting Bloom Filter, set every counter to zero
+     */
+    public void clear() {
+        this.counters.clear();
+    }
+
+    /**
+     * Creates a plain Bloom Filter from the counters: a bit is one if its
+     * counter is not zero. The new Bloom Filter includes the same items, it
+     * is 4 times smaller and it is not changed by the later adds and removes.
+     * Four words of counters are turned into a word of bits without looking
+     * at the counters one by one.
+     *
+     * @return a new Bloom Filter with the same indexes and hash strategy
+     */
+    public BloomFilter toBloomFilter() {
+        LongBitArray bits = new LongBitArray(this.m);
+        long counterWords = LongBitArray.wordCount(this.m * COUNTER_BITS);
+        long words = LongBitArray.wordCount(this.m);
+
+        for (long w = 0; w < words; w++) {
+            long word = 0;
+            for (int j = 0; j < 4; j++) {
+                long c = (w << 2) + j;
+                if (c < counterWords) {
+                    word |= nonZero(this.counters.getWord(c)) << (j << 4);
+                }
+            }
+            bits.setWord(w, word);
+        }
+
+        return new BloomFilter(bits, this.k, this.hashStrategy);
+    }
+
+    /**
+     * Packs the non-zero flags of the 16 counters of a word into 16 bits
+     */
+    private static long nonZero(long word) {
+        // lowest bit of every counter is one if the counter is not zero
+        long t = (word | word >>> 1 | word >>> 2 | word >>> 3) & 0x1111111111111111L;
+        // pull the flags together: 4 bits apart, then 2, 4, 8 and 16 bit groups
+        t = (t | t >>> 3) & 0x0303030303030303L;
+        t = (t | t >>> 6) & 0x000F000F000F000FL;
+        t = (t | t >>> 12) & 0x000000FF000000FFL;
+        t = (t | t >>> 24) & 0x000000000000FFFFL;
+        return t;
+    }
+
+    /* .......... METRICS .......... */
+    /**
+     * @return the number of non-zero counters
+     */
+    @Override
+    long bitCount() {
+        long words = LongBitArray.wordCount(this.m * COUNTER_BITS);
+        long result = 0;
+        for (long w = 0; w < words; w++) {
+            long word = this.counters.getWord(w);
+            word |= word >>> 1;
+            word |= word >>> 2;
+            result += Long.bitCount(word & 0x1111111111111111L);
+        }
+        return result;
+    }
+
+    @Override
+    long bitSize() {
+        return this.m * COUNTER_BITS;
+    }
+
+    /**
+     * @return the ratio of the non-zero counters
+     */
+    @Override
+    double fillRatio() {
+        return (double) bitCount() / this.m;
+    }
+
+    /**
+     * @return (non-zero counters / m)^k
+     */
+    @Override
+    double estimatedFalsePositiveProbability() {
+        return Math.pow(fillRatio(), this.k);
+    }
+}
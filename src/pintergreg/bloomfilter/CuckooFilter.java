@@ -0,0 +1,502 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Cuckoo Filter (Fan et al., "Cuckoo Filter: Practically Better Than Bloom",
+ * 2014). Instead of bits, a short fingerprint of every item is stored in one
+ * of its two candidate buckets, so a search reads two buckets and items can be
+ * removed. At false positive probabilities of 0.001 and below it needs less
+ * memory than @{link BloomFilter}.
+ *
+ * The first bucket and the fingerprint are taken from the higher and the lower
+ * half of the 64 bit hash of the @{link HashStrategy}. The second bucket is
+ * (H(fingerprint) - first bucket) mod the number of buckets, so the two
+ * buckets can be computed from each other and the number of buckets does not
+ * have to be a power of two. A zero fingerprint marks an empty slot.
+ *
+ * When both buckets are full, an item is evicted to its other bucket. After
+ * 500 evictions the last evicted fingerprint is kept aside and the filter
+ * becomes full, no item is lost, but further items are not stored: add throws
+ * IllegalStateException and put returns False, the filter and its size are
+ * not changed. Removing an item makes room for the kept aside fingerprint.
+ *
+ * @author Gergő Pintér
+ */
+public class CuckooFilter extends AbstractBloomFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default number of fingerprints in a bucket
+     */
+    public static final int DEFAULT_BUCKET_SIZE = 4;
+
+    // number of evictions before the filter is full
+    static final int MAX_KICKS = 500;
+
+    protected final long buckets;
+    protected final int bucketSize;
+    protected final int fingerprintBits;
+
+    private final long fingerprintMask;
+    // fingerprint of slot j of bucket i at bit (i * bucketSize + j) * fingerprintBits
+    private final LongBitArray slots;
+    private long size = 0;
+
+    // the fingerprint that did not fit, 0 if there is none
+    private long victim = 0;
+    private long victimBucket;
+    // state of the generator choosing the evicted slots
+    private long random = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Create Cuckoo Filter based on its dimensions
+     *
+     * @param buckets - number of buckets
+     * @param bucketSize - number of fingerprints in a bucket, from 1 to 8
+     * @param fingerprintBits - size of a fingerprint in bits, from 2 to 32
+     *
+     * It is not recommended to use this constructor, unless you really know
+     * what you do
+     */
+    public CuckooFilter(long buckets, int bucketSize, int fingerprintBits) {
+        this(buckets, bucketSize, fingerprintBits, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Cuckoo Filter based on its dimensions and the hash strategy
+     *
+     * @param buckets - number of buckets
+     * @param bucketSize - number of fingerprints in a bucket, from 1 to 8
+     * @param fingerprintBits - size of a fingerprint in bits, from 2 to 32
+     * @param hashStrategy - the hash function of the keys
+     */
+    public CuckooFilter(long buckets, int bucketSize, int fingerprintBits, HashStrategy hashStrategy) {
+        super(hashStrategy);
+        if (buckets < 1 || buckets > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("The number of buckets has to be from 1 to 2^32: " + buckets);
+        }
+        if (bucketSize < 1 || bucketSize > 8) {
+            throw new IllegalArgumentException("The bucket size has to be from 1 to 8: " + bucketSize);
+        }
+        if (fingerprintBits < 2 || fingerprintBits > 32) {
+            throw new IllegalArgumentException("The fingerprint size has to be from 2 to 32 bits: " + fingerprintBits);
+        }
+        this.buckets = buckets;
+        this.bucketSize = bucketSize;
+        this.fingerprintBits = fingerprintBits;
+        this.fingerprintMask = (1L << fingerprintBits) - 1;
+        this.slots = new LongBitArray(buckets * bucketSize * fingerprintBits);
+    }
+
+    /**
+     * Create Cuckoo Filter based on item number and false positive
+     * probability, with buckets of 4 fingerprints
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     */
+    public CuckooFilter(long n, double p) {
+        this(n, p, DEFAULT_BUCKET_SIZE);
+    }
+
+    /**
+     * Create Cuckoo Filter based on item number, false positive probability
+     * and the hash strategy, with buckets of 4 fingerprints
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     * @param hashStrategy - the hash function of the keys
+     */
+    public CuckooFilter(long n, double p, HashStrategy hashStrategy) {
+        this(n, p, DEFAULT_BUCKET_SIZE, hashStrategy);
+    }
+
+    /**
+     * Create Cuckoo Filter based on item number, false positive probability
+     * and bucket size. A search compares 2b fingerprints, so the fingerprint
+     * has log2(2b / p) bits, and there are enough buckets to keep the load
+     * below the one where inserts start to fail.
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     * @param bucketSize - number of fingerprints in a bucket, 4 is the most
+     * space efficient, from 1 to 8
+     */
+    public CuckooFilter(long n, double p, int bucketSize) {
+        this(n, p, bucketSize, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Cuckoo Filter based on item number, false positive probability,
+     * bucket size and the hash strategy
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     * @param bucketSize - number of fingerprints in a bucket, from 1 to 8
+     * @param hashStrategy - the hash function of the keys
+     */
+    public CuckooFilter(long n, double p, int bucketSize, HashStrategy hashStrategy) {
+        this(determineBuckets(n, bucketSize), bucketSize, determineFingerprintBits(p, bucketSize), hashStrategy);
+    }
+
+    /**
+     * Add item to Cuckoo Filter based on its 64 bit hash value
+     *
+     * @param hash - the 64 bit hash of the item
+     * @throws IllegalStateException if the filter is full, the item is not
+     * added
+     */
+    @Override
+    protected void addHash(long hash) {
+        if (victim != 0) {
+            throw new IllegalStateException("The Cuckoo Filter is full");
+        }
+        insertHash(hash);
+    }
+
+    /**
+     * Add item to Cuckoo Filter based on its 64 bit hash value and report
+     * whether it was new. An included item is not stored again, so repeated
+     * puts do not fill up the filter and the size counts the item once. A
+     * full filter does not throw, the item is not added and False is
+     * returned, @{link #isFull()} tells it apart from an included item.
+     *
+     * As with every false positive, an item that was not stored because of a
+     * matching fingerprint must not be removed later: the removal takes the
+     * fingerprint of the other item.
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if the item was not included and it is added, False if it
+     * was possibly included or the filter is full
+     */
+    @Override
+    protected boolean putHash(long hash) {
+        if (victim != 0 || includeHash(hash)) {
+            return false;
+        }
+        insertHash(hash);
+        return true;
+    }
+
+    /**
+     * Stores the fingerprint of the item, the filter must not be full. The
+     * item is stored even if the filter becomes full, then the last evicted
+     * fingerprint is kept aside. The size is incremented once the item is
+     * stored.
+     */
+    private void insertHash(long hash) {
+        long fingerprint = fingerprint(hash);
+        long i1 = bucket(hash);
+        long i2 = alternate(i1, fingerprint);
+
+        if (!insert(i1, fingerprint) && !insert(i2, fingerprint)) {
+            // evict a random fingerprint to its other bucket
+            long i = (nextRandom() & 1) == 0 ? i1 : i2;
+            boolean placed = false;
+            for (int kick = 0; kick < MAX_KICKS && !placed; kick++) {
+                long slot = i * bucketSize + (int) ((nextRandom() >>> 33) % bucketSize);
+                long evicted = get(slot);
+                set(slot, fingerprint);
+                fingerprint = evicted;
+                i = alternate(i, fingerprint);
+                placed = insert(i, fingerprint);
+            }
+            if (!placed) {
+                victim = fingerprint;
+                victimBucket = i;
+            }
+        }
+        this.size++;
+    }
+
+    /**
+     * Search item in the Cuckoo Filter based on its 64 bit hash value, the two
+     * buckets of the item are read
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if Cuckoo Filter contains the given item, False otherwise
+     */
+    @Override
+    protected boolean includeHash(long hash) {
+        long fingerprint = fingerprint(hash);
+        long i1 = bucket(hash);
+        long i2 = alternate(i1, fingerprint);
+
+        return find(i1, fingerprint) >= 0 || find(i2, fingerprint) >= 0
+                || (victim == fingerprint && (victimBucket == i1 || victimBucket == i2));
+    }
+
+    /**
+     * Remove item from the Cuckoo Filter based on its 64 bit hash value. Only
+     * added items can be removed, otherwise an other item with the same
+     * fingerprint can disappear.
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if the item was found and removed, False otherwise
+     */
+    protected boolean removeHash(long hash) {
+        long fingerprint = fingerprint(hash);
+        long i1 = bucket(hash);
+        long i2 = alternate(i1, fingerprint);
+        boolean result = true;
+
+        long slot = find(i1, fingerprint);
+        if (slot < 0) {
+            slot = find(i2, fingerprint);
+        }
+        if (slot >= 0) {
+            set(slot, 0);
+            // the kept aside fingerprint fits again
+            if (victim != 0 && insert(victimBucket, victim)) {
+                victim = 0;
+            }
+        } else if (victim == fingerprint && (victimBucket == i1 || victimBucket == i2)) {
+            victim = 0;
+        } else {
+            result = false;
+        }
+
+        if (result) {
+            this.size--;
+        }
+        return result;
+    }
+
+    /**
+     * Remove item from the Cuckoo Filter
+     *
+     * @param key - an item to be removed from the Cuckoo Filter
+     * @return True if the item was found and removed, False otherwise
+     */
+    public boolean remove(byte[] key) {
+        return removeHash(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Remove item from the Cuckoo Filter
+     *
+     * @param key - array containing the item to be removed from the Cuckoo
+     * Filter
+     * @param offset - the first byte of the item
+     * @param length - the number of bytes of the item
+     * @return True if the item was found and removed, False otherwise
+     */
+    public boolean remove(byte[] key, int offset, int length) {
+        return removeHash(this.hashStrategy.hash(key, offset, length));
+    }
+
+    /**
+     * Remove item from the Cuckoo Filter
+     *
+     * @param key - the remaining bytes of the buffer are removed from the
+     * Cuckoo Filter, the position of the buffer is not changed
+     * @return True if the item was found and removed, False otherwise
+     */
+    public boolean remove(ByteBuffer key) {
+        return removeHash(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Remove item from the Cuckoo Filter
+     *
+     * @param key - a character sequence to be removed from the Cuckoo Filter,
+     * it is handled as its UTF-8 representation
+     * @return True if the item was found and removed, False otherwise
+     */
+    public boolean remove(CharSequence key) {
+        return removeHash(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Remove item from the Cuckoo Filter
+     *
+     * @param key - a Long item to be removed from the Cuckoo Filter
+     * @return True if the item was found and removed, False otherwise
+     */
+    public boolean remove(long key) {
+        return removeHash(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * Remove item from the Cuckoo Filter
+     *
+     * @param key - an Integer item to be removed from the Cuckoo Filter
+     * @return True if the item was found and removed, False otherwise
+     */
+    public boolean remove(int key) {
+        return removeHash(this.hashStrategy.hash(key));
+    }
+
+    /**
+     * @return the number of stored elements
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return True if the Cuckoo Filter is full and adds fail, False otherwise
+     */
+    public boolean isFull() {
+        return victim != 0;
+    }
+
+    /**
+     * @return the size of the fingerprint table in bits
+     */
+    public long getBitSize() {
+        return slots.bitSize();
+    }
+
+    /**
+     * Clear the Cuckoo Filter, every slot becomes empty
+     */
+    public void clear() {
+        this.slots.clear();
+        this.size = 0;
+        this.victim = 0;
+    }
+
+    /**
+     * Determines the number of buckets, so that n items fill them to the
+     * load factor reachable with the given bucket size
+     *
+     * @param n - number of elements to be stored
+     * @param bucketSize - number of fingerprints in a bucket
+     * @return the number of buckets
+     */
+    public static long determineBuckets(long n, int bucketSize) {
+        double load = bucketSize >= 8 ? 0.98 : bucketSize >= 4 ? 0.95 : bucketSize >= 2 ? 0.84 : 0.5;
+        return Math.max(1, (long) Math.ceil(n / (bucketSize * load)));
+    }
+
+    /**
+     * Determines the fingerprint size, a search compares 2b fingerprints, each
+     * matches with 2^-f probability
+     *
+     * @param p - false positive probability
+     * @param bucketSize - number of fingerprints in a bucket
+     * @return the size of a fingerprint in bits
+     */
+    public static int determineFingerprintBits(double p, int bucketSize) {
+        int bits = (int) Math.ceil(Math.log(2.0 * bucketSize / p) / Math.log(2));
+        return Math.max(2, Math.min(32, bits));
+    }
+
+    /* .......... BUCKETS .......... */
+    private long fingerprint(long hash) {
+        long result = hash & fingerprintMask;
+        return result == 0 ? 1 : result;
+    }
+
+    /**
+     * Selects the first bucket with a multiply-shift on the higher 32 bits
+     */
+    private long bucket(long hash) {
+        return ((hash >>> 32) * buckets) >>> 32;
+    }
+
+    /**
+     * @return the other bucket of the fingerprint, alternate(alternate(i)) is i
+     */
+    private long alternate(long i, long fingerprint) {
+        long h = ((fingerprint * 0xc6a4a7935bd1e995L) >>> 32) % buckets;
+        long result = h - i;
+        return result < 0 ? result + buckets : result;
+    }
+
+    /**
+     * Stores the fingerprint in an empty slot of the bucket
+     *
+     * @return True if there was an empty slot, False otherwise
+     */
+    private boolean insert(long bucket, long fingerprint) {
+        long slot = bucket * bucketSize;
+        for (int j = 0; j < bucketSize; j++, slot++) {
+            if (get(slot) == 0) {
+                set(slot, fingerprint);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the slot of the fingerprint in the bucket, -1 if it is not there
+     */
+    private long find(long bucket, long fingerprint) {
+        long slot = bucket * bucketSize;
+        for (int j = 0; j < bucketSize; j++, slot++) {
+            if (get(slot) == fingerprint) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private long get(long slot) {
+        long bit = slot * fingerprintBits;
+        long w = bit >>> 6;
+        int offset = (int) bit & 63;
+        long result = slots.getWord(w) >>> offset;
+        if (offset + fingerprintBits > 64) {
+            result |= slots.getWord(w + 1) << (64 - offset);
+        }
+        return result & fingerprintMask;
+    }
+
+    private void set(long slot, long fingerprint) {
+        long bit = slot * fingerprintBits;
+        long w = bit >>> 6;
+        int offset = (int) bit & 63;
+        slots.setWord(w, slots.getWord(w) & ~(fingerprintMask << offset) | fingerprint << offset);
+        if (offset + fingerprintBits > 64) {
+            int shift = 64 - offset;
+            slots.setWord(w + 1, slots.getWord(w + 1) & ~(fingerprintMask >>> shift) | fingerprint >>> shift);
+        }
+    }
+
+    /**
+     * xorshift64 generator of the evicted slots
+     */
+    private long nextRandom() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return random;
+    }
+
+    /* .......... METRICS .......... */
+    @Override
+    long bitSize() {
+        return getBitSize();
+    }
+
+    /**
+     * @return 1 - (1 - 1 / (2^f - 1))^(2 × stored / buckets), a search
+     * compares the fingerprint with the stored ones of two buckets
+     */
+    @Override
+    double estimatedFalsePositiveProbability() {
+        double match = 1.0 / ((1L << fingerprintBits) - 1);
+        return 1 - Math.pow(1 - match, 2.0 * size / buckets);
+    }
+}
@@ -16,6 +16,7 @@
 package pintergreg.bloomfilter;
 
 import java.io.Serializable;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Extended version of @{link BloomFilter}, that adds size parameter to follow
@@ -27,8 +28,9 @@ public class ExtendedBloomFilter extends BloomFilter implements Serializable{
     
     private static final long serialVersionUID = 1L;
 
-    private int size;
-    private final int n;
+    protected long size;
+    // package-private, it is read by BloomFilterFormat
+    final long n;
 
     /**
      * Create Extended Bloom Filter based on bitvector size and the numbers of
@@ -40,9 +42,9 @@ public class ExtendedBloomFilter extends BloomFilter implements Serializable{
      * It is not recommended to use this constructor, unless you really know
      * what you do
      */
-    public ExtendedBloomFilter(int m, int k) {
+    public ExtendedBloomFilter(long m, int k) {
         super(m, k);
-        this.n = (int) Math.floor(m * 0.6931471805599453D / k);
+        this.n = (long) Math.floor(m * 0.6931471805599453D / k);
         this.size = 0;
     }
 
@@ -53,45 +55,214 @@ public class ExtendedBloomFilter extends BloomFilter implements Serializable{
      * @param n - number of elements to be stored
      * @param p - false positive probability
      */
-    public ExtendedBloomFilter(int n, double p) {
-        super(n, p);
+    public ExtendedBloomFilter(long n, double p) {
+        this(n, p, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Extended Bloom Filter based on item number, false positive
+     * probability and the hash strategy
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     * @param hashStrategy - the hash function of the keys
+     */
+    public ExtendedBloomFilter(long n, double p, HashStrategy hashStrategy) {
+        super(n, p, hashStrategy);
         this.n = n;
         this.size = 0;
     }
 
+    /**
+     * Create Extended Bloom Filter on the given bitvector, for example on a
+     * @{link MappedBitArray}. The number of stored elements starts from zero
+     * even if the bitvector contains items.
+     *
+     * @param bitSet - the bitvector, its size is m
+     * @param k - number of the hash functions
+     */
+    public ExtendedBloomFilter(BitArray bitSet, int k) {
+        super(bitSet, k);
+        this.n = (long) Math.floor(this.m * 0.6931471805599453D / k);
+        this.size = 0;
+    }
+
+    /**
+     * Create Extended Bloom Filter with every parameter given, it is used by
+     * the subclasses and @{link ScalableBloomFilter}
+     *
+     * @param m - size of the bitvector
+     * @param k - number of the hash functions
+     * @param n - number of elements to be stored
+     */
+    protected ExtendedBloomFilter(long m, int k, long n) {
+        this(m, k, n, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Extended Bloom Filter with every parameter given, it is used by
+     * the subclasses and @{link ScalableBloomFilter}
+     *
+     * @param m - size of the bitvector
+     * @param k - number of the hash functions
+     * @param n - number of elements to be stored
+     * @param hashStrategy - the hash function of the keys
+     */
+    protected ExtendedBloomFilter(long m, int k, long n, HashStrategy hashStrategy) {
+        super(m, k, hashStrategy);
+        this.n = n;
+        this.size = 0;
+    }
+
+    /**
+     * Create Extended Bloom Filter on the given bitvector with every parameter
+     * given, used by @{link BloomFilterFormat}
+     */
+    protected ExtendedBloomFilter(BitArray bitSet, int k, long n, long size) {
+        this(bitSet, k, n, size, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Extended Bloom Filter on the given bitvector with every parameter
+     * and the hash strategy given, used by @{link BloomFilterFormat}
+     */
+    protected ExtendedBloomFilter(BitArray bitSet, int k, long n, long size, HashStrategy hashStrategy) {
+        super(bitSet, k, hashStrategy);
+        this.n = n;
+        this.size = size;
+    }
+
     /**
      * @return the number of stored elements
      */
-    public int getSize() {
+    public long getSize() {
         return size;
     }
 
     /**
-     * Add item to Bloom Filter
+     * Add item to Bloom Filter based on its 64 bit hash value. The number of
+     * stored elements grows only if a bit changed, so adding an item again
+     * does not use up the capacity.
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if any bit of the item was zero before, False otherwise
+     */
+    @Override
+    protected boolean putHash(long hash) {
+        boolean changed = super.putHash(hash);
+        if (changed) {
+            this.size++;
+        }
+        return changed;
+    }
+
+    /**
+     * Add items to Bloom Filter based on their 64 bit hash values, only the
+     * items changing the bitvector are counted
      *
-     * @param key - an item to be added to the Bloom Filter
+     * @param hashes - the 64 bit hashes of the items
+     * @param count - the number of hashes to be used
+     * @return the number of items that changed the bitvector
      */
     @Override
-    public void add(byte[] key) {
-        this.size++;
-        super.add(key);
+    protected int putHashes(long[] hashes, int count) {
+        int changed = super.putHashes(hashes, count);
+        this.size += changed;
+        return changed;
     }
 
     /**
-     * @return True if Extended Bloom Filter is full, False otherwise
+     * @return True if the number of stored elements reached the capacity,
+     * False otherwise
      */
     public boolean isFull() {
-        return size == this.n;
+        return size >= this.n;
+    }
+
+    /**
+     * Checks the fill of the bitvector instead of the number of stored
+     * elements. It counts the one bits of the whole bitvector, so it is
+     * meant for occasional checks, for example after a union. A filter with
+     * the optimal number of hash functions is full at a fill ratio of 0.5.
+     *
+     * @param maxFillRatio - the highest allowed ratio of one bits
+     * @return True if the ratio of one bits reached maxFillRatio, False
+     * otherwise
+     * @throws IllegalArgumentException if the ratio is not in the (0, 1]
+     * interval
+     */
+    public boolean isFull(double maxFillRatio) {
+        if (!(maxFillRatio > 0 && maxFillRatio <= 1)) {
+            throw new IllegalArgumentException("Fill ratio has to be in (0, 1]: " + maxFillRatio);
+        }
+        return cardinality() >= maxFillRatio * this.m;
     }
 
     /**
-     * Search item in the Bloom Filter based on indexes. This method is used for
-     * a more optimal search in @{link ScalableBloomFilter}
+     * Adds every item of the other Bloom Filter to this one. The number of
+     * stored elements becomes the sum of the two sizes, so items added to
+     * both are counted twice.
+     *
+     * @param other - a compatible Bloom Filter, it is not changed
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     */
+    @Override
+    public void union(BloomFilter other, ForkJoinPool pool) {
+        super.union(other, pool);
+        if (other instanceof ExtendedBloomFilter) {
+            this.size += ((ExtendedBloomFilter) other).size;
+        }
+    }
+
+    /**
+     * Adds every item of the other Bloom Filters to this one. The number of
+     * stored elements becomes the sum of the sizes.
+     *
+     * @param others - compatible Bloom Filters, they are not changed
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     */
+    @Override
+    public void unionAll(BloomFilter[] others, ForkJoinPool pool) {
+        super.unionAll(others, pool);
+        for (BloomFilter other : others) {
+            if (other instanceof ExtendedBloomFilter) {
+                this.size += ((ExtendedBloomFilter) other).size;
+            }
+        }
+    }
+
+    /**
+     * Keeps only the bits that are set in both Bloom Filters. The number of
+     * stored elements becomes the smaller of the two sizes, it is an upper
+     * bound of the common items.
+     *
+     * @param other - a compatible Bloom Filter, it is not changed
+     * @param pool - the pool of the tasks, null to run on the calling thread
+     */
+    @Override
+    public void intersect(BloomFilter other, ForkJoinPool pool) {
+        super.intersect(other, pool);
+        if (other instanceof ExtendedBloomFilter) {
+            this.size = Math.min(this.size, ((ExtendedBloomFilter) other).size);
+        }
+    }
+
+    /**
+     * Search item in the Bloom Filter based on indexes of
+     * @{link BloomFilterUtils#multiHash(byte[], int, int)}. The indexes are
+     * the bit positions of the plain bitvector layout with the default
+     * @{link HashStrategy#MURMUR_HASH_64A}, so the result is only valid for
+     * that layout: not for @{link BlockedBloomFilter},
+     * @{link PartitionedBloomFilter} or other hash strategies, they derive
+     * their positions from the hash in their own way.
      *
      * @param indexes - check whether indexes point to one value bits int the
      * Bloom Filter bitvector
      * @return True if all the indexes points to one value bit, False otherwise
+     * @deprecated search with the key, every layout maps its hash to its own
+     * positions
      */
+    @Deprecated
     public boolean include(int[] indexes) {
         boolean result = true;
 
@@ -106,11 +277,14 @@ public class ExtendedBloomFilter extends BloomFilter implements Serializable{
     }
 
     /**
-     * Clear the Bloom Filter, set every bit to zero in the bitvector
+     * Clear the Bloom Filter, the number of stored elements becomes zero
+     *
+     * @param pool - the pool of the tasks, null to run on the calling thread
      */
-    public void clear() {
+    @Override
+    public void clear(ForkJoinPool pool) {
         this.size = 0;
-        super.bitSet.clear();
+        super.clear(pool);
     }
 
 }
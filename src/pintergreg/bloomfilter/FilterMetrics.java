@@ -0,0 +1,348 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Runtime metrics of a filter, created by
+ * @{link AbstractFilter#enableMetrics()}. The metrics can be read with
+ * the getters or through JMX after @{link #register(String)}.
+ *
+ * The adds, searches and found items are counted on striped counters, so
+ * the threads of a concurrent filter do not contend on them. The latency of
+ * every 2^samplingShift-th operation of a thread is measured, without the
+ * hashing of the key. The batch operations are counted, but not timed.
+ *
+ * The bit count, the fill ratio and the estimated false positive probability
+ * are computed from the current state of the filter on every read, it costs a
+ * pass over the bitvector. The estimate is (one bits / bits)^k for a
+ * bitvector, it does not depend on the number of adds, so it is right for
+ * duplicated and aged items too.
+ *
+ * @author Gergő Pintér
+ */
+public class FilterMetrics implements FilterMetricsMBean {
+
+    /**
+     * Default sampling, one of 64 operations of a thread is timed
+     */
+    public static final int DEFAULT_SAMPLING_SHIFT = 6;
+
+    /**
+     * Domain of the JMX object names
+     */
+    public static final String DOMAIN = "pintergreg.bloomfilter";
+
+    private final AbstractFilter filter;
+    private final long sampleMask;
+
+    private final StripedCounter adds = new StripedCounter();
+    private final StripedCounter includes = new StripedCounter();
+    private final StripedCounter positives = new StripedCounter();
+    private final LatencyHistogram addLatency = new LatencyHistogram();
+    private final LatencyHistogram includeLatency = new LatencyHistogram();
+
+    private ObjectName objectName;
+
+    /**
+     * @param filter - the measured filter
+     * @param samplingShift - log2 of the number of operations per timed one,
+     * from 0 to 62
+     */
+    FilterMetrics(AbstractFilter filter, int samplingShift) {
+        if (samplingShift < 0 || samplingShift > 62) {
+            throw new IllegalArgumentException("The sampling shift has to be from 0 to 62: " + samplingShift);
+        }
+        this.filter = filter;
+        this.sampleMask = (1L << samplingShift) - 1;
+    }
+
+    /* .......... RECORDING .......... */
+    /**
+     * Adds the item to the filter and counts it
+     *
+     * @param filter - the measured filter, it can be changed
+     * @param hash - the 64 bit hash of the item
+     */
+    void add(AbstractBloomFilter filter, long hash) {
+        if ((adds.increment() & sampleMask) == 0) {
+            long start = System.nanoTime();
+            filter.addHash(hash);
+            addLatency.record(System.nanoTime() - start);
+        } else {
+            filter.addHash(hash);
+        }
+    }
+
+    /**
+     * Adds the item to the filter and counts it as an add
+     *
+     * @param filter - the measured filter, it can be changed
+     * @param hash - the 64 bit hash of the item
+     * @return True if the filter changed, see
+     * @{link AbstractBloomFilter#put(long)}
+     */
+    boolean put(AbstractBloomFilter filter, long hash) {
+        boolean result;
+        if ((adds.increment() & sampleMask) == 0) {
+            long start = System.nanoTime();
+            result = filter.putHash(hash);
+            addLatency.record(System.nanoTime() - start);
+        } else {
+            result = filter.putHash(hash);
+        }
+        return result;
+    }
+
+    /**
+     * Searches the item in the filter and counts it
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if the filter contains the given item, False otherwise
+     */
+    boolean include(long hash) {
+        boolean result;
+        if ((includes.increment() & sampleMask) == 0) {
+            long start = System.nanoTime();
+            result = filter.includeHash(hash);
+            includeLatency.record(System.nanoTime() - start);
+        } else {
+            result = filter.includeHash(hash);
+        }
+        if (result) {
+            positives.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Counts the items of a batch add
+     *
+     * @param count - the number of added items
+     */
+    void addBatch(int count) {
+        adds.add(count);
+    }
+
+    /**
+     * Counts the items of a batch search
+     *
+     * @param result - the results of the search
+     * @param offset - position of the first result
+     * @param count - the number of searched items
+     */
+    void includeBatch(boolean[] result, int offset, int count) {
+        int found = 0;
+        for (int j = 0; j < count; j++) {
+            if (result[offset + j]) {
+                found++;
+            }
+        }
+        includes.add(count);
+        positives.add(found);
+    }
+
+    /* .......... JMX .......... */
+    /**
+     * Registers the metrics in the platform MBean server with the name
+     * pintergreg.bloomfilter:type=(class of the filter),name=(the given name)
+     *
+     * @param name - name of the filter, it is quoted
+     * @return the name of the registered MBean
+     * @throws JMException if the name is already registered
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        if (objectName != null) {
+            throw new IllegalStateException("The metrics are already registered as " + objectName);
+        }
+        ObjectName result = new ObjectName(DOMAIN + ":type=" + getFilterType() + ",name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, result);
+        objectName = result;
+        return result;
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server if they are
+     * registered
+     *
+     * @throws JMException if the MBean is removed by an other way
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * @return the name of the registered MBean, null if it is not registered
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /* .......... GETTERS .......... */
+    @Override
+    public String getFilterType() {
+        return filter.getClass().getSimpleName();
+    }
+
+    @Override
+    public long getAdds() {
+        return adds.sum();
+    }
+
+    @Override
+    public long getIncludes() {
+        return includes.sum();
+    }
+
+    @Override
+    public long getPositives() {
+        return positives.sum();
+    }
+
+    /**
+     * @return the ratio of the searched items that were found, NaN if nothing
+     * was searched
+     */
+    @Override
+    public double getPositiveRatio() {
+        long searched = includes.sum();
+        return searched == 0 ? Double.NaN : (double) positives.sum() / searched;
+    }
+
+    /**
+     * @return the number of one bits, -1 if the filter is not a bitvector
+     */
+    @Override
+    public long getBitCount() {
+        return filter.bitCount();
+    }
+
+    @Override
+    public long getBitSize() {
+        return filter.bitSize();
+    }
+
+    /**
+     * @return the ratio of the one bits, NaN if the filter is not a bitvector
+     */
+    @Override
+    public double getFillRatio() {
+        return filter.fillRatio();
+    }
+
+    @Override
+    public double getEstimatedFalsePositiveProbability() {
+        return filter.estimatedFalsePositiveProbability();
+    }
+
+    @Override
+    public int getLayers() {
+        return filter.layerCount();
+    }
+
+    /**
+     * @return the number of generation switches of @{link A2BloomFilter}, 0
+     * for the other filters
+     */
+    @Override
+    public long getRotations() {
+        return filter instanceof A2BloomFilter ? ((A2BloomFilter) filter).rotations() : 0;
+    }
+
+    @Override
+    public long getLastRotationNanos() {
+        return filter instanceof A2BloomFilter ? ((A2BloomFilter) filter).lastRotationNanos() : 0;
+    }
+
+    @Override
+    public long getLastClearNanos() {
+        return filter instanceof A2BloomFilter ? ((A2BloomFilter) filter).lastClearNanos() : 0;
+    }
+
+    /**
+     * @param quantile - from 0 to 1, e.g. 0.99 for the 99th percentile
+     * @return the given quantile of the sampled add latencies in nanoseconds,
+     * with at most 25% error, 0 if nothing is sampled
+     */
+    public long getAddLatency(double quantile) {
+        return addLatency.quantile(quantile);
+    }
+
+    /**
+     * @param quantile - from 0 to 1, e.g. 0.99 for the 99th percentile
+     * @return the given quantile of the sampled search latencies in
+     * nanoseconds, with at most 25% error, 0 if nothing is sampled
+     */
+    public long getIncludeLatency(double quantile) {
+        return includeLatency.quantile(quantile);
+    }
+
+    @Override
+    public long getAddLatencyP50() {
+        return addLatency.quantile(0.5);
+    }
+
+    @Override
+    public long getAddLatencyP99() {
+        return addLatency.quantile(0.99);
+    }
+
+    @Override
+    public long getAddLatencyP999() {
+        return addLatency.quantile(0.999);
+    }
+
+    @Override
+    public long getIncludeLatencyP50() {
+        return includeLatency.quantile(0.5);
+    }
+
+    @Override
+    public long getIncludeLatencyP99() {
+        return includeLatency.quantile(0.99);
+    }
+
+    @Override
+    public long getIncludeLatencyP999() {
+        return includeLatency.quantile(0.999);
+    }
+
+    @Override
+    public void reset() {
+        adds.reset();
+        includes.reset();
+        positives.reset();
+        addLatency.reset();
+        includeLatency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s adds %d, searches %d, positive ratio %.4f, fill ratio %.4f, estimated fpp %.6f, layers %d",
+                getFilterType(), getAdds(), getIncludes(), getPositiveRatio(), getFillRatio(),
+                getEstimatedFalsePositiveProbability(), getLayers());
+    }
+}
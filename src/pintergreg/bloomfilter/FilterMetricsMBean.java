@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+/**
+ * Management interface of @{link FilterMetrics}, the attributes are the
+ * getters of the metrics
+ *
+ * @author Gergő Pintér
+ */
+public interface FilterMetricsMBean {
+
+    /**
+     * @return the simple name of the class of the filter
+     */
+    String getFilterType();
+
+    /**
+     * @return the number of added items
+     */
+    long getAdds();
+
+    /**
+     * @return the number of searched items
+     */
+    long getIncludes();
+
+    /**
+     * @return the number of searched items that were found
+     */
+    long getPositives();
+
+    /**
+     * @return the ratio of the searched items that were found
+     */
+    double getPositiveRatio();
+
+    /**
+     * @return the number of one bits
+     */
+    long getBitCount();
+
+    /**
+     * @return the size of the filter in bits
+     */
+    long getBitSize();
+
+    /**
+     * @return the ratio of the one bits
+     */
+    double getFillRatio();
+
+    /**
+     * @return the false positive probability estimated from the current state
+     */
+    double getEstimatedFalsePositiveProbability();
+
+    /**
+     * @return the number of Bloom Filter layers
+     */
+    int getLayers();
+
+    /**
+     * @return the number of generation switches
+     */
+    long getRotations();
+
+    /**
+     * @return the duration of the last generation switch in nanoseconds
+     */
+    long getLastRotationNanos();
+
+    /**
+     * @return the duration of clearing the last expired generation in
+     * nanoseconds
+     */
+    long getLastClearNanos();
+
+    /**
+     * @return the median of the sampled add latencies in nanoseconds
+     */
+    long getAddLatencyP50();
+
+    /**
+     * @return the 99th percentile of the sampled add latencies in nanoseconds
+     */
+    long getAddLatencyP99();
+
+    /**
+     * @return the 99.9th percentile of the sampled add latencies in
+     * nanoseconds
+     */
+    long getAddLatencyP999();
+
+    /**
+     * @return the median of the sampled search latencies in nanoseconds
+     */
+    long getIncludeLatencyP50();
+
+    /**
+     * @return the 99th percentile of the sampled search latencies in
+     * nanoseconds
+     */
+    long getIncludeLatencyP99();
+
+    /**
+     * @return the 99.9th percentile of the sampled search latencies in
+     * nanoseconds
+     */
+    long getIncludeLatencyP999();
+
+    /**
+     * Sets the counters to zero and removes the sampled latencies
+     */
+    void reset();
+}
@@ -0,0 +1,731 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hash function of the filters: it maps every key type to a 64 bit hash value
+ * and derives the probe indexes from it. A filter records the strategy that
+ * built it, filters with different strategies cannot be merged, and the id
+ * and seed of the strategy are stored by @{link BloomFilterFormat}.
+ *
+ * The built-in strategies are pure Java:
+ *
+ * - @{link #MURMUR_HASH_64A}: MurmurHash64A with seed 42 and the original
+ * index mapping of @{link BloomFilterUtils#index(long, int, long)}. It is the
+ * default, so the filters built before keep their indexes.
+ *
+ * - @{link #MURMUR_HASH_3}: the first 64 bits of MurmurHash3 x64 128 with
+ * seed 0, with enhanced double hashing and multiply-shift range reduction.
+ *
+ * - @{link #XXHASH_64}: XXH64 with seed 0, with enhanced double hashing and
+ * multiply-shift range reduction.
+ *
+ * The seeds are the standard ones, so the hashes are the same as the ones of
+ * other implementations. Numbers are hashed as their big-endian
+ * representation, character sequences as their UTF-8 representation.
+ *
+ * Custom strategies have to implement the hash of the byte arrays and can
+ * override the other methods for speed. Their id must not be one of the
+ * built-in ids, and they cannot be stored with @{link BloomFilterFormat}.
+ *
+ * @author Gergő Pintér
+ */
+public abstract class HashStrategy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * MurmurHash64A with the original index mapping, id 1
+     */
+    public static final HashStrategy MURMUR_HASH_64A = new MurmurHash64A();
+    /**
+     * MurmurHash3 x64 128 with enhanced double hashing, id 2
+     */
+    public static final HashStrategy MURMUR_HASH_3 = new MurmurHash3();
+    /**
+     * XXH64 with enhanced double hashing, id 3
+     */
+    public static final HashStrategy XXHASH_64 = new XXHash64();
+
+    /**
+     * @return the id of the strategy, it is stored with the filters
+     */
+    public abstract int getId();
+
+    /**
+     * @return the seed of the hash function
+     */
+    public abstract long getSeed();
+
+    /**
+     * Calculates the 64 bit hash of a part of the given array
+     *
+     * @param key - array containing the item to be hashed
+     * @param offset - the first byte of the item
+     * @param length - the number of bytes of the item
+     * @return the 64 bit hash value
+     */
+    public abstract long hash(byte[] key, int offset, int length);
+
+    /**
+     * Calculates the 64 bit hash of the key
+     *
+     * @param key - the item to be hashed
+     * @return the 64 bit hash value
+     */
+    public long hash(byte[] key) {
+        return hash(key, 0, key.length);
+    }
+
+    /**
+     * Calculates the 64 bit hash of the remaining bytes of the buffer, the
+     * position of the buffer is not changed
+     *
+     * @param key - buffer containing the item to be hashed
+     * @return the 64 bit hash value
+     */
+    public long hash(ByteBuffer key) {
+        if (key.hasArray()) {
+            return hash(key.array(), key.arrayOffset() + key.position(), key.remaining());
+        }
+        byte[] bytes = new byte[key.remaining()];
+        key.duplicate().get(bytes);
+        return hash(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Calculates the 64 bit hash of the UTF-8 representation of the character
+     * sequence
+     *
+     * @param key - the item to be hashed
+     * @return the 64 bit hash value
+     */
+    public long hash(CharSequence key) {
+        byte[] bytes = key.toString().getBytes(StandardCharsets.UTF_8);
+        return hash(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Calculates the 64 bit hash of the 8 byte big-endian representation of a
+     * Long value
+     *
+     * @param key - the item to be hashed
+     * @return the 64 bit hash value
+     */
+    public long hash(long key) {
+        byte[] bytes = new byte[8];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (key >>> (56 - 8 * i));
+        }
+        return hash(bytes, 0, 8);
+    }
+
+    /**
+     * Calculates the 64 bit hash of the 4 byte big-endian representation of an
+     * Integer value
+     *
+     * @param key - the item to be hashed
+     * @return the 64 bit hash value
+     */
+    public long hash(int key) {
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            bytes[i] = (byte) (key >>> (24 - 8 * i));
+        }
+        return hash(bytes, 0, 4);
+    }
+
+    /**
+     * Maps the i-th probe of a 64 bit hash value to an m long vector, with
+     * @{link BloomFilterUtils#enhancedIndex(long, int, long)} by default
+     *
+     * @param hash - 64 bit hash of the item
+     * @param i - index of the probe, from 0 to k - 1
+     * @param m - the length where the hashing maps
+     * @return the i-th index where the item is hashed to
+     */
+    public long index(long hash, int i, long m) {
+        return BloomFilterUtils.enhancedIndex(hash, i, m);
+    }
+
+    /**
+     * Finds a built-in strategy
+     *
+     * @param id - id of the strategy
+     * @return the built-in strategy with the given id, null if there is no
+     * such strategy
+     */
+    public static HashStrategy forId(int id) {
+        switch (id) {
+            case 1:
+                return MURMUR_HASH_64A;
+            case 2:
+                return MURMUR_HASH_3;
+            case 3:
+                return XXHASH_64;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName();
+    }
+
+    /* .......... BUILT-IN STRATEGIES .......... */
+    /**
+     * Base of the built-in strategies, only one instance of them exists, also
+     * after deserialization
+     */
+    private static abstract class BuiltIn extends HashStrategy {
+
+        private static final long serialVersionUID = 1L;
+
+        protected Object readResolve() throws ObjectStreamException {
+            return forId(getId());
+        }
+    }
+
+    /**
+     * MurmurHash64A of @{link BloomFilterUtils}
+     */
+    private static final class MurmurHash64A extends BuiltIn {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public int getId() {
+            return 1;
+        }
+
+        @Override
+        public long getSeed() {
+            return 42;
+        }
+
+        @Override
+        public long hash(byte[] key, int offset, int length) {
+            return BloomFilterUtils.hash(key, offset, length);
+        }
+
+        @Override
+        public long hash(ByteBuffer key) {
+            return BloomFilterUtils.hash(key);
+        }
+
+        @Override
+        public long hash(CharSequence key) {
+            return BloomFilterUtils.hash(key);
+        }
+
+        @Override
+        public long hash(long key) {
+            return BloomFilterUtils.hash(key);
+        }
+
+        @Override
+        public long hash(int key) {
+            return BloomFilterUtils.hash(key);
+        }
+
+        @Override
+        public long index(long hash, int i, long m) {
+            return BloomFilterUtils.index(hash, i, m);
+        }
+    }
+
+    /**
+     * MurmurHash3 x64 128 (Austin Appleby), the first 64 bits of the result
+     */
+    private static final class MurmurHash3 extends BuiltIn {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final long C1 = 0x87C37B91114253D5L;
+        private static final long C2 = 0x4CF5AD432745937FL;
+
+        @Override
+        public int getId() {
+            return 2;
+        }
+
+        @Override
+        public long getSeed() {
+            return 0;
+        }
+
+        @Override
+        public long hash(byte[] key, int offset, int length) {
+            long h1 = 0;
+            long h2 = 0;
+            int end = offset + length;
+            int i = offset;
+
+            for (; i + 16 <= end; i += 16) {
+                h1 ^= mixK1(getLong(key, i));
+                h1 = Long.rotateLeft(h1, 27) + h2;
+                h1 = h1 * 5 + 0x52DCE729;
+                h2 ^= mixK2(getLong(key, i + 8));
+                h2 = Long.rotateLeft(h2, 31) + h1;
+                h2 = h2 * 5 + 0x38495AB5;
+            }
+
+            int remaining = end - i;
+            if (remaining > 8) {
+                h2 ^= mixK2(getTail(key, i + 8, remaining - 8));
+            }
+            if (remaining > 0) {
+                h1 ^= mixK1(getTail(key, i, Math.min(8, remaining)));
+            }
+
+            return finish(h1, h2, length);
+        }
+
+        @Override
+        public long hash(ByteBuffer key) {
+            if (key.hasArray()) {
+                return hash(key.array(), key.arrayOffset() + key.position(), key.remaining());
+            }
+
+            boolean littleEndian = key.order() == ByteOrder.LITTLE_ENDIAN;
+            long h1 = 0;
+            long h2 = 0;
+            int end = key.limit();
+            int i = key.position();
+
+            for (; i + 16 <= end; i += 16) {
+                h1 ^= mixK1(getLong(key, i, littleEndian));
+                h1 = Long.rotateLeft(h1, 27) + h2;
+                h1 = h1 * 5 + 0x52DCE729;
+                h2 ^= mixK2(getLong(key, i + 8, littleEndian));
+                h2 = Long.rotateLeft(h2, 31) + h1;
+                h2 = h2 * 5 + 0x38495AB5;
+            }
+
+            int remaining = end - i;
+            if (remaining > 8) {
+                h2 ^= mixK2(getTail(key, i + 8, remaining - 8));
+            }
+            if (remaining > 0) {
+                h1 ^= mixK1(getTail(key, i, Math.min(8, remaining)));
+            }
+
+            return finish(h1, h2, key.remaining());
+        }
+
+        /**
+         * The characters are encoded to UTF-8 on the fly, the bytes are
+         * collected into 8 byte words and two words make a block
+         */
+        @Override
+        public long hash(CharSequence key) {
+            int length = key.length();
+            long h1 = 0;
+            long h2 = 0;
+            // first word of the current block, if there is one
+            long first = 0;
+            boolean half = false;
+            long w = 0;
+            int shift = 0;
+            int bytes = 0;
+
+            for (int i = 0; i < length; i++) {
+                long encoded = utf8(key, i);
+                int count = (int) (encoded >>> 32);
+                if (count == 4) {
+                    i++;
+                }
+                bytes += count;
+                for (; count > 0; count--, encoded >>>= 8) {
+                    w |= (encoded & 0xFFL) << shift;
+                    shift += 8;
+                    if (shift == 64) {
+                        if (half) {
+                            h1 ^= mixK1(first);
+                            h1 = Long.rotateLeft(h1, 27) + h2;
+                            h1 = h1 * 5 + 0x52DCE729;
+                            h2 ^= mixK2(w);
+                            h2 = Long.rotateLeft(h2, 31) + h1;
+                            h2 = h2 * 5 + 0x38495AB5;
+                        } else {
+                            first = w;
+                        }
+                        half = !half;
+                        w = 0;
+                        shift = 0;
+                    }
+                }
+            }
+
+            if (half) {
+                if (shift > 0) {
+                    h2 ^= mixK2(w);
+                }
+                h1 ^= mixK1(first);
+            } else if (shift > 0) {
+                h1 ^= mixK1(w);
+            }
+
+            return finish(h1, h2, bytes);
+        }
+
+        @Override
+        public long hash(long key) {
+            return finish(mixK1(Long.reverseBytes(key)), 0, 8);
+        }
+
+        @Override
+        public long hash(int key) {
+            return finish(mixK1(Integer.reverseBytes(key) & 0xFFFFFFFFL), 0, 4);
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            return k1 * C2;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            return k2 * C1;
+        }
+
+        private static long finish(long h1, long h2, int length) {
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            return h1 + h2;
+        }
+
+        private static long fmix(long h) {
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    /**
+     * XXH64 (Yann Collet)
+     */
+    private static final class XXHash64 extends BuiltIn {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final long P1 = 0x9E3779B185EBCA87L;
+        private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long P3 = 0x165667B19E3779F9L;
+        private static final long P4 = 0x85EBCA77C2B2AE63L;
+        private static final long P5 = 0x27D4EB2F165667C5L;
+
+        @Override
+        public int getId() {
+            return 3;
+        }
+
+        @Override
+        public long getSeed() {
+            return 0;
+        }
+
+        @Override
+        public long hash(byte[] key, int offset, int length) {
+            int end = offset + length;
+            int i = offset;
+            long h;
+
+            if (length >= 32) {
+                long v1 = P1 + P2;
+                long v2 = P2;
+                long v3 = 0;
+                long v4 = -P1;
+                for (; i + 32 <= end; i += 32) {
+                    v1 = round(v1, getLong(key, i));
+                    v2 = round(v2, getLong(key, i + 8));
+                    v3 = round(v3, getLong(key, i + 16));
+                    v4 = round(v4, getLong(key, i + 24));
+                }
+                h = converge(v1, v2, v3, v4);
+            } else {
+                h = P5;
+            }
+            h += length;
+
+            for (; i + 8 <= end; i += 8) {
+                h ^= round(0, getLong(key, i));
+                h = Long.rotateLeft(h, 27) * P1 + P4;
+            }
+            if (i + 4 <= end) {
+                h ^= getTail(key, i, 4) * P1;
+                h = Long.rotateLeft(h, 23) * P2 + P3;
+                i += 4;
+            }
+            for (; i < end; i++) {
+                h ^= (key[i] & 0xFFL) * P5;
+                h = Long.rotateLeft(h, 11) * P1;
+            }
+
+            return avalanche(h);
+        }
+
+        @Override
+        public long hash(ByteBuffer key) {
+            if (key.hasArray()) {
+                return hash(key.array(), key.arrayOffset() + key.position(), key.remaining());
+            }
+
+            boolean littleEndian = key.order() == ByteOrder.LITTLE_ENDIAN;
+            int length = key.remaining();
+            int end = key.limit();
+            int i = key.position();
+            long h;
+
+            if (length >= 32) {
+                long v1 = P1 + P2;
+                long v2 = P2;
+                long v3 = 0;
+                long v4 = -P1;
+                for (; i + 32 <= end; i += 32) {
+                    v1 = round(v1, getLong(key, i, littleEndian));
+                    v2 = round(v2, getLong(key, i + 8, littleEndian));
+                    v3 = round(v3, getLong(key, i + 16, littleEndian));
+                    v4 = round(v4, getLong(key, i + 24, littleEndian));
+                }
+                h = converge(v1, v2, v3, v4);
+            } else {
+                h = P5;
+            }
+            h += length;
+
+            for (; i + 8 <= end; i += 8) {
+                h ^= round(0, getLong(key, i, littleEndian));
+                h = Long.rotateLeft(h, 27) * P1 + P4;
+            }
+
+            return avalanche(tail(h, getTail(key, i, end - i), end - i));
+        }
+
+        /**
+         * The characters are encoded to UTF-8 on the fly. The length is
+         * needed first, so the sequence is read twice: once to count the
+         * bytes, once to hash them in 8 byte words.
+         */
+        @Override
+        public long hash(CharSequence key) {
+            int length = key.length();
+            int bytes = BloomFilterUtils.utf8Length(key);
+            // the number of words in the 32 byte stripes
+            int stripeWords = bytes >>> 5 << 2;
+            long v1 = P1 + P2;
+            long v2 = P2;
+            long v3 = 0;
+            long v4 = -P1;
+            long h = bytes >= 32 ? 0 : P5 + bytes;
+            int words = 0;
+            long w = 0;
+            int shift = 0;
+
+            for (int i = 0; i < length; i++) {
+                long encoded = utf8(key, i);
+                int count = (int) (encoded >>> 32);
+                if (count == 4) {
+                    i++;
+                }
+                for (; count > 0; count--, encoded >>>= 8) {
+                    w |= (encoded & 0xFFL) << shift;
+                    shift += 8;
+                    if (shift == 64) {
+                        if (words < stripeWords) {
+                            switch (words & 3) {
+                                case 0:
+                                    v1 = round(v1, w);
+                                    break;
+                                case 1:
+                                    v2 = round(v2, w);
+                                    break;
+                                case 2:
+                                    v3 = round(v3, w);
+                                    break;
+                                default:
+                                    v4 = round(v4, w);
+                            }
+                            if (words + 1 == stripeWords) {
+                                h = converge(v1, v2, v3, v4) + bytes;
+                            }
+                        } else {
+                            h ^= round(0, w);
+                            h = Long.rotateLeft(h, 27) * P1 + P4;
+                        }
+                        words++;
+                        w = 0;
+                        shift = 0;
+                    }
+                }
+            }
+
+            return avalanche(tail(h, w, shift >>> 3));
+        }
+
+        @Override
+        public long hash(long key) {
+            long h = P5 + 8;
+            h ^= round(0, Long.reverseBytes(key));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+            return avalanche(h);
+        }
+
+        @Override
+        public long hash(int key) {
+            long h = P5 + 4;
+            h ^= (Integer.reverseBytes(key) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            return avalanche(h);
+        }
+
+        private static long round(long acc, long input) {
+            acc += input * P2;
+            acc = Long.rotateLeft(acc, 31);
+            return acc * P1;
+        }
+
+        private static long merge(long h, long v) {
+            h ^= round(0, v);
+            return h * P1 + P4;
+        }
+
+        /**
+         * Merges the four accumulators of the 32 byte stripes
+         */
+        private static long converge(long v1, long v2, long v3, long v4) {
+            long h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                    + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            return merge(h, v4);
+        }
+
+        /**
+         * Processes the last 0 to 7 bytes, given little-endian in a word: 4
+         * bytes at once, then the rest one by one
+         */
+        private static long tail(long h, long w, int count) {
+            if (count >= 4) {
+                h ^= (w & 0xFFFFFFFFL) * P1;
+                h = Long.rotateLeft(h, 23) * P2 + P3;
+                w >>>= 32;
+                count -= 4;
+            }
+            for (; count > 0; count--, w >>>= 8) {
+                h ^= (w & 0xFFL) * P5;
+                h = Long.rotateLeft(h, 11) * P1;
+            }
+            return h;
+        }
+
+        private static long avalanche(long h) {
+            h ^= h >>> 33;
+            h *= P2;
+            h ^= h >>> 29;
+            h *= P3;
+            h ^= h >>> 32;
+            return h;
+        }
+    }
+
+    /**
+     * Reads 8 bytes little-endian
+     */
+    private static long getLong(byte[] key, int i) {
+        return (key[i] & 0xFFL)
+                | (key[i + 1] & 0xFFL) << 8
+                | (key[i + 2] & 0xFFL) << 16
+                | (key[i + 3] & 0xFFL) << 24
+                | (key[i + 4] & 0xFFL) << 32
+                | (key[i + 5] & 0xFFL) << 40
+                | (key[i + 6] & 0xFFL) << 48
+                | (key[i + 7] & 0xFFL) << 56;
+    }
+
+    /**
+     * Reads 0 to 8 bytes little-endian
+     */
+    private static long getTail(byte[] key, int i, int length) {
+        long result = 0;
+        for (int j = 0; j < length; j++) {
+            result |= (key[i + j] & 0xFFL) << (8 * j);
+        }
+        return result;
+    }
+
+    /**
+     * Reads 8 bytes of the buffer little-endian, whatever the byte order of
+     * the buffer is
+     */
+    private static long getLong(ByteBuffer key, int i, boolean littleEndian) {
+        long w = key.getLong(i);
+        return littleEndian ? w : Long.reverseBytes(w);
+    }
+
+    /**
+     * Reads 0 to 8 bytes of the buffer little-endian
+     */
+    private static long getTail(ByteBuffer key, int i, int length) {
+        long result = 0;
+        for (int j = 0; j < length; j++) {
+            result |= (key.get(i + j) & 0xFFL) << (8 * j);
+        }
+        return result;
+    }
+
+    /**
+     * Encodes the character at i to UTF-8, like String.getBytes does: a valid
+     * surrogate pair is one 4 byte code point, a malformed surrogate is '?'
+     *
+     * @return the bytes little-endian in the low 32 bits and their number in
+     * the high 32 bits, 4 bytes mean that the next character is consumed too
+     */
+    private static long utf8(CharSequence key, int i) {
+        char c = key.charAt(i);
+        if (c < 0x80) {
+            return 1L << 32 | c;
+        } else if (c < 0x800) {
+            return 2L << 32 | (0xC0 | c >> 6) | (0x80 | c & 0x3F) << 8;
+        } else if (!Character.isSurrogate(c)) {
+            return 3L << 32 | (0xE0 | c >> 12) | (0x80 | c >> 6 & 0x3F) << 8 | (0x80 | c & 0x3F) << 16;
+        } else if (Character.isHighSurrogate(c) && i + 1 < key.length()
+                && Character.isLowSurrogate(key.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, key.charAt(i + 1));
+            return 4L << 32 | ((0xF0 | cp >> 18) | (0x80 | cp >> 12 & 0x3F) << 8
+                    | (0x80 | cp >> 6 & 0x3F) << 16 | (long) (0x80 | cp & 0x3F) << 24);
+        }
+        return 1L << 32 | '?';
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds. Every power of two range is split
+ * into 4 buckets, so a quantile is reported with at most 25% error, from 1
+ * nanosecond to the range of a long.
+ *
+ * @author Gergő Pintér
+ */
+final class LatencyHistogram {
+
+    // 2 bits of sub-buckets: values below 4 have their own bucket, then 4
+    // buckets for every power of two from 4
+    private static final int SUB_BITS = 2;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT + SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @return the bucket of the given value
+     */
+    static int bucket(long nanos) {
+        if (nanos < SUB_COUNT) {
+            return (int) Math.max(0, nanos);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * @return the largest value of the given bucket
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        long sub = bucket % SUB_COUNT;
+        long next = (SUB_COUNT + sub + 1) << (exponent - SUB_BITS);
+        return next < 0 ? Long.MAX_VALUE : next - 1;
+    }
+
+    /**
+     * Records a latency
+     *
+     * @param nanos - the latency in nanoseconds
+     */
+    void record(long nanos) {
+        counts.incrementAndGet(bucket(nanos));
+    }
+
+    /**
+     * @return the number of recorded latencies
+     */
+    long count() {
+        long result = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            result += counts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the latency below which the given part of the recorded latencies
+     * are
+     *
+     * @param quantile - from 0 to 1, e.g. 0.99 for the 99th percentile
+     * @return the upper bound of the bucket of the quantile in nanoseconds, 0
+     * if nothing is recorded
+     */
+    long quantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("The quantile has to be from 0 to 1: " + quantile);
+        }
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(BUCKETS - 1);
+    }
+
+    /**
+     * Removes every recorded latency
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Bitvector stored in long arrays, it is not thread-safe. The words are split
+ * into segments of 2^24 longs (128 MiB), so the bitvector can be larger than
+ * 2^31 bits and huge arrays never have to be allocated in one piece.
+ *
+ * @author Gergő Pintér
+ */
+public class LongBitArray implements BitArray, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // number of words in a segment is 2^SEGMENT_SHIFT
+    static final int SEGMENT_SHIFT = 24;
+    static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    // package-private, BloomFilterFormat copies the segments in bulk
+    final long[][] segments;
+    private final long bitSize;
+
+    /**
+     * Create a bitvector with every bit set to zero
+     *
+     * @param bitSize - the number of bits
+     */
+    public LongBitArray(long bitSize) {
+        this.bitSize = bitSize;
+        long words = wordCount(bitSize);
+        this.segments = new long[segmentCount(words)][];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new long[segmentLength(words, i)];
+        }
+    }
+
+    @Override
+    public long bitSize() {
+        return bitSize;
+    }
+
+    @Override
+    public boolean set(long index) {
+        long w = index >>> 6;
+        long[] segment = segments[(int) (w >>> SEGMENT_SHIFT)];
+        int i = (int) w & SEGMENT_MASK;
+        long word = segment[i];
+        long mask = 1L << index;
+        segment[i] = word | mask;
+        return (word & mask) == 0;
+    }
+
+    @Override
+    public boolean get(long index) {
+        long w = index >>> 6;
+        return (segments[(int) (w >>> SEGMENT_SHIFT)][(int) w & SEGMENT_MASK] & (1L << index)) != 0;
+    }
+
+    @Override
+    public long getWord(long index) {
+        return segments[(int) (index >>> SEGMENT_SHIFT)][(int) index & SEGMENT_MASK];
+    }
+
+    @Override
+    public void setWord(long index, long word) {
+        segments[(int) (index >>> SEGMENT_SHIFT)][(int) index & SEGMENT_MASK] = word;
+    }
+
+    /* .......... BULK OPERATIONS .......... */
+    // The loops over two LongBitArrays run on the plain arrays of the
+    // segments, the JIT unrolls them and uses SIMD instructions where it can.
+    // Other bitvectors are read word by word.
+    @Override
+    public void or(BitArray other) {
+        or(other, 0, wordCount(bitSize));
+    }
+
+    @Override
+    public void or(BitArray other, long from, long to) {
+        checkRange(this, other, from, to);
+        if (other instanceof LongBitArray) {
+            long[][] source = ((LongBitArray) other).segments;
+            for (long w = from; w < to;) {
+                int s = (int) (w >>> SEGMENT_SHIFT);
+                int start = (int) w & SEGMENT_MASK;
+                int end = end(s, start, to - w);
+                long[] a = segments[s];
+                long[] b = source[s];
+                for (int i = start; i < end; i++) {
+                    a[i] |= b[i];
+                }
+                w += end - start;
+            }
+        } else {
+            for (long w = from; w < to; w++) {
+                setWord(w, getWord(w) | other.getWord(w));
+            }
+        }
+    }
+
+    @Override
+    public void and(BitArray other) {
+        and(other, 0, wordCount(bitSize));
+    }
+
+    @Override
+    public void and(BitArray other, long from, long to) {
+        checkRange(this, other, from, to);
+        if (other instanceof LongBitArray) {
+            long[][] source = ((LongBitArray) other).segments;
+            for (long w = from; w < to;) {
+                int s = (int) (w >>> SEGMENT_SHIFT);
+                int start = (int) w & SEGMENT_MASK;
+                int end = end(s, start, to - w);
+                long[] a = segments[s];
+                long[] b = source[s];
+                for (int i = start; i < end; i++) {
+                    a[i] &= b[i];
+                }
+                w += end - start;
+            }
+        } else {
+            for (long w = from; w < to; w++) {
+                setWord(w, getWord(w) & other.getWord(w));
+            }
+        }
+    }
+
+    @Override
+    public void xor(BitArray other) {
+        xor(other, 0, wordCount(bitSize));
+    }
+
+    @Override
+    public void xor(BitArray other, long from, long to) {
+        checkRange(this, other, from, to);
+        if (other instanceof LongBitArray) {
+            long[][] source = ((LongBitArray) other).segments;
+            for (long w = from; w < to;) {
+                int s = (int) (w >>> SEGMENT_SHIFT);
+                int start = (int) w & SEGMENT_MASK;
+                int end = end(s, start, to - w);
+                long[] a = segments[s];
+                long[] b = source[s];
+                for (int i = start; i < end; i++) {
+                    a[i] ^= b[i];
+                }
+                w += end - start;
+            }
+        } else {
+            for (long w = from; w < to; w++) {
+                setWord(w, getWord(w) ^ other.getWord(w));
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (long[] segment : segments) {
+            Arrays.fill(segment, 0L);
+        }
+    }
+
+    @Override
+    public void clear(long from, long to) {
+        checkRange(this, this, from, to);
+        for (long w = from; w < to;) {
+            int s = (int) (w >>> SEGMENT_SHIFT);
+            int start = (int) w & SEGMENT_MASK;
+            int end = end(s, start, to - w);
+            Arrays.fill(segments[s], start, end, 0L);
+            w += end - start;
+        }
+    }
+
+    @Override
+    public long cardinality() {
+        return cardinality(0, wordCount(bitSize));
+    }
+
+    @Override
+    public long cardinality(long from, long to) {
+        checkRange(this, this, from, to);
+        long result = 0;
+        for (long w = from; w < to;) {
+            int s = (int) (w >>> SEGMENT_SHIFT);
+            int start = (int) w & SEGMENT_MASK;
+            int end = end(s, start, to - w);
+            long[] a = segments[s];
+            for (int i = start; i < end; i++) {
+                result += Long.bitCount(a[i]);
+            }
+            w += end - start;
+        }
+        return result;
+    }
+
+    /**
+     * @param s - index of a segment
+     * @param start - the first word in the segment
+     * @param remaining - the number of words until the end of the range
+     * @return the index after the last word of the range in the segment
+     */
+    private int end(int s, int start, long remaining) {
+        return (int) Math.min(segments[s].length, start + remaining);
+    }
+
+    /**
+     * Checks that the two bitvectors can be combined word by word and the
+     * range of words is in them
+     */
+    static void checkRange(BitArray a, BitArray b, long from, long to) {
+        checkSize(a, b);
+        if (from < 0 || from > to || to > wordCount(a.bitSize())) {
+            throw new IndexOutOfBoundsException("Word range [" + from + ", " + to + ") of " + wordCount(a.bitSize()) + " words");
+        }
+    }
+
+    /**
+     * Checks that the two bitvectors can be combined word by word
+     */
+    static void checkSize(BitArray a, BitArray b) {
+        if (a.bitSize() != b.bitSize()) {
+            throw new IllegalArgumentException("Bitvector sizes differ: " + a.bitSize() + " and " + b.bitSize());
+        }
+    }
+
+    /**
+     * @return the number of longs needed for the given number of bits
+     */
+    static long wordCount(long bitSize) {
+        if (bitSize < 0) {
+            throw new IllegalArgumentException("Negative bitvector size: " + bitSize);
+        }
+        return (bitSize + 63) >>> 6;
+    }
+
+    /**
+     * @return the number of segments needed for the given number of words
+     */
+    static int segmentCount(long words) {
+        return (int) ((words + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    }
+
+    /**
+     * @return the number of words in the i-th segment
+     */
+    static int segmentLength(long words, int i) {
+        return (int) Math.min(SEGMENT_MASK + 1, words - ((long) i << SEGMENT_SHIFT));
+    }
+
+}
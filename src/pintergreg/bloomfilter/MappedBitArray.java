@@ -0,0 +1,261 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Bitvector stored in a memory-mapped file. Opening a file costs only the
+ * mapping, the pages are loaded lazily by the operating system when they are
+ * first read, so a large Bloom Filter is usable in milliseconds after a
+ * restart. A file opened read-only can be shared between several JVMs on the
+ * same host, they all use the same page cache.
+ *
+ * The words are stored little-endian, a file is mapped in segments of 1 GiB.
+ * Setting a bit is not atomic, so only one thread (and one process) should
+ * add items at the same time. Changes are written to the file by the
+ * operating system, @{link #force()} writes them immediately.
+ *
+ * @author Gergő Pintér
+ */
+public class MappedBitArray implements BitArray, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // number of words in a mapped segment is 2^SEGMENT_SHIFT (1 GiB)
+    private static final int SEGMENT_SHIFT = 27;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private final File file;
+    private final long offset;
+    private final long bitSize;
+    private final boolean readOnly;
+    private transient MappedByteBuffer[] segments;
+
+    /**
+     * Map the given region of a file as a bitvector. A writable file is
+     * extended if it is shorter than the region.
+     *
+     * @param file - the file containing the bitvector
+     * @param offset - position of the first word in the file, so the file can
+     * start with a header
+     * @param bitSize - the number of bits
+     * @param readOnly - map the file read-only, then the bits cannot be set
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public MappedBitArray(File file, long offset, long bitSize, boolean readOnly) throws IOException {
+        this.file = file;
+        this.offset = offset;
+        this.bitSize = bitSize;
+        this.readOnly = readOnly;
+        map();
+    }
+
+    /**
+     * Create (or open) a writable bitvector in a file, the file contains only
+     * the words of the bitvector
+     *
+     * @param file - the file containing the bitvector
+     * @param bitSize - the number of bits
+     * @return the mapped bitvector
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static MappedBitArray create(File file, long bitSize) throws IOException {
+        return new MappedBitArray(file, 0, bitSize, false);
+    }
+
+    /**
+     * Open a bitvector created by @{link #create(File, long)}. The bitvector
+     * size has to be the same as at the creation, the size of the file is
+     * rounded up to whole words.
+     *
+     * @param file - the file containing the bitvector
+     * @param bitSize - the number of bits
+     * @param readOnly - map the file read-only, then the bits cannot be set
+     * @return the mapped bitvector
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static MappedBitArray open(File file, long bitSize, boolean readOnly) throws IOException {
+        return new MappedBitArray(file, 0, bitSize, readOnly);
+    }
+
+    private void map() throws IOException {
+        long words = LongBitArray.wordCount(bitSize);
+        int count = (int) ((words + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        segments = new MappedByteBuffer[count];
+
+        // the mapping stays valid after the file is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, readOnly ? "r" : "rw")) {
+            FileChannel channel = raf.getChannel();
+            FileChannel.MapMode mode = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+            if (readOnly && channel.size() < offset + words * 8) {
+                throw new IOException(file + " is shorter than the bitvector");
+            }
+            for (int i = 0; i < count; i++) {
+                long first = (long) i << SEGMENT_SHIFT;
+                long length = Math.min(SEGMENT_MASK + 1, words - first) * 8;
+                segments[i] = channel.map(mode, offset + first * 8, length);
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    @Override
+    public long bitSize() {
+        return bitSize;
+    }
+
+    @Override
+    public boolean set(long index) {
+        long w = index >>> 6;
+        MappedByteBuffer segment = segments[(int) (w >>> SEGMENT_SHIFT)];
+        int position = ((int) w & SEGMENT_MASK) << 3;
+        long word = segment.getLong(position);
+        long mask = 1L << index;
+        if ((word & mask) != 0) {
+            // no write, so the page does not become dirty
+            return false;
+        }
+        segment.putLong(position, word | mask);
+        return true;
+    }
+
+    @Override
+    public boolean get(long index) {
+        long w = index >>> 6;
+        MappedByteBuffer segment = segments[(int) (w >>> SEGMENT_SHIFT)];
+        return (segment.getLong(((int) w & SEGMENT_MASK) << 3) & (1L << index)) != 0;
+    }
+
+    @Override
+    public long getWord(long index) {
+        return segments[(int) (index >>> SEGMENT_SHIFT)].getLong(((int) index & SEGMENT_MASK) << 3);
+    }
+
+    @Override
+    public void setWord(long index, long word) {
+        segments[(int) (index >>> SEGMENT_SHIFT)].putLong(((int) index & SEGMENT_MASK) << 3, word);
+    }
+
+    @Override
+    public void or(BitArray other) {
+        or(other, 0, LongBitArray.wordCount(bitSize));
+    }
+
+    @Override
+    public void or(BitArray other, long from, long to) {
+        LongBitArray.checkRange(this, other, from, to);
+        for (long i = from; i < to; i++) {
+            setWord(i, getWord(i) | other.getWord(i));
+        }
+    }
+
+    @Override
+    public void and(BitArray other) {
+        and(other, 0, LongBitArray.wordCount(bitSize));
+    }
+
+    @Override
+    public void and(BitArray other, long from, long to) {
+        LongBitArray.checkRange(this, other, from, to);
+        for (long i = from; i < to; i++) {
+            setWord(i, getWord(i) & other.getWord(i));
+        }
+    }
+
+    @Override
+    public void xor(BitArray other) {
+        xor(other, 0, LongBitArray.wordCount(bitSize));
+    }
+
+    @Override
+    public void xor(BitArray other, long from, long to) {
+        LongBitArray.checkRange(this, other, from, to);
+        for (long i = from; i < to; i++) {
+            setWord(i, getWord(i) ^ other.getWord(i));
+        }
+    }
+
+    @Override
+    public void clear() {
+        clear(0, LongBitArray.wordCount(bitSize));
+    }
+
+    @Override
+    public void clear(long from, long to) {
+        LongBitArray.checkRange(this, this, from, to);
+        for (long i = from; i < to; i++) {
+            setWord(i, 0L);
+        }
+    }
+
+    @Override
+    public long cardinality() {
+        return cardinality(0, LongBitArray.wordCount(bitSize));
+    }
+
+    @Override
+    public long cardinality(long from, long to) {
+        LongBitArray.checkRange(this, this, from, to);
+        long result = 0;
+        for (long i = from; i < to; i++) {
+            result += Long.bitCount(getWord(i));
+        }
+        return result;
+    }
+
+    /**
+     * Writes the changes to the file immediately
+     */
+    public void force() {
+        if (!readOnly) {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+    }
+
+    /**
+     * @return the file containing the bitvector
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return True if the file is mapped read-only, False otherwise
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Only the file name and the region are serialized, the file is mapped
+     * again when it is deserialized
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        map();
+    }
+
+}
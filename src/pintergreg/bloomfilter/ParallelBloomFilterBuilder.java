@@ -0,0 +1,264 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds a @{link BloomFilter} from a large number of items on several
+ * threads. The items are split into ranges and processed by a
+ * @{link ForkJoinPool} in one of two modes:
+ *
+ * - thread-local: every part of the input is added to its own Bloom Filter
+ * without any synchronization, then the filters are merged pairwise with
+ * word-wise OR. It needs one bitvector per part (the parallelism of the pool)
+ * for the time of the build.
+ *
+ * - shared: every task adds its range to one @{link ConcurrentBloomFilter}, so
+ * only one bitvector is allocated, but every bit is set with a CAS.
+ *
+ * Both modes produce the same bits as adding the items one by one.
+ *
+ * @author Gergő Pintér
+ */
+public class ParallelBloomFilterBuilder {
+
+    // the smallest range of items processed by one task
+    static final int MIN_RANGE = 1 << 16;
+
+    private final long m;
+    private final int k;
+    private final ForkJoinPool pool;
+    private final boolean shared;
+    private final HashStrategy hashStrategy;
+
+    /**
+     * Create builder based on item number and false positive probability,
+     * it uses thread-local filters on a pool with one thread per processor
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     */
+    public ParallelBloomFilterBuilder(long n, double p) {
+        this(n, p, DefaultPool.POOL, false);
+    }
+
+    /**
+     * Create builder based on item number and false positive probability
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     * @param pool - the pool running the tasks
+     * @param shared - True to fill one @{link ConcurrentBloomFilter}, False to
+     * fill thread-local filters and merge them
+     */
+    public ParallelBloomFilterBuilder(long n, double p, ForkJoinPool pool, boolean shared) {
+        this(BloomFilterUtils.determineSize(n, p),
+                BloomFilterUtils.determineHashNumber(BloomFilterUtils.determineSize(n, p), n),
+                pool, shared);
+    }
+
+    /**
+     * Create builder based on bitvector size and the numbers of hash functions
+     *
+     * @param m - size of the bitvector
+     * @param k - number of the hash functions
+     * @param pool - the pool running the tasks
+     * @param shared - True to fill one @{link ConcurrentBloomFilter}, False to
+     * fill thread-local filters and merge them
+     */
+    public ParallelBloomFilterBuilder(long m, int k, ForkJoinPool pool, boolean shared) {
+        this(m, k, pool, shared, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create builder based on bitvector size, the numbers of hash functions
+     * and the hash strategy of the built filters
+     *
+     * @param m - size of the bitvector
+     * @param k - number of the hash functions
+     * @param pool - the pool running the tasks
+     * @param shared - True to fill one @{link ConcurrentBloomFilter}, False to
+     * fill thread-local filters and merge them
+     * @param hashStrategy - the hash function of the keys
+     */
+    public ParallelBloomFilterBuilder(long m, int k, ForkJoinPool pool, boolean shared,
+            HashStrategy hashStrategy) {
+        this.m = m;
+        this.k = k;
+        this.pool = pool;
+        this.shared = shared;
+        this.hashStrategy = hashStrategy;
+    }
+
+    /**
+     * Builds a Bloom Filter containing the given items
+     *
+     * @param keys - Long items to be added to the Bloom Filter
+     * @return a @{link ConcurrentBloomFilter} in shared mode, a
+     * @{link BloomFilter} otherwise
+     */
+    public BloomFilter build(final long[] keys) {
+        return build(new Keys(keys.length) {
+            @Override
+            void hash(int from, int count, long[] hashes) {
+                for (int j = 0; j < count; j++) {
+                    hashes[j] = hashStrategy.hash(keys[from + j]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Builds a Bloom Filter containing the given items
+     *
+     * @param keys - items to be added to the Bloom Filter
+     * @return a @{link ConcurrentBloomFilter} in shared mode, a
+     * @{link BloomFilter} otherwise
+     */
+    public BloomFilter build(final byte[][] keys) {
+        return build(new Keys(keys.length) {
+            @Override
+            void hash(int from, int count, long[] hashes) {
+                for (int j = 0; j < count; j++) {
+                    hashes[j] = hashStrategy.hash(keys[from + j]);
+                }
+            }
+        });
+    }
+
+    private BloomFilter build(Keys keys) {
+        BloomFilter result;
+        if (this.shared) {
+            result = new ConcurrentBloomFilter(this.m, this.k, this.hashStrategy);
+            this.pool.invoke(new SharedTask(keys, result, 0, keys.length));
+        } else {
+            // one part per thread, but no part smaller than MIN_RANGE
+            int parts = (int) Math.min(this.pool.getParallelism(),
+                    Math.max(1, ((long) keys.length + MIN_RANGE - 1) / MIN_RANGE));
+            result = this.pool.invoke(new LocalTask(keys, 0, keys.length, parts));
+        }
+        return result;
+    }
+
+    /**
+     * Adds the given range of the items to the Bloom Filter in batches
+     */
+    private static void fill(BloomFilter bf, Keys keys, int from, int to) {
+        long[] hashes = new long[Math.min(AbstractBloomFilter.BATCH_SIZE, to - from)];
+        for (int i = from; i < to; i += hashes.length) {
+            int count = Math.min(hashes.length, to - i);
+            keys.hash(i, count, hashes);
+            bf.addHashes(hashes, count);
+        }
+    }
+
+    /**
+     * Source of the items, the hashes are computed by the tasks
+     */
+    private static abstract class Keys {
+
+        final int length;
+
+        Keys(int length) {
+            this.length = length;
+        }
+
+        abstract void hash(int from, int count, long[] hashes);
+    }
+
+    /**
+     * Fills a new Bloom Filter with its range if it is one part, otherwise
+     * splits the range and the parts in two and merges the results
+     */
+    private class LocalTask extends RecursiveTask<BloomFilter> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Keys keys;
+        private final int from;
+        private final int to;
+        private final int parts;
+
+        LocalTask(Keys keys, int from, int to, int parts) {
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+            this.parts = parts;
+        }
+
+        @Override
+        protected BloomFilter compute() {
+            BloomFilter result;
+            if (this.parts <= 1) {
+                result = new BloomFilter(m, k, hashStrategy);
+                fill(result, this.keys, this.from, this.to);
+            } else {
+                int leftParts = this.parts / 2;
+                int middle = (int) (this.from + (long) (this.to - this.from) * leftParts / this.parts);
+                LocalTask left = new LocalTask(this.keys, this.from, middle, leftParts);
+                LocalTask right = new LocalTask(this.keys, middle, this.to, this.parts - leftParts);
+                left.fork();
+                result = right.compute();
+                result.union(left.join());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Adds its range to the shared Bloom Filter, ranges larger than
+     * MIN_RANGE are split in two
+     */
+    private static class SharedTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Keys keys;
+        private final BloomFilter bf;
+        private final int from;
+        private final int to;
+
+        SharedTask(Keys keys, BloomFilter bf, int from, int to) {
+            this.keys = keys;
+            this.bf = bf;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= MIN_RANGE) {
+                fill(this.bf, this.keys, this.from, this.to);
+            } else {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new SharedTask(this.keys, this.bf, this.from, middle),
+                        new SharedTask(this.keys, this.bf, middle, this.to));
+            }
+        }
+    }
+
+    /**
+     * Java 7 has no common pool, the default pool is created on first use
+     */
+    private static class DefaultPool {
+
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+}
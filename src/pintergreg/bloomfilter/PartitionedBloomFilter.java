@@ -0,0 +1,308 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.Serializable;
+
+/**
+ * Partitioned Bloom Filter. The bitvector is divided into k slices of m / k
+ * bits and the i-th hash function of an item sets a bit of the i-th slice
+ * only, so the k probes of an item never coincide and every slice is an
+ * independent Bloom Filter with one hash function. The false positive
+ * probability, (1 - e^(-k × n / m))^k, is practically the same as the one of
+ * @{link BloomFilter}.
+ *
+ * The batch operations are probe-major: the same probe of every item of the
+ * batch is computed first, in one tight loop over one slice, then the bits
+ * are read or set back to back, so their cache misses overlap. The slices
+ * start at word boundaries.
+ *
+ * @author Gergő Pintér
+ */
+public class PartitionedBloomFilter extends ExtendedBloomFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // size of a slice in bits, a multiple of 64
+    private final long slice;
+
+    /**
+     * Create Partitioned Bloom Filter based on bitvector size and the numbers
+     * of hash functions
+     *
+     * @param m - size of the bitvector, rounded up to k slices of a multiple of
+     * 64 bits
+     * @param k - number of the hash functions
+     *
+     * It is not recommended to use this constructor, unless you really know
+     * what you do
+     */
+    public PartitionedBloomFilter(long m, int k) {
+        this(m, k, (long) Math.floor(m * 0.6931471805599453D / k));
+    }
+
+    /**
+     * Create Partitioned Bloom Filter based on item number and false positive
+     * probability
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     */
+    public PartitionedBloomFilter(long n, double p) {
+        this(n, p, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Partitioned Bloom Filter based on item number, false positive
+     * probability and the hash strategy
+     *
+     * @param n - number of elements to be stored
+     * @param p - false positive probability
+     * @param hashStrategy - the hash function of the keys
+     */
+    public PartitionedBloomFilter(long n, double p, HashStrategy hashStrategy) {
+        this(BloomFilterUtils.determineSize(n, p), determineHashNumber(n, p), n, hashStrategy);
+    }
+
+    /**
+     * Create Partitioned Bloom Filter with every parameter given
+     */
+    protected PartitionedBloomFilter(long m, int k, long n) {
+        this(m, k, n, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Partitioned Bloom Filter with every parameter and the hash
+     * strategy given
+     */
+    protected PartitionedBloomFilter(long m, int k, long n, HashStrategy hashStrategy) {
+        super(roundUp(m, k), k, n, hashStrategy);
+        this.slice = this.m / k;
+    }
+
+    /**
+     * Create Partitioned Bloom Filter on the given bitvector with every
+     * parameter given, used by @{link BloomFilterFormat}. The size of the
+     * bitvector has to be k slices of a multiple of 64 bits.
+     */
+    protected PartitionedBloomFilter(BitArray bitSet, int k, long n, long size) {
+        this(bitSet, k, n, size, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Partitioned Bloom Filter on the given bitvector with every
+     * parameter and the hash strategy given, used by
+     * @{link BloomFilterFormat}
+     */
+    protected PartitionedBloomFilter(BitArray bitSet, int k, long n, long size, HashStrategy hashStrategy) {
+        super(bitSet, k, n, size, hashStrategy);
+        if (this.m != roundUp(this.m, k)) {
+            throw new IllegalArgumentException("The bitvector size is not " + k + " slices of a multiple of 64 bits");
+        }
+        this.slice = this.m / k;
+    }
+
+    /**
+     * Add item to Bloom Filter based on its 64 bit hash value, the i-th index
+     * is in the i-th slice
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if any bit of the item was zero before, False otherwise
+     */
+    @Override
+    protected boolean putHash(long hash) {
+        boolean changed = false;
+        long base = 0;
+        for (int i = 0; i < this.k; i++, base += this.slice) {
+            changed |= this.bitSet.set(base + this.hashStrategy.index(hash, i, this.slice));
+        }
+        if (changed) {
+            this.size++;
+        }
+        return changed;
+    }
+
+    /**
+     * Search item in the Bloom Filter based on its 64 bit hash value
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if Bloom Filter contains the given item, False otherwise
+     */
+    @Override
+    protected boolean includeHash(long hash) {
+        long base = 0;
+        for (int i = 0; i < this.k; i++, base += this.slice) {
+            if (this.bitSet.get(base + this.hashStrategy.index(hash, i, this.slice)) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add items to the Bloom Filter based on their 64 bit hash values, one
+     * slice at a time: the positions of every item in the slice are computed
+     * first, then the bits are set back to back
+     *
+     * @param hashes - the 64 bit hashes of the items
+     * @param count - the number of hashes to be used
+     * @return the number of items that changed the bitvector
+     */
+    @Override
+    protected int putHashes(long[] hashes, int count) {
+        long[] indexes = new long[count];
+        boolean[] changed = new boolean[count];
+        long base = 0;
+        for (int i = 0; i < this.k; i++, base += this.slice) {
+            for (int j = 0; j < count; j++) {
+                indexes[j] = base + this.hashStrategy.index(hashes[j], i, this.slice);
+            }
+            for (int j = 0; j < count; j++) {
+                changed[j] |= this.bitSet.set(indexes[j]);
+            }
+        }
+        int result = count(changed, count);
+        this.size += result;
+        return result;
+    }
+
+    /**
+     * Search items in the Bloom Filter based on their 64 bit hash values, one
+     * slice at a time. The positions of the still possible items in the slice
+     * are computed first, then read back to back, an item is dropped at its
+     * first zero bit.
+     *
+     * @param hashes - the 64 bit hashes of the items
+     * @param count - the number of hashes to be used
+     * @param result - result[offset + j] is set to True if the j-th item is in
+     * the Bloom Filter, False otherwise
+     * @param offset - position of the first result
+     */
+    @Override
+    protected void includeHashes(long[] hashes, int count, boolean[] result, int offset) {
+        long[] indexes = new long[count];
+        int[] alive = new int[count];
+        int remaining = count;
+        for (int j = 0; j < count; j++) {
+            result[offset + j] = true;
+            alive[j] = j;
+        }
+
+        long base = 0;
+        for (int i = 0; i < this.k && remaining > 0; i++, base += this.slice) {
+            for (int a = 0; a < remaining; a++) {
+                indexes[a] = base + this.hashStrategy.index(hashes[alive[a]], i, this.slice);
+            }
+            int next = 0;
+            for (int a = 0; a < remaining; a++) {
+                if (this.bitSet.get(indexes[a])) {
+                    alive[next++] = alive[a];
+                } else {
+                    result[offset + alive[a]] = false;
+                }
+            }
+            remaining = next;
+        }
+    }
+
+    /**
+     * @return the size of a slice in bits
+     */
+    public long getSliceSize() {
+        return slice;
+    }
+
+    /**
+     * Partitioned Bloom Filters can only be merged with each other
+     */
+    @Override
+    protected boolean sameLayout(BloomFilter other) {
+        return other instanceof PartitionedBloomFilter;
+    }
+
+    /**
+     * Determines the number of hash functions, the optimal number for the
+     * capacity and the false positive probability
+     */
+    static int determineHashNumber(long n, double p) {
+        return BloomFilterUtils.determineHashNumber(BloomFilterUtils.determineSize(n, p), n);
+    }
+
+    /**
+     * @return the smallest size of at least m bits that consists of k slices of
+     * a multiple of 64 bits
+     */
+    static long roundUp(long m, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("The number of hash functions has to be positive: " + k);
+        }
+        long slice = (m + k - 1) / k;
+        return ((slice + 63) & ~63L) * k;
+    }
+
+    /* .......... CARDINALITY .......... */
+    /**
+     * Estimates the number of distinct items slice by slice, every slice is a
+     * Bloom Filter with one hash function, and averages the estimates of the
+     * slices
+     *
+     * @param other - a compatible Partitioned Bloom Filter or null
+     * @return the average of the estimates of the slices
+     */
+    @Override
+    double estimate(BloomFilter other) {
+        long[] counts = sliceCounts(other);
+        double result = 0;
+        for (long count : counts) {
+            result += BloomFilterUtils.estimateCardinality(this.slice, 1, count);
+        }
+        return result / this.k;
+    }
+
+    /* .......... METRICS .......... */
+    /**
+     * @return the product of the fill ratios of the slices
+     */
+    @Override
+    double estimatedFalsePositiveProbability() {
+        double result = 1;
+        for (long count : sliceCounts(null)) {
+            result *= (double) count / this.slice;
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of one bits in every slice, of this bitvector ORed
+     * with the other one if it is not null
+     */
+    private long[] sliceCounts(BloomFilter other) {
+        long[] result = new long[this.k];
+        long words = this.slice / 64;
+        for (int i = 0; i < this.k; i++) {
+            long count = 0;
+            for (long w = i * words; w < (i + 1) * words; w++) {
+                long word = this.bitSet.getWord(w);
+                if (other != null) {
+                    word |= other.bitSet.getWord(w);
+                }
+                count += Long.bitCount(word);
+            }
+            result[i] = count;
+        }
+        return result;
+    }
+}
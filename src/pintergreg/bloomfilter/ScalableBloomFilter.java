@@ -16,28 +16,51 @@
 package pintergreg.bloomfilter;
 
 import java.io.Serializable;
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.Arrays;
 
 /**
  * Implementation of Scalable Bloom Filter that extends its capacity dynamically
- * if the Bloom Filter gets saturated. This extension means creating new Bloom
- * Filters that are linked through a LinkedList.
+ * if the Bloom Filter gets saturated. This extension means creating a new,
+ * larger Bloom Filter layer, the layers are stored in an array.
+ *
+ * Following Almeida et al., the capacity of layer i is n * s^i and its false
+ * positive probability is p0 * r^i, where s is the growth factor and r is the
+ * tightening ratio. The first layer gets p0 = p * (1 - r), so the compound
+ * false positive probability stays below p however many layers are added. A
+ * growth factor and a tightening ratio of 1 give layers of the same size like
+ * the earlier versions.
  *
  * @author Gergő Pintér
  */
-public class ScalableBloomFilter implements Serializable{
+public class ScalableBloomFilter extends AbstractBloomFilter implements Serializable{
     
     private static final long serialVersionUID = 1L;
 
-    private LinkedList<ExtendedBloomFilter> bloomFilters = new LinkedList<>();
-    ListIterator<ExtendedBloomFilter> listIterator;
-    private final int m;
-    private final int k;
+    /**
+     * Default growth factor of the layer capacity
+     */
+    public static final int DEFAULT_GROWTH = 2;
 
     /**
-     * Create Scalable Bloom Filter based on item number and false positive
-     * probability
+     * Default tightening ratio of the layer false positive probability
+     */
+    public static final double DEFAULT_RATIO = 0.9;
+
+    // package-private fields are read by BloomFilterFormat
+    ExtendedBloomFilter[] layers;
+    // parameters of the first layer
+    final long m;
+    final int k;
+    final long n;
+    final boolean blocked;
+    final int growth;
+    final double ratio;
+    // false positive probability of the first layer
+    final double p0;
+
+    /**
+     * Create Scalable Bloom Filter based on bitvector size and the numbers of
+     * hash functions of the first layer
      *
      * @param m - size of the bitvector
      * @param k - number of the hash functions
@@ -45,10 +68,49 @@ public class ScalableBloomFilter implements Serializable{
      * It is not recommended to use this constructor, unless you really know
      * what you do
      */
-    public ScalableBloomFilter(int m, int k) {
+    public ScalableBloomFilter(long m, int k) {
+        this(m, k, false);
+    }
+
+    /**
+     * Create Scalable Bloom Filter based on bitvector size and the numbers of
+     * hash functions of the first layer. The next layers grow with the default
+     * growth factor and tightening ratio.
+     *
+     * @param m - size of the bitvector
+     * @param k - number of the hash functions
+     * @param blocked - use @{link BlockedBloomFilter} layers instead of
+     * @{link ExtendedBloomFilter}
+     *
+     * It is not recommended to use this constructor, unless you really know
+     * what you do
+     */
+    public ScalableBloomFilter(long m, int k, boolean blocked) {
+        this(m, k, blocked, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Scalable Bloom Filter based on bitvector size and the numbers of
+     * hash functions of the first layer, every layer uses the given hash
+     * strategy
+     *
+     * @param m - size of the bitvector
+     * @param k - number of the hash functions
+     * @param blocked - use @{link BlockedBloomFilter} layers instead of
+     * @{link ExtendedBloomFilter}
+     * @param hashStrategy - the hash function of the keys
+     */
+    public ScalableBloomFilter(long m, int k, boolean blocked, HashStrategy hashStrategy) {
+        super(hashStrategy);
         this.m = m;
         this.k = k;
-        bloomFilters.add(new ExtendedBloomFilter(this.m, this.k));
+        this.n = (long) Math.floor(m * 0.6931471805599453D / k);
+        this.blocked = blocked;
+        this.growth = DEFAULT_GROWTH;
+        this.ratio = DEFAULT_RATIO;
+        // a full layer with the optimal number of hash functions
+        this.p0 = Math.pow(0.5, k);
+        this.layers = new ExtendedBloomFilter[]{newLayer(0)};
     }
 
     /**
@@ -58,88 +120,382 @@ public class ScalableBloomFilter implements Serializable{
      * @param n - number of elements to be stored
      * @param p - false positive probability
      */
-    public ScalableBloomFilter(int n, double p) {
-        this.m = BloomFilterUtils.determineSize(n, p);
-        this.k = BloomFilterUtils.determineHashNumber(this.m, n);
-        bloomFilters.add(new ExtendedBloomFilter(this.m, this.k));
+    public ScalableBloomFilter(long n, double p) {
+        this(n, p, false);
     }
 
     /**
-     * Add item to Scalable Bloom Filter
+     * Create Scalable Bloom Filter based on item number and false positive
+     * probability, with the default growth factor and tightening ratio
      *
-     * @param key - an item to be added to the Bloom Filter
+     * @param n - number of elements to be stored in the first layer
+     * @param p - false positive probability
+     * @param blocked - use @{link BlockedBloomFilter} layers instead of
+     * @{link ExtendedBloomFilter}, they are larger, but a search costs one
+     * memory access per layer
      */
-    public void add(byte[] key) {
-        bloomFilters.getLast().add(key);
-        if (bloomFilters.getLast().isFull()) {
-            bloomFilters.add(new ExtendedBloomFilter(m, k));
-        }
+    public ScalableBloomFilter(long n, double p, boolean blocked) {
+        this(n, p, DEFAULT_GROWTH, DEFAULT_RATIO, blocked);
     }
 
     /**
-     * Search item in the Scalable Bloom Filter
+     * Create Scalable Bloom Filter based on item number and false positive
+     * probability
      *
-     * @param key - an item to be searched in the Scalable Bloom Filter
-     * @return True if the element is found either Bloom Filter of the Linked
-     * List, False otherwise.
+     * @param n - number of elements to be stored in the first layer
+     * @param p - false positive probability, the bound of the compound false
+     * positive probability of all layers
+     * @param growth - growth factor s, the capacity of a new layer is s times
+     * the capacity of the previous one, 2 for slow and 4 for fast growth
+     * @param ratio - tightening ratio r, the false positive probability of a
+     * new layer is r times the one of the previous layer, 0.8 - 0.9 is
+     * recommended
+     * @param blocked - use @{link BlockedBloomFilter} layers instead of
+     * @{link ExtendedBloomFilter}
+     * @throws IllegalArgumentException if the growth factor is smaller than 1
+     * or the ratio is not in the (0, 1] interval
      */
-    public boolean include(byte[] key) {
-        boolean result = false;
-        if (bloomFilters.size() == 1) {
-            result = bloomFilters.getFirst().include(key);
+    public ScalableBloomFilter(long n, double p, int growth, double ratio, boolean blocked) {
+        this(n, p, growth, ratio, blocked, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Scalable Bloom Filter based on item number and false positive
+     * probability, every layer uses the given hash strategy
+     *
+     * @param n - number of elements to be stored in the first layer
+     * @param p - false positive probability, the bound of the compound false
+     * positive probability of all layers
+     * @param growth - growth factor s of the layer capacity
+     * @param ratio - tightening ratio r of the layer false positive probability
+     * @param blocked - use @{link BlockedBloomFilter} layers instead of
+     * @{link ExtendedBloomFilter}
+     * @param hashStrategy - the hash function of the keys
+     * @throws IllegalArgumentException if the growth factor is smaller than 1
+     * or the ratio is not in the (0, 1] interval
+     */
+    public ScalableBloomFilter(long n, double p, int growth, double ratio, boolean blocked,
+            HashStrategy hashStrategy) {
+        super(hashStrategy);
+        if (growth < 1) {
+            throw new IllegalArgumentException("Growth factor has to be at least 1: " + growth);
+        }
+        if (!(ratio > 0 && ratio <= 1)) {
+            throw new IllegalArgumentException("Tightening ratio has to be in (0, 1]: " + ratio);
+        }
+        this.p0 = ratio < 1 ? p * (1 - ratio) : p;
+        if (blocked) {
+            this.m = BlockedBloomFilter.determineSize(n, this.p0);
+            this.k = BlockedBloomFilter.determineHashNumber(n, this.p0);
+            this.n = n;
         } else {
-            // Calculate indexes only once, then uses the index-based search method
-            int[] indexes = BloomFilterUtils.multiHash(key, k, m);
-            listIterator = bloomFilters.listIterator();
-            while (listIterator.hasNext()) {
-                result |= listIterator.next().include(indexes);
+            this.m = BloomFilterUtils.determineSize(n, this.p0);
+            this.k = BloomFilterUtils.determineHashNumber(this.m, n);
+            this.n = (long) Math.floor(this.m * 0.6931471805599453D / this.k);
+        }
+        this.blocked = blocked;
+        this.growth = growth;
+        this.ratio = ratio;
+        this.layers = new ExtendedBloomFilter[]{newLayer(0)};
+    }
+
+    /**
+     * Create Scalable Bloom Filter from its stored layers, used by
+     * @{link BloomFilterFormat}
+     */
+    ScalableBloomFilter(long m, int k, long n, boolean blocked, int growth, double ratio, double p0,
+            ExtendedBloomFilter[] layers) {
+        super(layers[0].hashStrategy);
+        this.m = m;
+        this.k = k;
+        this.n = n;
+        this.blocked = blocked;
+        this.growth = growth;
+        this.ratio = ratio;
+        this.p0 = p0;
+        this.layers = layers;
+    }
+
+    /**
+     * Creates the i-th layer, empty
+     */
+    private ExtendedBloomFilter newLayer(int i) {
+        if (i == 0 || (growth == 1 && ratio == 1)) {
+            if (blocked) {
+                return new BlockedBloomFilter(m, k, n, hashStrategy);
             }
+            return new ExtendedBloomFilter(m, k, n, hashStrategy);
         }
-        return result;
+
+        long layerN = n;
+        for (int j = 0; j < i; j++) {
+            layerN = layerN > Long.MAX_VALUE / growth ? Long.MAX_VALUE : layerN * growth;
+        }
+        double layerP = p0 * Math.pow(ratio, i);
+        if (blocked) {
+            return new BlockedBloomFilter(layerN, layerP, hashStrategy);
+        }
+        long layerM = BloomFilterUtils.determineSize(layerN, layerP);
+        int layerK = BloomFilterUtils.determineHashNumber(layerM, layerN);
+        return new ExtendedBloomFilter(layerM, layerK, (long) Math.floor(layerM * 0.6931471805599453D / layerK),
+                hashStrategy);
+    }
+
+    /**
+     * Add item to Scalable Bloom Filter based on its 64 bit hash value, it is
+     * added to the newest layer
+     *
+     * @param hash - the 64 bit hash of the item
+     */
+    @Override
+    protected void addHash(long hash) {
+        putHash(hash);
     }
 
     /**
-     * Search item in the Scalable Bloom Filter
+     * Add item to the newest layer based on its 64 bit hash value, unless an
+     * older layer already contains it. Only the items changing the newest
+     * layer are counted in its size, so repeated items do not fill up the
+     * layers and do not make new layers created early.
      *
-     * @param key - an item to be searched in the Scalable Bloom Filter
-     * @return True if the element is found either Bloom Filter of the Linked
-     * List, False otherwise.
+     * @param hash - the 64 bit hash of the item
+     * @return True if the newest layer changed, False otherwise
      */
-    boolean include(int[] indexes) {
+    @Override
+    protected boolean putHash(long hash) {
+        int newest = layers.length - 1;
+        for (int i = newest - 1; i >= 0; i--) {
+            if (layers[i].includeHash(hash)) {
+                return false;
+            }
+        }
+
+        ExtendedBloomFilter last = layers[newest];
+        boolean changed = last.putHash(hash);
+        if (changed && last.isFull()) {
+            ExtendedBloomFilter[] extended = Arrays.copyOf(layers, layers.length + 1);
+            extended[layers.length] = newLayer(layers.length);
+            layers = extended;
+        }
+        return changed;
+    }
+
+    /**
+     * Add items to the Scalable Bloom Filter based on their 64 bit hash
+     * values, like @{link #putHash(long)} for the whole batch: the items are
+     * searched in the older layers batched, then the rest is put into the
+     * newest layer batched. The batch is split where the newest layer gets
+     * full, the items after the split are searched in the full layer too and
+     * go to the new layer.
+     *
+     * @param hashes - the 64 bit hashes of the items
+     * @param count - the number of hashes to be used
+     */
+    @Override
+    protected void addHashes(long[] hashes, int count) {
+        long[] pending = Arrays.copyOf(hashes, count);
+        boolean[] found = new boolean[count];
+        int remaining = count;
+        for (int i = layers.length - 2; i >= 0 && remaining > 0; i--) {
+            remaining = dropIncluded(layers[i], pending, remaining, found);
+        }
+
+        while (remaining > 0) {
+            ExtendedBloomFilter last = layers[layers.length - 1];
+            // only the changing items are counted, so a part not larger than
+            // the free capacity cannot overfill the layer
+            int part = (int) Math.max(1, Math.min(remaining, last.n - last.size));
+            last.putHashes(pending, part);
+            remaining -= part;
+            System.arraycopy(pending, part, pending, 0, remaining);
+
+            if (last.isFull()) {
+                ExtendedBloomFilter[] extended = Arrays.copyOf(layers, layers.length + 1);
+                extended[layers.length] = newLayer(layers.length);
+                layers = extended;
+                remaining = dropIncluded(last, pending, remaining, found);
+            }
+        }
+    }
+
+    /**
+     * Removes the items included in the layer from the pending hashes
+     *
+     * @return the number of the remaining hashes, they are moved to the
+     * beginning of the array
+     */
+    private static int dropIncluded(ExtendedBloomFilter layer, long[] pending, int count, boolean[] found) {
+        layer.includeHashes(pending, count, found, 0);
+        int next = 0;
+        for (int j = 0; j < count; j++) {
+            if (!found[j]) {
+                pending[next++] = pending[j];
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Search item in the Scalable Bloom Filter based on its 64 bit hash value.
+     * The hash is calculated only once, every layer derives its indexes from
+     * it. The newest layer is the largest one and it holds most of the items,
+     * so the layers are searched from the newest and the search stops at the
+     * first hit.
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if the element is found in any layer, False otherwise.
+     */
+    @Override
+    protected boolean includeHash(long hash) {
         boolean result = false;
-        if (bloomFilters.size() == 1) {
-            // Indexes come from outside
-            result = bloomFilters.getFirst().include(indexes);
-        } else {
-            listIterator = bloomFilters.listIterator();
-            while (listIterator.hasNext()) {
-                // Indexes come from outside
-                result |= listIterator.next().include(indexes);
+        for (int i = layers.length - 1; i >= 0; i--) {
+            if (layers[i].includeHash(hash)) {
+                result = true;
+                break;
             }
         }
         return result;
     }
 
+    /**
+     * Search items in the Scalable Bloom Filter based on their 64 bit hash
+     * values. Every layer searches the whole batch of the items not found yet
+     * at once, from the newest layer.
+     *
+     * @param hashes - the 64 bit hashes of the items
+     * @param count - the number of hashes to be used
+     * @param result - result[offset + j] is set to True if the j-th item is
+     * found in any layer, False otherwise
+     * @param offset - position of the first result
+     */
+    @Override
+    protected void includeHashes(long[] hashes, int count, boolean[] result, int offset) {
+        if (layers.length == 1) {
+            layers[0].includeHashes(hashes, count, result, offset);
+            return;
+        }
+
+        // positions and hashes of the items not found yet
+        int[] pending = new int[count];
+        long[] pendingHashes = new long[count];
+        boolean[] found = new boolean[count];
+        int remaining = count;
+        for (int j = 0; j < count; j++) {
+            result[offset + j] = false;
+            pending[j] = j;
+            pendingHashes[j] = hashes[j];
+        }
+
+        for (int i = layers.length - 1; i >= 0 && remaining > 0; i--) {
+            layers[i].includeHashes(pendingHashes, remaining, found, 0);
+            int next = 0;
+            for (int a = 0; a < remaining; a++) {
+                if (found[a]) {
+                    result[offset + pending[a]] = true;
+                } else {
+                    pending[next] = pending[a];
+                    pendingHashes[next] = pendingHashes[a];
+                    next++;
+                }
+            }
+            remaining = next;
+        }
+    }
+
     /**
      * Clear the Bloom Filter, set every bit to zero in the bitvector
      */
     public void clear() {
         // Keep in mind that the Scalable Bloom Filter can be consist of more Extended Bloom Filter
         // I don't want to create new instance, because it is slow, I want to keep the first and drop the rest
-        while (bloomFilters.size() > 1) {
-            bloomFilters.removeLast();
+        if (layers.length > 1) {
+            layers = new ExtendedBloomFilter[]{layers[0]};
         }
-        bloomFilters.getFirst().clear();
+        layers[0].clear();
 
     }
 
     /**
-     * Gets the number of (Extended) Bloom Filters stored in the Linked List,
-     * mainly for debugging purposes.
+     * Gets the number of (Extended) Bloom Filter layers, mainly for debugging
+     * purposes.
      *
-     * @return the size of the Linked List
+     * @return the number of layers
      */
     public int getSize() {
-        return bloomFilters.size();
+        return layers.length;
+    }
+
+    /**
+     * @return the total size of the bitvectors of the layers in bits
+     */
+    public long getBitSize() {
+        long result = 0;
+        for (ExtendedBloomFilter layer : layers) {
+            result += layer.m;
+        }
+        return result;
+    }
+
+    /* .......... CARDINALITY .......... */
+    /**
+     * Estimates the number of distinct items as the sum of the estimates of
+     * the layers, see @{link BloomFilter#estimateCardinality()}. An item is
+     * added to one layer only, unless it is added again after a new layer
+     * was created.
+     *
+     * @return the estimated number of distinct items
+     */
+    public double estimateCardinality() {
+        double result = 0;
+        for (ExtendedBloomFilter layer : layers) {
+            result += layer.estimateCardinality();
+        }
+        return result;
+    }
+
+    /**
+     * Estimates the number of distinct items of every layer
+     *
+     * @return the estimates from the first (oldest) layer to the newest one
+     */
+    public double[] estimateLayerCardinalities() {
+        ExtendedBloomFilter[] current = layers;
+        double[] result = new double[current.length];
+        for (int i = 0; i < current.length; i++) {
+            result[i] = current[i].estimateCardinality();
+        }
+        return result;
+    }
+
+    /* .......... METRICS .......... */
+    @Override
+    long bitCount() {
+        long result = 0;
+        for (ExtendedBloomFilter layer : layers) {
+            result += layer.bitCount();
+        }
+        return result;
+    }
+
+    @Override
+    long bitSize() {
+        return getBitSize();
+    }
+
+    /**
+     * @return 1 - the product of (1 - the estimate of the layer)
+     */
+    @Override
+    double estimatedFalsePositiveProbability() {
+        double none = 1;
+        for (ExtendedBloomFilter layer : layers) {
+            none *= 1 - layer.estimatedFalsePositiveProbability();
+        }
+        return 1 - none;
+    }
+
+    @Override
+    int layerCount() {
+        return layers.length;
     }
 }
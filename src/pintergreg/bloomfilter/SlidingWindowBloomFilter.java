@@ -0,0 +1,301 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aging Bloom Filter with N time slices, the generalization of
+ * @{link A2BloomFilter} (which is the N = 2 case). Elements are added to the
+ * active slice, the active slice moves on after ttl / (N - 1) time and the
+ * slice it moves to is cleared, so an element is in the Bloom Filter at least
+ * for ttl and at most for ttl × N / (N - 1) time. With 8 slices the expiry is
+ * accurate to ttl / 7 instead of ttl.
+ *
+ * The N bits of a position are stored next to each other in the same word,
+ * so a search hashes the item once and reads one word per hash function for
+ * every slice at once: the slice bits of the k positions are ANDed together
+ * and the item is found if any slice has all of its bits set. N has to be a
+ * power of two up to 64.
+ *
+ * The slices are switched without a thread: every add and search checks the
+ * @{link Clock} and does the missed switches first. It is not thread-safe.
+ *
+ * @author Gergő Pintér
+ */
+public class SlidingWindowBloomFilter extends AbstractBloomFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default number of slices
+     */
+    public static final int DEFAULT_SLICES = 8;
+
+    // number of positions, every position has one bit per slice
+    protected final long m;
+    protected final int k;
+    protected final int ttl;
+    protected final int slices;
+
+    // log2(slices), the bits of position j start at bit j << shift
+    private final int shift;
+    // the lowest slices bits are one
+    private final long sliceMask;
+    // duration of a slice in nanoseconds
+    private final long period;
+    private final LongBitArray bits;
+
+    private int active = 0;
+    // clock time of the next switch in nanoseconds
+    private long nextSwitch;
+    // the clock is not serialized, the system clock is used after reading
+    private transient Clock clock;
+
+    /**
+     * Create Sliding Window Bloom Filter with the default number of slices on
+     * the system clock
+     *
+     * @param n - number of elements added during a ttl period
+     * @param p - false positive probability
+     * @param ttl - time to live in milliseconds, the minimum time an element
+     * is in the Bloom Filter
+     * @throws IllegalArgumentException if ttl is not positive
+     */
+    public SlidingWindowBloomFilter(long n, double p, int ttl) {
+        this(n, p, ttl, DEFAULT_SLICES, Clock.SYSTEM, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Sliding Window Bloom Filter with the default number of slices on
+     * the system clock and the given hash strategy
+     *
+     * @param n - number of elements added during a ttl period
+     * @param p - false positive probability
+     * @param ttl - time to live in milliseconds
+     * @param hashStrategy - the hash function of the keys
+     * @throws IllegalArgumentException if ttl is not positive
+     */
+    public SlidingWindowBloomFilter(long n, double p, int ttl, HashStrategy hashStrategy) {
+        this(n, p, ttl, DEFAULT_SLICES, Clock.SYSTEM, hashStrategy);
+    }
+
+    /**
+     * Create Sliding Window Bloom Filter based on item number, false positive
+     * probability, time to live and the number of slices. A search checks
+     * every slice, so the false positive probability of one slice is
+     * q = 1 - (1 - p)^(1 / N), like the one of the two generations of
+     * @{link A2BloomFilter}. A slice is sized for the elements of its time,
+     * n / (N - 1), assuming they arrive evenly.
+     *
+     * @param n - number of elements added during a ttl period
+     * @param p - false positive probability
+     * @param ttl - time to live in milliseconds, the minimum time an element
+     * is in the Bloom Filter
+     * @param slices - number of slices, a power of two from 2 to 64
+     * @param clock - the source of time, @{link Clock#SYSTEM} or a clock of a
+     * test
+     * @throws IllegalArgumentException if the number of slices is not valid
+     * or ttl is not positive
+     */
+    public SlidingWindowBloomFilter(long n, double p, int ttl, int slices, Clock clock) {
+        this(n, p, ttl, slices, clock, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Sliding Window Bloom Filter based on item number, false positive
+     * probability, time to live, the number of slices and the hash strategy
+     *
+     * @param n - number of elements added during a ttl period
+     * @param p - false positive probability
+     * @param ttl - time to live in milliseconds
+     * @param slices - number of slices, a power of two from 2 to 64
+     * @param clock - the source of time
+     * @param hashStrategy - the hash function of the keys
+     * @throws IllegalArgumentException if the number of slices is not valid
+     * or ttl is not positive
+     */
+    public SlidingWindowBloomFilter(long n, double p, int ttl, int slices, Clock clock, HashStrategy hashStrategy) {
+        super(hashStrategy);
+        if (slices < 2 || slices > 64 || Integer.bitCount(slices) != 1) {
+            throw new IllegalArgumentException("The number of slices has to be a power of two from 2 to 64: " + slices);
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("Time to live has to be positive: " + ttl);
+        }
+        double q = 1 - Math.pow(1 - p, 1.0 / slices);
+        long sliceN = Math.max(1, (n + slices - 2) / (slices - 1));
+
+        this.m = BloomFilterUtils.determineSize(sliceN, q);
+        this.k = BloomFilterUtils.determineHashNumber(this.m, sliceN);
+        this.ttl = ttl;
+        this.slices = slices;
+        this.shift = Integer.numberOfTrailingZeros(slices);
+        this.sliceMask = slices == 64 ? -1L : (1L << slices) - 1;
+        this.period = TimeUnit.MILLISECONDS.toNanos(ttl) / (slices - 1);
+        this.bits = new LongBitArray(this.m * slices);
+        this.clock = clock;
+        this.nextSwitch = clock.nanoTime() + this.period;
+    }
+
+    /**
+     * Add item to the active slice based on its 64 bit hash value
+     *
+     * @param hash - the 64 bit hash of the item
+     */
+    @Override
+    protected void addHash(long hash) {
+        checkClock();
+        for (int i = 0; i < this.k; i++) {
+            this.bits.set((this.hashStrategy.index(hash, i, this.m) << shift) + active);
+        }
+    }
+
+    /**
+     * Search item in every slice based on its 64 bit hash value. The slice
+     * bits of a position are read with one word access and ANDed with the ones
+     * of the previous positions, the search stops when no slice is left.
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if any slice contains the given item, False otherwise
+     */
+    @Override
+    protected boolean includeHash(long hash) {
+        checkClock();
+        long candidates = sliceMask;
+
+        for (int i = 0; i < this.k && candidates != 0; i++) {
+            long base = this.hashStrategy.index(hash, i, this.m) << shift;
+            candidates &= this.bits.getWord(base >>> 6) >>> base;
+        }
+
+        return (candidates & sliceMask) != 0;
+    }
+
+    /**
+     * Clear the Bloom Filter, every slice is emptied
+     */
+    public void clear() {
+        this.bits.clear();
+    }
+
+    /* .......... TIMEING .......... */
+    /**
+     * Switches the active slice if the time of the switch has come. It costs a
+     * clock read.
+     */
+    private void checkClock() {
+        long now = clock.nanoTime();
+        if (now - nextSwitch >= 0) {
+            rotate(now);
+        }
+    }
+
+    /**
+     * Does the switches that are due at the given time. The slices that become
+     * active are cleared together in one pass over the words. The time of the
+     * next switch is counted from the schedule, so the switches do not drift.
+     *
+     * @param now - the current clock time in nanoseconds
+     */
+    private void rotate(long now) {
+        long switches = (now - nextSwitch) / period + 1;
+        long keep = -1L;
+        if (switches >= slices) {
+            keep = 0;
+            active = (int) ((active + switches) & (slices - 1));
+        } else {
+            for (long s = 0; s < switches; s++) {
+                active = (active + 1) & (slices - 1);
+                keep &= ~slicePattern(active);
+            }
+        }
+
+        if (keep == 0) {
+            this.bits.clear();
+        } else {
+            long words = LongBitArray.wordCount(this.m * slices);
+            for (long w = 0; w < words; w++) {
+                this.bits.setWord(w, this.bits.getWord(w) & keep);
+            }
+        }
+        nextSwitch += switches * period;
+    }
+
+    /**
+     * @return a word where the bits of the given slice are one
+     */
+    private long slicePattern(int slice) {
+        long result = 0;
+        for (int b = slice; b < 64; b += slices) {
+            result |= 1L << b;
+        }
+        return result;
+    }
+
+    /**
+     * The clock is not serialized, the system clock is used and a full slice
+     * period starts after reading
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        clock = Clock.SYSTEM;
+        nextSwitch = clock.nanoTime() + period;
+    }
+
+    /* .......... METRICS .......... */
+    @Override
+    long bitCount() {
+        return this.bits.cardinality();
+    }
+
+    @Override
+    long bitSize() {
+        return this.m * slices;
+    }
+
+    /**
+     * @return 1 - the product of (1 - (one bits of the slice / m)^k)
+     */
+    @Override
+    double estimatedFalsePositiveProbability() {
+        long[] patterns = new long[slices];
+        for (int slice = 0; slice < slices; slice++) {
+            patterns[slice] = slicePattern(slice);
+        }
+        long[] counts = new long[slices];
+        long words = LongBitArray.wordCount(this.m * slices);
+        for (long w = 0; w < words; w++) {
+            long word = this.bits.getWord(w);
+            for (int slice = 0; slice < slices; slice++) {
+                counts[slice] += Long.bitCount(word & patterns[slice]);
+            }
+        }
+        double none = 1;
+        for (long count : counts) {
+            none *= 1 - Math.pow((double) count / this.m, this.k);
+        }
+        return 1 - none;
+    }
+
+    @Override
+    int layerCount() {
+        return slices;
+    }
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Stable Bloom Filter for duplicate detection on unbounded streams (Deng and
+ * Rafiei, "Approximately detecting duplicates for streaming data using stable
+ * Bloom filters", 2006). Every position is a small counter, an add sets the k
+ * counters of the item to the maximum and decrements P other counters, so
+ * the old items fade out and the memory never grows.
+ *
+ * After enough adds the ratio of zero counters becomes stable, so the false
+ * positive probability stays at a bound chosen with P instead of growing
+ * with the stream. The price is false negatives: an item can be forgotten,
+ * the more likely the more adds happened since it was added. More counters
+ * keep the items longer. Larger counters do too, but P grows quickly with
+ * the counter size, so the adds get slower: 2 or 4 bits are the usual
+ * choice.
+ *
+ * The P decremented counters are consecutive from a random position, so a
+ * decrement step handles whole words of counters. The indexes are the same as
+ * the ones of @{link CountingBloomFilter} with the same parameters. It is not
+ * thread-safe.
+ *
+ * @author Gergő Pintér
+ */
+public class StableBloomFilter extends AbstractBloomFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default size of a counter in bits, the counters go from 0 to 3
+     */
+    public static final int DEFAULT_COUNTER_BITS = 2;
+
+    protected final long m;
+    protected final int k;
+    // number of the counters decremented by an add
+    protected final int decrements;
+
+    private final int counterBits;
+    // log2 of the counter bits and of the counters in a word
+    private final int counterShift;
+    private final int wordShift;
+    private final long max;
+    // the lowest bit of every counter of a word
+    private final long lowBits;
+
+    // counter i is in word i >>> wordShift at bit (i % counters per word) * counterBits
+    protected LongBitArray counters;
+
+    // state of the generator choosing the decremented counters
+    private long random = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Create Stable Bloom Filter based on the number of the counters and the
+     * false positive probability of the stable state, with 2 bit counters.
+     * The number of hash functions is chosen so that half of the counters are
+     * zero in the stable state.
+     *
+     * @param m - number of the counters, the memory is m * 2 bits
+     * @param p - false positive probability in the stable state
+     */
+    public StableBloomFilter(long m, double p) {
+        this(m, determineHashNumber(p), DEFAULT_COUNTER_BITS, p);
+    }
+
+    /**
+     * Create Stable Bloom Filter based on the number of the counters, the
+     * number of hash functions, the counter size and the false positive
+     * probability of the stable state
+     *
+     * @param m - number of the counters
+     * @param k - number of the hash functions
+     * @param counterBits - size of a counter in bits: 1, 2, 4 or 8
+     * @param p - false positive probability in the stable state
+     * @throws IllegalArgumentException if the probability is not in the
+     * (0, 1) interval or the other parameters are invalid
+     */
+    public StableBloomFilter(long m, int k, int counterBits, double p) {
+        this(m, k, counterBits, determineDecrements(m, k, counterBits, p));
+    }
+
+    /**
+     * Create Stable Bloom Filter with every parameter given
+     *
+     * @param m - number of the counters
+     * @param k - number of the hash functions
+     * @param counterBits - size of a counter in bits: 1, 2, 4 or 8
+     * @param decrements - number of the counters decremented by an add
+     *
+     * It is not recommended to use this constructor, unless you really know
+     * what you do
+     */
+    public StableBloomFilter(long m, int k, int counterBits, int decrements) {
+        this(m, k, counterBits, decrements, HashStrategy.MURMUR_HASH_64A);
+    }
+
+    /**
+     * Create Stable Bloom Filter with every parameter and the hash strategy
+     * given
+     *
+     * @param m - number of the counters
+     * @param k - number of the hash functions
+     * @param counterBits - size of a counter in bits: 1, 2, 4 or 8
+     * @param decrements - number of the counters decremented by an add
+     * @param hashStrategy - the hash function of the keys
+     * @throws IllegalArgumentException if a parameter is invalid
+     */
+    public StableBloomFilter(long m, int k, int counterBits, int decrements, HashStrategy hashStrategy) {
+        super(hashStrategy);
+        if (m < 1) {
+            throw new IllegalArgumentException("Number of counters has to be positive: " + m);
+        }
+        if (k < 1) {
+            throw new IllegalArgumentException("Number of hash functions has to be positive: " + k);
+        }
+        if (counterBits != 1 && counterBits != 2 && counterBits != 4 && counterBits != 8) {
+            throw new IllegalArgumentException("Counter size has to be 1, 2, 4 or 8 bits: " + counterBits);
+        }
+        if (decrements < 1 || decrements > m) {
+            throw new IllegalArgumentException("Number of decrements has to be in [1, m]: " + decrements);
+        }
+        this.m = m;
+        this.k = k;
+        this.decrements = decrements;
+        this.counterBits = counterBits;
+        this.counterShift = Integer.numberOfTrailingZeros(counterBits);
+        this.wordShift = 6 - this.counterShift;
+        this.max = (1L << counterBits) - 1;
+        long low = 0;
+        for (int s = 0; s < 64; s += counterBits) {
+            low |= 1L << s;
+        }
+        this.lowBits = low;
+
+        this.counters = new LongBitArray(m * counterBits);
+    }
+
+    /**
+     * Determines the number of hash functions, so that the stable state with
+     * half of the counters zero gives the false positive probability
+     *
+     * @param p - false positive probability in the stable state
+     * @return the number of hash functions
+     */
+    static int determineHashNumber(double p) {
+        if (!(p > 0 && p < 1)) {
+            throw new IllegalArgumentException("False positive probability has to be in (0, 1): " + p);
+        }
+        return Math.max(1, (int) Math.ceil(Math.log(1 / p) / Math.log(2)));
+    }
+
+    /**
+     * Determines the number of counters decremented by an add. In the stable
+     * state the ratio of zero counters is (1 / (1 + 1 / (P (1/k - 1/m))))^max
+     * and the false positive probability is (1 - ratio)^k, P is solved from
+     * these.
+     *
+     * @param m - number of the counters
+     * @param k - number of the hash functions
+     * @param counterBits - size of a counter in bits
+     * @param p - false positive probability in the stable state
+     * @return the number of decremented counters, at least 1
+     * @throws IllegalArgumentException if the probability is not in the
+     * (0, 1) interval or k is not smaller than m
+     */
+    public static int determineDecrements(long m, int k, int counterBits, double p) {
+        if (!(p > 0 && p < 1)) {
+            throw new IllegalArgumentException("False positive probability has to be in (0, 1): " + p);
+        }
+        if (k < 1 || k >= m) {
+            throw new IllegalArgumentException("Number of hash functions has to be in [1, m): " + k);
+        }
+        double max = (1L << counterBits) - 1;
+        double zeros = Math.pow(1 - Math.pow(p, 1.0 / k), 1 / max);
+        double decrements = 1 / ((1 / zeros - 1) * (1.0 / k - 1.0 / m));
+        return (int) Math.max(1, Math.min(Math.min(m, Integer.MAX_VALUE), Math.round(decrements)));
+    }
+
+    /* .......... COUNTERS .......... */
+    private long counter(long index) {
+        return this.counters.getWord(index >>> wordShift) >>> shift(index) & max;
+    }
+
+    private int shift(long index) {
+        return (int) (index & ((1 << wordShift) - 1)) << counterShift;
+    }
+
+    /**
+     * Decrements the non-zero counters among the given number of consecutive
+     * counters from a random position, wrapping around at the end
+     */
+    private void decrement() {
+        long from = (nextRandom() >>> 1) % this.m;
+        long remaining = this.decrements;
+        while (remaining > 0) {
+            long to = Math.min(this.m, from + remaining);
+            decrement(from, to);
+            remaining -= to - from;
+            from = 0;
+        }
+    }
+
+    /**
+     * Decrements the non-zero counters of [from, to) word by word: the lowest
+     * bit of every non-zero counter is subtracted at once, no borrow crosses
+     * the counters
+     */
+    private void decrement(long from, long to) {
+        int perWord = 1 << wordShift;
+        for (long w = from >>> wordShift; from < to; w++) {
+            long end = Math.min(to, (w + 1) << wordShift);
+            int first = (int) (from & (perWord - 1)) << counterShift;
+            int last = (int) (end - (w << wordShift)) << counterShift;
+            long selected = (last == 64 ? -1L : (1L << last) - 1) & (-1L << first);
+
+            long word = this.counters.getWord(w);
+            long nonZero = word;
+            for (int s = 1; s < counterBits; s <<= 1) {
+                nonZero |= nonZero >>> s;
+            }
+            this.counters.setWord(w, word - (nonZero & lowBits & selected));
+            from = end;
+        }
+    }
+
+    /**
+     * xorshift64 generator of the decremented positions
+     */
+    private long nextRandom() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return random;
+    }
+
+    /* .......... ADD AND SEARCH .......... */
+    /**
+     * Add item to the Stable Bloom Filter based on its 64 bit hash value
+     *
+     * @param hash - the 64 bit hash of the item
+     */
+    @Override
+    protected void addHash(long hash) {
+        putHash(hash);
+    }
+
+    /**
+     * Add item to the Stable Bloom Filter based on its 64 bit hash value and
+     * check whether it was seen before. The counters of the item are read,
+     * then P counters are decremented, then the counters of the item are set
+     * to the maximum; they are in the cache already at the second time.
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if any counter of the item was zero, so it was not seen
+     * before (or forgotten), False otherwise
+     */
+    @Override
+    protected boolean putHash(long hash) {
+        boolean absent = !includeHash(hash);
+
+        decrement();
+        long full = this.max;
+        for (int i = 0; i < this.k; i++) {
+            long index = this.hashStrategy.index(hash, i, this.m);
+            long w = index >>> wordShift;
+            this.counters.setWord(w, this.counters.getWord(w) | full << shift(index));
+        }
+
+        return absent;
+    }
+
+    /**
+     * Search item in the Stable Bloom Filter based on its 64 bit hash value
+     *
+     * @param hash - the 64 bit hash of the item
+     * @return True if no counter of the item is zero, False otherwise
+     */
+    @Override
+    protected boolean includeHash(long hash) {
+        boolean result = true;
+
+        for (int i = 0; i < this.k; i++) {
+            if (counter(this.hashStrategy.index(hash, i, this.m)) == 0) {
+                result = false;
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Add item to the Stable Bloom Filter and check whether it was seen
+     * before, the item is hashed once
+     *
+     * @param key - an item to be added to the Bloom Filter
+     * @return True if the item was seen before (or it is a false positive),
+     * False otherwise
+     */
+    public boolean addAndCheck(byte[] key) {
+        return !put(key);
+    }
+
+    /**
+     * Add item to the Stable Bloom Filter and check whether it was seen
+     * before, see @{link #addAndCheck(byte[])}
+     *
+     * @param key - array containing the item to be added to the Bloom Filter
+     * @param offset - the first byte of the item
+     * @param length - the number of bytes of the item
+     * @return True if the item was seen before, False otherwise
+     */
+    public boolean addAndCheck(byte[] key, int offset, int length) {
+        return !put(key, offset, length);
+    }
+
+    /**
+     * Add item to the Stable Bloom Filter and check whether it was seen
+     * before, see @{link #addAndCheck(byte[])}
+     *
+     * @param key - the remaining bytes of the buffer are added to the Bloom
+     * Filter, the position of the buffer is not changed
+     * @return True if the item was seen before, False otherwise
+     */
+    public boolean addAndCheck(ByteBuffer key) {
+        return !put(key);
+    }
+
+    /**
+     * Add item to the Stable Bloom Filter and check whether it was seen
+     * before, see @{link #addAndCheck(byte[])}
+     *
+     * @param key - a character sequence to be added to the Bloom Filter, it is
+     * handled as its UTF-8 representation
+     * @return True if the item was seen before, False otherwise
+     */
+    public boolean addAndCheck(CharSequence key) {
+        return !put(key);
+    }
+
+    /**
+     * Add item to the Stable Bloom Filter and check whether it was seen
+     * before, see @{link #addAndCheck(byte[])}
+     *
+     * @param key - a Long item to be added to the Bloom Filter
+     * @return True if the item was seen before, False otherwise
+     */
+    public boolean addAndCheck(long key) {
+        return !put(key);
+    }
+
+    /**
+     * Add item to the Stable Bloom Filter and check whether it was seen
+     * before, see @{link #addAndCheck(byte[])}
+     *
+     * @param key - an Integer item to be added to the Bloom Filter
+     * @return True if the item was seen before, False otherwise
+     */
+    public boolean addAndCheck(int key) {
+        return !put(key);
+    }
+
+    /**
+     * Clear the Stable Bloom Filter, set every counter to zero
+     */
+    public void clear() {
+        this.counters.clear();
+    }
+
+    /* .......... PARAMETERS .......... */
+    /**
+     * @return the number of counters decremented by an add
+     */
+    public int getDecrements() {
+        return decrements;
+    }
+
+    /**
+     * @return the size of a counter in bits
+     */
+    public int getCounterBits() {
+        return counterBits;
+    }
+
+    /**
+     * @return the size of the counters in bits, it never changes
+     */
+    public long getBitSize() {
+        return this.m * counterBits;
+    }
+
+    /**
+     * @return the false positive probability in the stable state, see
+     * @{link #determineDecrements(long, int, int, double)}
+     */
+    public double getStableFalsePositiveProbability() {
+        double zeros = Math.pow(1 / (1 + 1 / (decrements * (1.0 / k - 1.0 / m))), max);
+        return Math.pow(1 - zeros, k);
+    }
+
+    /**
+     * Estimates the probability that an item added the given number of adds
+     * ago is not found any more. A counter of the item is decremented by an
+     * add with P / m probability, the item is lost when one of its k
+     * counters got max decrements (Poisson approximation). The counters set
+     * again by other items are ignored, so it is an upper bound.
+     *
+     * @param age - the number of adds since the item was added
+     * @return the probability of a false negative
+     */
+    public double estimateFalseNegativeProbability(long age) {
+        double lambda = (double) age * decrements / m;
+        // probability that a counter got less than max decrements
+        double term = Math.exp(-lambda);
+        double kept = 0;
+        for (int i = 0; i < max; i++) {
+            kept += term;
+            term *= lambda / (i + 1);
+        }
+        return 1 - Math.pow(Math.min(1, kept), k);
+    }
+
+    /* .......... METRICS .......... */
+    /**
+     * @return the number of non-zero counters
+     */
+    @Override
+    long bitCount() {
+        long words = LongBitArray.wordCount(this.m * counterBits);
+        long result = 0;
+        for (long w = 0; w < words; w++) {
+            long word = this.counters.getWord(w);
+            for (int s = 1; s < counterBits; s <<= 1) {
+                word |= word >>> s;
+            }
+            result += Long.bitCount(word & lowBits);
+        }
+        return result;
+    }
+
+    @Override
+    long bitSize() {
+        return getBitSize();
+    }
+
+    /**
+     * @return the ratio of the non-zero counters
+     */
+    @Override
+    double fillRatio() {
+        return (double) bitCount() / this.m;
+    }
+
+    /**
+     * @return (non-zero counters / m)^k
+     */
+    @Override
+    double estimatedFalsePositiveProbability() {
+        return Math.pow(fillRatio(), this.k);
+    }
+}
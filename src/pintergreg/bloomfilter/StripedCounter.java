@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pintergreg.bloomfilter;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that is incremented by many threads at once. The threads are spread
+ * over cells by their id, every cell is on its own cache line, so the
+ * increments of different threads do not contend. The value is the sum of
+ * the cells.
+ *
+ * @author Gergő Pintér
+ */
+final class StripedCounter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // 16 longs, 128 bytes between the cells, the adjacent line prefetch does
+    // not couple them either
+    private static final int PADDING_SHIFT = 4;
+    private static final int MAX_STRIPES = 64;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    /**
+     * Create a counter with twice as many cells as the processors
+     */
+    StripedCounter() {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        stripes = Math.min(MAX_STRIPES, stripes);
+        this.cells = new AtomicLongArray(stripes << PADDING_SHIFT);
+        this.mask = stripes - 1;
+    }
+
+    /**
+     * @return the index of the cell of the current thread
+     */
+    private int cell() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Adds one to the counter
+     *
+     * @return the new value of the cell of the current thread, it can be used
+     * for sampling every n-th operation of the thread
+     */
+    long increment() {
+        return cells.incrementAndGet(cell() << PADDING_SHIFT);
+    }
+
+    /**
+     * Adds the given value to the counter
+     *
+     * @param delta - the value to be added
+     */
+    void add(long delta) {
+        cells.addAndGet(cell() << PADDING_SHIFT, delta);
+    }
+
+    /**
+     * @return the sum of the cells, the increments done during the call may be
+     * missed
+     */
+    long sum() {
+        long result = 0;
+        for (int i = 0; i <= mask; i++) {
+            result += cells.get(i << PADDING_SHIFT);
+        }
+        return result;
+    }
+
+    /**
+     * Sets the counter to zero, the increments done during the call may be
+     * kept
+     */
+    void reset() {
+        for (int i = 0; i <= mask; i++) {
+            cells.set(i << PADDING_SHIFT, 0);
+        }
+    }
+}
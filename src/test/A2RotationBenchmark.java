@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.Arrays;
+import java.util.Random;
+import pintergreg.bloomfilter.A2BloomFilter;
+import pintergreg.bloomfilter.Clock;
+import pintergreg.bloomfilter.ScalableBloomFilter;
+
+/**
+ * Measures the latency of the adds of an A2 Bloom Filter while its generations
+ * are switched. The capacity can be given as the first argument, the default
+ * is 20 million at 0.01 false positive probability, the time to live is 200
+ * milliseconds. For comparison the time of clearing one generation in place
+ * is printed too, that is the stall a switch would cause without the zeroed
+ * spare.
+ *
+ * @author Gergő Pintér
+ */
+public class A2RotationBenchmark {
+
+    private static final int TTL = 200;
+    private static final int OPERATIONS = 20000000;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 20000000;
+        Random rand = new Random(42);
+
+        ScalableBloomFilter generation = new ScalableBloomFilter(n, 0.01);
+        for (int i = 0; i < n / 2; i++) {
+            generation.add(rand.nextLong());
+        }
+        long start = System.nanoTime();
+        generation.clear();
+        System.out.printf("clearing a generation in place: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        generation = null;
+
+        for (int round = 0; round < 3; round++) {
+            A2BloomFilter bf = new A2BloomFilter(n, 0.01, TTL, Clock.SYSTEM);
+            long[] latencies = new long[OPERATIONS];
+            long begin = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                long key = rand.nextLong();
+                long before = System.nanoTime();
+                bf.add(key);
+                latencies[i] = System.nanoTime() - before;
+            }
+            long elapsed = System.nanoTime() - begin;
+            Arrays.sort(latencies);
+
+            System.out.printf("round %d: %d switches, add p50 %d ns, p99 %d ns, p99.9 %d ns, max %.2f ms%n",
+                    round, elapsed / (TTL * 1000000L),
+                    latencies[OPERATIONS / 2], latencies[OPERATIONS / 100 * 99],
+                    latencies[OPERATIONS / 1000 * 999], latencies[OPERATIONS - 1] / 1e6);
+            bf.stopTimer();
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.Random;
+import pintergreg.bloomfilter.BloomFilter;
+
+/**
+ * Compares the one by one and the batch methods on a Bloom Filter that is
+ * much larger than the last level cache. The number of stored elements can be
+ * given as the first argument, the default is 50 million (60 MB bitvector at
+ * 0.01 false positive rate).
+ *
+ * @author Gergő Pintér
+ */
+public class BatchBenchmark {
+
+    private static final int BATCH = 4096;
+    private static final int QUERIES = 10000000;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 50000000;
+        Random rand = new Random(42);
+        long[] keys = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            keys[i] = rand.nextLong();
+        }
+
+        for (int round = 0; round < 3; round++) {
+            BloomFilter single = new BloomFilter(n, 0.01);
+            BloomFilter batch = new BloomFilter(n, 0.01);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                single.add(keys[i % QUERIES] + i / QUERIES);
+            }
+            long addSingle = System.nanoTime() - start;
+
+            long[] chunk = new long[BATCH];
+            start = System.nanoTime();
+            for (int from = 0; from < n; from += BATCH) {
+                int count = Math.min(BATCH, n - from);
+                if (count < BATCH) {
+                    chunk = new long[count];
+                }
+                for (int j = 0; j < count; j++) {
+                    chunk[j] = keys[(from + j) % QUERIES] + (from + j) / QUERIES;
+                }
+                batch.addAll(chunk);
+            }
+            long addBatch = System.nanoTime() - start;
+
+            // every second query is a stored key
+            long[] queries = new long[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                queries[i] = (i & 1) == 0 ? keys[i] : keys[i] ^ 0x5555555555555555L;
+            }
+
+            int foundSingle = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                if (single.include(queries[i])) {
+                    foundSingle++;
+                }
+            }
+            long includeSingle = System.nanoTime() - start;
+
+            int foundBatch = 0;
+            long[] query = new long[BATCH];
+            boolean[] result = new boolean[BATCH];
+            start = System.nanoTime();
+            for (int from = 0; from + BATCH <= QUERIES; from += BATCH) {
+                System.arraycopy(queries, from, query, 0, BATCH);
+                batch.includeAll(query, result);
+                for (int j = 0; j < BATCH; j++) {
+                    if (result[j]) {
+                        foundBatch++;
+                    }
+                }
+            }
+            long includeBatch = System.nanoTime() - start;
+
+            System.out.printf("round %d: add %.1f vs %.1f ns/key, include %.1f vs %.1f ns/key (one by one vs batch), found %d vs %d%n",
+                    round, (double) addSingle / n, (double) addBatch / n,
+                    (double) includeSingle / QUERIES, (double) includeBatch / (QUERIES / BATCH * BATCH),
+                    foundSingle, foundBatch);
+        }
+    }
+
+}
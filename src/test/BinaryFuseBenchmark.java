@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import pintergreg.bloomfilter.BinaryFuseFilter;
+import pintergreg.bloomfilter.BloomFilter;
+import pintergreg.bloomfilter.BloomFilterFormat;
+import pintergreg.bloomfilter.BloomFilterUtils;
+
+/**
+ * Compares the 8 and 16 bit Binary Fuse Filters with Bloom Filters of the same
+ * false positive probability: build time, memory per item, search time and
+ * the measured false positive rate. The filters are also written to and read
+ * from the binary format. The number of stored elements can be given as the
+ * first argument, the default is 10 million.
+ *
+ * @author Gergő Pintér
+ */
+public class BinaryFuseBenchmark {
+
+    private static final int QUERIES = 10000000;
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        Random rand = new Random(42);
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = rand.nextLong();
+        }
+        long[] absent = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            absent[i] = rand.nextLong();
+        }
+        File file = File.createTempFile("binaryfuse", ".blmf");
+        file.deleteOnExit();
+
+        for (int bits : new int[]{8, 16}) {
+            double p = Math.pow(2, -bits);
+
+            long start = System.nanoTime();
+            BloomFilter bf = new BloomFilter(n, p);
+            bf.addAll(keys);
+            long buildBloom = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            BinaryFuseFilter bff = BinaryFuseFilter.build(keys, bits);
+            long buildFuse = System.nanoTime() - start;
+
+            BloomFilterFormat.write(bff, file);
+            BinaryFuseFilter read = (BinaryFuseFilter) BloomFilterFormat.read(file);
+            boolean same = true;
+            for (int i = 0; i < n && same; i += 101) {
+                same = read.include(keys[i]) && read.include(absent[i % QUERIES]) == bff.include(absent[i % QUERIES]);
+            }
+
+            int positivesBloom = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                if (bf.include(absent[i])) {
+                    positivesBloom++;
+                }
+            }
+            long includeBloom = System.nanoTime() - start;
+
+            int positivesFuse = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                if (bff.include(absent[i])) {
+                    positivesFuse++;
+                }
+            }
+            long includeFuse = System.nanoTime() - start;
+
+            System.out.printf("%d bit: build %d vs %d ms, bits/item %.1f vs %.1f, search %.1f vs %.1f ns, false positive rate %.6f vs %.6f (Bloom vs Binary Fuse), format round trip %b%n",
+                    bits, buildBloom / 1000000, buildFuse / 1000000,
+                    (double) BloomFilterUtils.determineSize((long) n, p) / n, (double) bff.getBitSize() / n,
+                    (double) includeBloom / QUERIES, (double) includeFuse / QUERIES,
+                    (double) positivesBloom / QUERIES, (double) positivesFuse / QUERIES, same);
+        }
+    }
+
+}
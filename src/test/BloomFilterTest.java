@@ -15,24 +15,90 @@
  */
 package test;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import pintergreg.bloomfilter.A2BloomFilter;
+import pintergreg.bloomfilter.BinaryFuseFilter;
+import pintergreg.bloomfilter.BlockedBloomFilter;
 import pintergreg.bloomfilter.BloomFilter;
+import pintergreg.bloomfilter.BloomFilterFormat;
+import pintergreg.bloomfilter.BloomFilterUtils;
+import pintergreg.bloomfilter.Clock;
+import pintergreg.bloomfilter.ConcurrentBloomFilter;
+import pintergreg.bloomfilter.ConcurrentScalableBloomFilter;
+import pintergreg.bloomfilter.CountingBloomFilter;
+import pintergreg.bloomfilter.CuckooFilter;
+import pintergreg.bloomfilter.ExtendedBloomFilter;
+import pintergreg.bloomfilter.FilterMetrics;
+import pintergreg.bloomfilter.HashStrategy;
+import pintergreg.bloomfilter.MappedBitArray;
+import pintergreg.bloomfilter.ParallelBloomFilterBuilder;
+import pintergreg.bloomfilter.PartitionedBloomFilter;
 import pintergreg.bloomfilter.ScalableBloomFilter;
+import pintergreg.bloomfilter.SlidingWindowBloomFilter;
+import pintergreg.bloomfilter.StableBloomFilter;
 
 public class BloomFilterTest {
 
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) throws InterruptedException, IOException, JMException {
 
         System.out.println("Testing Basic Bloom Filter\n\texpected output: True, True, False");
         basicBloomFilterTest();
-        System.out.println("\nTesting Scalable Bloom Filter\n\texpected output: 3, 2718");
+        System.out.println("\nTesting key types\n\texpected output: True, True, True, True, True");
+        keyTypeTest();
+        System.out.println("\nTesting hash strategies\n\texpected output: True, True, True, False, True, True, True, True");
+        hashStrategyTest();
+        System.out.println("\nTesting Scalable Bloom Filter\n\texpected output: 2, 2718");
         ScalableBloomFilterTest();
+        System.out.println("\nTesting Concurrent Scalable Bloom Filter\n\texpected output: 20000, True, True");
+        concurrentScalableBloomFilterTest();
+        System.out.println("\nTesting repeated adds\n\texpected output: True, False, 1, 3, 1, 1, True, False, True");
+        repeatedAddTest();
+        System.out.println("\nTesting Blocked Bloom Filter\n\texpected output: True, False, 2, 2718");
+        blockedBloomFilterTest();
+        System.out.println("\nTesting Partitioned Bloom Filter\n\texpected output: True, False, True, True, False, True");
+        partitionedBloomFilterTest();
+        System.out.println("\nTesting memory-mapped Bloom Filter\n\texpected output: True, True, False");
+        mappedBloomFilterTest();
+        System.out.println("\nTesting binary format\n\texpected output: True, False, 2, 2718, True, True");
+        formatTest();
+        System.out.println("\nTesting parallel build and merging\n\texpected output: 100000, 100000, True, True, False, True, False");
+        parallelBuildTest();
+        System.out.println("\nTesting bulk operations\n\texpected output: True, True, True, True, False, True");
+        bulkOperationTest();
+        System.out.println("\nTesting Counting Bloom Filter\n\texpected output: True, False, False, True, True, False, True, True");
+        countingBloomFilterTest();
+        System.out.println("\nTesting Stable Bloom Filter\n\texpected output: False, True, True, True, True");
+        stableBloomFilterTest();
+        System.out.println("\nTesting Cuckoo Filter\n\texpected output: True, False, True, False, True, True, True, True");
+        cuckooFilterTest();
+        System.out.println("\nTesting Binary Fuse Filter\n\texpected output: True, False, 2718, 2718, True");
+        binaryFuseFilterTest();
         System.out.println("\nTesting A2 Bloom Filter\n\texpected output: True, False, True, False");
         A2BloomFilterTest();
 
         System.out.println("\nTesting A2 Bloom Filter again\n\texpected output: True, True, True, False, True, True, False, False, False");
         SecondA2BloomFilterTest();
+
+        System.out.println("\nTesting A2 Bloom Filter with clock\n\texpected output: True, True, True, False, False, True, False, True");
+        clockA2BloomFilterTest();
+
+        System.out.println("\nTesting Sliding Window Bloom Filter\n\texpected output: True, False, True, False, True, False, True");
+        slidingWindowBloomFilterTest();
+
+        System.out.println("\nTesting metrics\n\texpected output: True, True, True, True, True, 10000, False");
+        metricsTest();
+
+        System.out.println("\nTesting cardinality estimation\n\texpected output: True, True, True, True, True");
+        cardinalityTest();
     }
 
     /**
@@ -52,6 +118,81 @@ public class BloomFilterTest {
         System.out.println(bf.include("szilva".getBytes())); // Expected output: False
     }
 
+    /**
+     * Test for the key type overloads, every representation of the same item
+     * should be found
+     */
+    private static void keyTypeTest() {
+        BloomFilter bf = new BloomFilter(1000, 0.001);
+
+        bf.add(2718L);
+        bf.add(31415);
+        bf.add("körte");
+
+        System.out.println(bf.include(ByteBuffer.allocate(8).putLong(2718L).array())); // Expected output: True
+        System.out.println(bf.include(ByteBuffer.allocate(4).putInt(31415).array())); // Expected output: True
+        System.out.println(bf.include(ByteBuffer.allocateDirect(4).putInt(0, 31415))); // Expected output: True
+        System.out.println(bf.include(new StringBuilder("körte"))); // Expected output: True
+        byte[] buffer = "alma körte szilva".getBytes(StandardCharsets.UTF_8);
+        System.out.println(bf.include(buffer, 5, 6)); // Expected output: True
+    }
+
+    /**
+     * Test for the built-in hash strategies: the hashes are the standard ones,
+     * filters with different strategies cannot be merged and the strategy is
+     * stored in the binary format
+     *
+     * @throws IOException if the temporary file cannot be used
+     */
+    private static void hashStrategyTest() throws IOException {
+        System.out.println(HashStrategy.XXHASH_64.hash("abc") == 0x44BC2CF5AD770999L); // Expected output: True
+        System.out.println(HashStrategy.MURMUR_HASH_3.hash("hello") == 0xCBD8A7B341BD9B02L); // Expected output: True
+
+        BloomFilter xxh = new BloomFilter(1000, 0.001, HashStrategy.XXHASH_64);
+        BloomFilter murmur = new BloomFilter(1000, 0.001);
+        boolean found = true;
+        for (int i = 0; i < 1000; i++) {
+            xxh.add(i);
+            found &= xxh.include(ByteBuffer.allocate(4).putInt(i).array());
+        }
+        System.out.println(found); // Expected output: True
+        System.out.println(xxh.isCompatible(murmur)); // Expected output: False
+
+        File file = File.createTempFile("bloomfilter", ".blmf");
+        file.deleteOnExit();
+        BloomFilterFormat.write(xxh, file);
+        BloomFilter read = (BloomFilter) BloomFilterFormat.read(file);
+        System.out.println(read.getHashStrategy() == HashStrategy.XXHASH_64); // Expected output: True
+        found = true;
+        for (int i = 0; i < 1000; i++) {
+            found &= read.include(i);
+        }
+        System.out.println(found); // Expected output: True
+
+        // The aging filters pass the strategy to their generations, the A2
+        // generations are switched once and stored
+        ManualClock clock = new ManualClock();
+        A2BloomFilter a2 = new A2BloomFilter(1000, 0.001, 1000, clock, HashStrategy.MURMUR_HASH_3);
+        SlidingWindowBloomFilter sliding = new SlidingWindowBloomFilter(1000, 0.001, 1000, 8, clock,
+                HashStrategy.MURMUR_HASH_3);
+        CuckooFilter cuckoo = new CuckooFilter(1000, 0.001, HashStrategy.MURMUR_HASH_3);
+        for (int i = 0; i < 1000; i++) {
+            a2.add(i);
+            sliding.add(i);
+            cuckoo.add(i);
+        }
+        clock.advance(1000);
+        found = true;
+        for (int i = 0; i < 1000; i++) {
+            found &= a2.include(i) && sliding.include(i) && cuckoo.include(i);
+        }
+        System.out.println(found); // Expected output: True
+        BloomFilterFormat.write(a2, file);
+        A2BloomFilter readA2 = (A2BloomFilter) BloomFilterFormat.read(file);
+        System.out.println(readA2.getHashStrategy() == HashStrategy.MURMUR_HASH_3 && readA2.include(999)); // Expected output: True
+        readA2.stopTimer();
+    }
+
     /**
      * Test for Scalable Bloom Filter class
      */
@@ -59,12 +200,13 @@ public class BloomFilterTest {
         // Create a scalable Bloom Filter for storing 1000 elements with 0.001 false positive rate
         ScalableBloomFilter sbf = new ScalableBloomFilter(1000, 0.001);
 
-        // Add more than 1000 elements and the scalable Bloom Filter should scale
+        // Add more than 1000 elements and the scalable Bloom Filter should scale,
+        // the second layer is twice as large as the first one
         for (int i = 0; i < 2718; i++) {
             sbf.add(ByteBuffer.allocate(4).putInt(i).array());
         }
 
-        System.out.println(sbf.getSize()); // Expected output: 3
+        System.out.println(sbf.getSize()); // Expected output: 2
 
         int sum = 0;
         for (int i = 0; i < 2718; i++) {
@@ -76,6 +218,465 @@ public class BloomFilterTest {
         System.out.println(sum); // Expected output: 2718
     }
 
+    /**
+     * Test for Concurrent Scalable Bloom Filter, four threads add their own
+     * keys at once, so the layers are created while the others are adding
+     */
+    private static void concurrentScalableBloomFilterTest() throws InterruptedException {
+        final ConcurrentScalableBloomFilter csbf = new ConcurrentScalableBloomFilter(1000, 0.01);
+        final int threads = 4;
+        final int perThread = 5000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long base = (long) t * perThread;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        csbf.add(base + i);
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        int sum = 0;
+        for (long i = 0; i < threads * perThread; i++) {
+            if (csbf.include(i)) {
+                sum++;
+            }
+        }
+        System.out.println(sum); // Expected output: 20000
+
+        // The same number of layers as the single-threaded Scalable Bloom Filter
+        ScalableBloomFilter sbf = new ScalableBloomFilter(1000, 0.01);
+        for (long i = 0; i < threads * perThread; i++) {
+            sbf.add(i);
+        }
+        System.out.println(csbf.getSize() == sbf.getSize()); // Expected output: True
+
+        // The compound false positive rate stays below 0.01
+        int falsePositives = 0;
+        for (long i = threads * perThread; i < 10 * threads * perThread; i++) {
+            if (csbf.include(i)) {
+                falsePositives++;
+            }
+        }
+        System.out.println(falsePositives < 0.01 * 9 * threads * perThread); // Expected output: True
+    }
+
+    /**
+     * Test for put and the size of the filters when the same items are added
+     * again
+     */
+    private static void repeatedAddTest() {
+        ExtendedBloomFilter ebf = new ExtendedBloomFilter(1000, 0.01);
+        System.out.println(ebf.put("alma")); // Expected output: True
+        System.out.println(ebf.put("alma")); // Expected output: False
+        ebf.add("alma");
+        System.out.println(ebf.getSize()); // Expected output: 1
+
+        // Repeated items of a batch are counted once
+        ExtendedBloomFilter batch = new ExtendedBloomFilter(1000, 0.01);
+        batch.addAll(new long[]{1, 2, 2, 3, 1});
+        System.out.println(batch.getSize()); // Expected output: 3
+
+        // 500 items added five times fit into the first layer of 1000
+        ScalableBloomFilter sbf = new ScalableBloomFilter(1000, 0.001);
+        for (int r = 0; r < 5; r++) {
+            for (int i = 0; i < 500; i++) {
+                sbf.add(i);
+            }
+        }
+        System.out.println(sbf.getSize()); // Expected output: 1
+
+        // The same in one batch, and a batch split over new layers
+        ScalableBloomFilter batchScalable = new ScalableBloomFilter(1000, 0.001);
+        long[] repeated = new long[2500];
+        for (int i = 0; i < repeated.length; i++) {
+            repeated[i] = i % 500;
+        }
+        batchScalable.addAll(repeated);
+        System.out.println(batchScalable.getSize()); // Expected output: 1
+        long[] keys = new long[2718];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i;
+        }
+        batchScalable.addAll(keys);
+        boolean[] found = new boolean[keys.length];
+        batchScalable.includeAll(keys, found);
+        boolean all = batchScalable.getSize() > 1;
+        for (boolean f : found) {
+            all &= f;
+        }
+        System.out.println(all); // Expected output: True
+
+        // Fill based saturation, half of the bits are one at the capacity
+        System.out.println(ebf.isFull(0.5)); // Expected output: False
+        for (int i = 0; i < 2000; i++) {
+            ebf.add(i);
+        }
+        System.out.println(ebf.isFull(0.5)); // Expected output: True
+    }
+
+    /**
+     * Test for Blocked Bloom Filter, alone and as the layer of Scalable Bloom
+     * Filter
+     */
+    private static void blockedBloomFilterTest() {
+        BlockedBloomFilter bf = new BlockedBloomFilter(1000, 0.001);
+        bf.add("alma".getBytes());
+        System.out.println(bf.include("alma".getBytes())); // Expected output: True
+        System.out.println(bf.include("szilva".getBytes())); // Expected output: False
+
+        ScalableBloomFilter sbf = new ScalableBloomFilter(1500, 0.001, true);
+        int sum = 0;
+        for (int i = 0; i < 2718; i++) {
+            sbf.add(i);
+        }
+        for (int i = 0; i < 2718; i++) {
+            if (sbf.include(i)) {
+                sum++;
+            }
+        }
+        System.out.println(sbf.getSize()); // Expected output: 2
+        System.out.println(sum); // Expected output: 2718
+    }
+
+    /**
+     * Test for Partitioned Bloom Filter: single and batch searches, the binary
+     * format and the false positive rate
+     */
+    private static void partitionedBloomFilterTest() throws IOException {
+        PartitionedBloomFilter bf = new PartitionedBloomFilter(10000, 0.01);
+        bf.add("alma".getBytes());
+        System.out.println(bf.include("alma".getBytes())); // Expected output: True
+        System.out.println(bf.include("szilva".getBytes())); // Expected output: False
+
+        long[] keys = new long[20000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i;
+        }
+        bf.addAll(Arrays.copyOf(keys, 10000));
+        boolean[] found = new boolean[keys.length];
+        bf.includeAll(keys, found);
+        boolean same = true;
+        int positives = 0;
+        for (int i = 0; i < keys.length; i++) {
+            same &= found[i] == bf.include(keys[i]) && (i >= 10000 || found[i]);
+            if (i >= 10000 && found[i]) {
+                positives++;
+            }
+        }
+        // the batch search gives the same results, about 1% false positives
+        System.out.println(same && positives < 150); // Expected output: True
+
+        File file = File.createTempFile("bloomfilter", ".blmf");
+        file.deleteOnExit();
+        BloomFilterFormat.write(bf, file);
+        BloomFilter read = (BloomFilter) BloomFilterFormat.read(file);
+        System.out.println(read instanceof PartitionedBloomFilter && read.include("alma".getBytes())); // Expected output: True
+
+        // the same size and hash functions, but the indexes are derived an other way
+        BloomFilter plain = new BloomFilter(bf.getSliceSize() * 7, 7);
+        System.out.println(plain.isCompatible(new PartitionedBloomFilter(bf.getSliceSize() * 7, 7))); // Expected output: False
+        System.out.println(bf.isCompatible(read)); // Expected output: True
+    }
+
+    /**
+     * Test for a Bloom Filter stored in a memory-mapped file, the file is
+     * opened again read-only after the items are added
+     *
+     * @throws IOException if the temporary file cannot be used
+     */
+    private static void mappedBloomFilterTest() throws IOException {
+        File file = File.createTempFile("bloomfilter", ".bits");
+        file.deleteOnExit();
+        long m = BloomFilterUtils.determineSize(1000L, 0.001);
+        int k = BloomFilterUtils.determineHashNumber(m, 1000L);
+
+        MappedBitArray bits = MappedBitArray.create(file, m);
+        BloomFilter bf = new BloomFilter(bits, k);
+        bf.add("alma".getBytes());
+        bf.add("körte".getBytes());
+        bits.force();
+
+        BloomFilter reopened = new BloomFilter(MappedBitArray.open(file, m, true), k);
+        System.out.println(reopened.include("alma".getBytes())); // Expected output: True
+        System.out.println(reopened.include("körte".getBytes())); // Expected output: True
+        System.out.println(reopened.include("szilva".getBytes())); // Expected output: False
+    }
+
+    /**
+     * Test for building Bloom Filters on several threads and for merging Bloom
+     * Filters
+     */
+    private static void parallelBuildTest() {
+        long[] keys = new long[100000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i;
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        // Build the same Bloom Filter with thread-local and with a shared bitvector
+        BloomFilter local = new ParallelBloomFilterBuilder(100000, 0.001, pool, false).build(keys);
+        BloomFilter shared = new ParallelBloomFilterBuilder(100000, 0.001, pool, true).build(keys);
+        pool.shutdown();
+        int sumLocal = 0;
+        int sumShared = 0;
+        for (long key : keys) {
+            sumLocal += local.include(key) ? 1 : 0;
+            sumShared += shared.include(key) ? 1 : 0;
+        }
+        System.out.println(sumLocal); // Expected output: 100000
+        System.out.println(sumShared); // Expected output: 100000
+
+        // Merge two Bloom Filters
+        BloomFilter a = new BloomFilter(1000, 0.001);
+        BloomFilter b = new BloomFilter(1000, 0.001);
+        a.add("alma".getBytes());
+        a.add("körte".getBytes());
+        b.add("körte".getBytes());
+        BloomFilter union = new BloomFilter(1000, 0.001);
+        union.union(a);
+        union.union(b);
+        System.out.println(union.include("alma".getBytes())); // Expected output: True
+        a.intersect(b);
+        System.out.println(a.include("körte".getBytes())); // Expected output: True
+        System.out.println(a.include("alma".getBytes())); // Expected output: False
+        System.out.println(a.isCompatible(new ConcurrentBloomFilter(1000, 0.001))); // Expected output: True
+        System.out.println(new BloomFilter(14848, 10).isCompatible(new BlockedBloomFilter(14848, 10))); // Expected output: False
+    }
+
+    /**
+     * Test for the whole-bitvector operations, on the calling thread and on a
+     * pool. The bitvectors are large enough to be split into several tasks.
+     */
+    private static void bulkOperationTest() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        BloomFilter[] parts = new BloomFilter[3];
+        for (int p = 0; p < parts.length; p++) {
+            parts[p] = new BloomFilter(10000000L, 7);
+            for (int i = p * 1000; i < (p + 1) * 1000; i++) {
+                parts[p].add(i);
+            }
+        }
+
+        BloomFilter merged = new BloomFilter(10000000L, 7);
+        merged.unionAll(parts, pool);
+        boolean found = true;
+        for (int i = 0; i < 3000; i++) {
+            found &= merged.include(i);
+        }
+        System.out.println(found); // Expected output: True
+
+        BloomFilter sequential = new BloomFilter(10000000L, 7);
+        for (BloomFilter part : parts) {
+            sequential.union(part);
+        }
+        System.out.println(merged.contentEquals(sequential, pool)); // Expected output: True
+        System.out.println(merged.cardinality(pool) == sequential.cardinality()); // Expected output: True
+
+        // every bit of the first part is in the merged one
+        System.out.println(merged.difference(parts[0], pool) == merged.cardinality() - parts[0].cardinality()); // Expected output: True
+        System.out.println(merged.contentEquals(parts[0])); // Expected output: False
+
+        merged.clear(pool);
+        System.out.println(merged.cardinality(pool) == 0); // Expected output: True
+        pool.shutdown();
+    }
+
+    /**
+     * Test for removing items from a Counting Bloom Filter
+     */
+    private static void countingBloomFilterTest() {
+        CountingBloomFilter cbf = new CountingBloomFilter(1000, 0.001);
+        cbf.add("alma".getBytes());
+        cbf.add("körte".getBytes());
+
+        // Remove an added element and a never added one
+        System.out.println(cbf.remove("alma".getBytes())); // Expected output: True
+        System.out.println(cbf.remove("szilva".getBytes())); // Expected output: False
+        System.out.println(cbf.include("alma".getBytes())); // Expected output: False
+        System.out.println(cbf.include("körte".getBytes())); // Expected output: True
+
+        // The plain Bloom Filter projection contains the remaining element
+        BloomFilter bf = cbf.toBloomFilter();
+        System.out.println(bf.include("körte".getBytes())); // Expected output: True
+        System.out.println(bf.include("alma".getBytes())); // Expected output: False
+
+        // The projection keeps the hash strategy of the counters
+        CountingBloomFilter xcbf = new CountingBloomFilter(1000, 0.001, HashStrategy.XXHASH_64);
+        xcbf.add("körte".getBytes());
+        BloomFilter xbf = xcbf.toBloomFilter();
+        System.out.println(xbf.getHashStrategy() == HashStrategy.XXHASH_64); // Expected output: True
+        System.out.println(xbf.include("körte".getBytes())); // Expected output: True
+    }
+
+    /**
+     * Test for Stable Bloom Filter on a stream ten times longer than the
+     * number of counters
+     */
+    private static void stableBloomFilterTest() {
+        StableBloomFilter sbf = new StableBloomFilter(100000, 0.01);
+        System.out.println(sbf.addAndCheck("alma")); // Expected output: False
+        System.out.println(sbf.addAndCheck("alma")); // Expected output: True
+
+        for (long i = 0; i < 1000000; i++) {
+            sbf.add(i);
+        }
+
+        // The false positive rate stays at the stable bound
+        int falsePositives = 0;
+        for (long i = 1000000; i < 1100000; i++) {
+            if (sbf.include(i)) {
+                falsePositives++;
+            }
+        }
+        double rate = falsePositives / 100000.0;
+        double stable = sbf.getStableFalsePositiveProbability();
+        System.out.println(Math.abs(rate - stable) < 0.3 * stable); // Expected output: True
+
+        // The recent items are remembered
+        int recent = 0;
+        for (long i = 999000; i < 1000000; i++) {
+            if (sbf.include(i)) {
+                recent++;
+            }
+        }
+        System.out.println(recent >= 990); // Expected output: True
+
+        // The memory does not grow with the stream
+        System.out.println(sbf.getBitSize() == 100000 * StableBloomFilter.DEFAULT_COUNTER_BITS); // Expected output: True
+    }
+
+    /**
+     * Test for adding, searching and removing items in a Cuckoo Filter and for
+     * filling it up
+     */
+    private static void cuckooFilterTest() {
+        CuckooFilter cf = new CuckooFilter(1000, 0.001);
+        cf.add("alma".getBytes());
+        cf.add("körte".getBytes());
+        System.out.println(cf.include("alma".getBytes())); // Expected output: True
+        System.out.println(cf.include("szilva".getBytes())); // Expected output: False
+        System.out.println(cf.remove("alma".getBytes())); // Expected output: True
+        System.out.println(cf.include("alma".getBytes())); // Expected output: False
+
+        // Repeated puts store and count the item once
+        CuckooFilter repeated = new CuckooFilter(1000, 0.001);
+        int changed = 0;
+        for (int i = 0; i < 20; i++) {
+            if (repeated.put("alma")) {
+                changed++;
+            }
+        }
+        System.out.println(changed == 1 && repeated.getSize() == 1 && !repeated.isFull()); // Expected output: True
+
+        // Add items until the filter is full, every added item stays included
+        CuckooFilter small = new CuckooFilter(1000, 0.001);
+        int added = 0;
+        try {
+            while (true) {
+                small.add(added);
+                added++;
+            }
+        } catch (IllegalStateException ex) {
+            // full
+        }
+        int sum = 0;
+        for (int i = 0; i < added; i++) {
+            if (small.include(i)) {
+                sum++;
+            }
+        }
+        System.out.println(added >= 1000); // Expected output: True
+        System.out.println(small.isFull() && sum == added); // Expected output: True
+
+        // A full filter refuses new items without throwing and without counting them
+        long size = small.getSize();
+        System.out.println(!small.put(-1) && small.getSize() == size && !small.include(-1)); // Expected output: True
+    }
+
+    /**
+     * Test for building a Binary Fuse Filter and storing it in the binary
+     * format
+     *
+     * @throws IOException if the temporary file cannot be used
+     */
+    private static void binaryFuseFilterTest() throws IOException {
+        BinaryFuseFilter small = BinaryFuseFilter.build(new byte[][]{"alma".getBytes(), "körte".getBytes()}, 16);
+        System.out.println(small.include("alma".getBytes())); // Expected output: True
+        System.out.println(small.include("szilva".getBytes())); // Expected output: False
+
+        // Duplicated keys are stored once
+        long[] keys = new long[2718 * 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i % 2718;
+        }
+        BinaryFuseFilter bff = BinaryFuseFilter.build(keys, 8);
+        System.out.println(bff.getSize()); // Expected output: 2718
+
+        File file = File.createTempFile("bloomfilter", ".blmf");
+        file.deleteOnExit();
+        BloomFilterFormat.write(bff, file);
+        BinaryFuseFilter read = (BinaryFuseFilter) BloomFilterFormat.read(file);
+        int sum = 0;
+        for (int i = 0; i < 2718; i++) {
+            if (read.include((long) i)) {
+                sum++;
+            }
+        }
+        System.out.println(sum); // Expected output: 2718
+        System.out.println(read.include(31415L) == bff.include(31415L)); // Expected output: True
+    }
+
+    /**
+     * Test for writing and reading the Bloom Filters in the binary format
+     *
+     * @throws IOException if the temporary file cannot be used
+     */
+    private static void formatTest() throws IOException {
+        File file = File.createTempFile("bloomfilter", ".blmf");
+        file.deleteOnExit();
+
+        BloomFilter bf = new BloomFilter(1000, 0.001);
+        bf.add("alma".getBytes());
+        BloomFilterFormat.write(bf, file);
+        BloomFilter read = (BloomFilter) BloomFilterFormat.read(file);
+        System.out.println(read.include("alma".getBytes())); // Expected output: True
+        System.out.println(read.include("szilva".getBytes())); // Expected output: False
+
+        ScalableBloomFilter sbf = new ScalableBloomFilter(1000, 0.001);
+        for (int i = 0; i < 2718; i++) {
+            sbf.add(i);
+        }
+        BloomFilterFormat.write(sbf, file);
+        ScalableBloomFilter readScalable = (ScalableBloomFilter) BloomFilterFormat.read(file);
+        int sum = 0;
+        for (int i = 0; i < 2718; i++) {
+            if (readScalable.include(i)) {
+                sum++;
+            }
+        }
+        System.out.println(readScalable.getSize()); // Expected output: 2
+        System.out.println(sum); // Expected output: 2718
+
+        A2BloomFilter a2 = new A2BloomFilter(1000, 0.001, 1000);
+        a2.add("körte".getBytes());
+        BloomFilterFormat.write(a2, file);
+        a2.stopTimer();
+        A2BloomFilter readA2 = (A2BloomFilter) BloomFilterFormat.read(file);
+        System.out.println(readA2.include("körte".getBytes())); // Expected output: True
+        readA2.stopTimer();
+
+        BloomFilterFormat.write(bf, file);
+        System.out.println(BloomFilterFormat.map(file, true).include("alma".getBytes())); // Expected output: True
+    }
+
     /**
      * Test for A2 Bloom Filter
      *
@@ -160,4 +761,172 @@ public class BloomFilterTest {
 
     }
 
+    /**
+     * Test for A2 Bloom Filter aged by clock checks, the time is moved forward
+     * without waiting
+     */
+    private static void clockA2BloomFilterTest() {
+        ManualClock clock = new ManualClock();
+        // 1000 msec time to live, no timer thread is started
+        A2BloomFilter bf = new A2BloomFilter(1000, 0.001, 1000, clock);
+
+        bf.add("alma".getBytes());
+        clock.advance(750);
+        System.out.println(bf.include("alma".getBytes())); // Expected output: True
+        bf.add("körte".getBytes());
+
+        // One switch happened, the elements are in the inactive Bloom Filter
+        clock.advance(750);
+        System.out.println(bf.include("alma".getBytes())); // Expected output: True
+        System.out.println(bf.include("körte".getBytes())); // Expected output: True
+        bf.add("szilva".getBytes());
+
+        // The second switch cleared the Bloom Filter of the first two elements
+        clock.advance(700);
+        System.out.println(bf.include("alma".getBytes())); // Expected output: False
+        System.out.println(bf.include("körte".getBytes())); // Expected output: False
+        System.out.println(bf.include("szilva".getBytes())); // Expected output: True
+
+        // Several Time To Live passed without any operation
+        clock.advance(10000);
+        System.out.println(bf.include("szilva".getBytes())); // Expected output: False
+
+        // A zero Time To Live is rejected
+        boolean rejected = false;
+        try {
+            new A2BloomFilter(1000, 0.001, 0, clock);
+        } catch (IllegalArgumentException ex) {
+            rejected = true;
+        }
+        System.out.println(rejected); // Expected output: True
+    }
+
+    /**
+     * Test for Sliding Window Bloom Filter, the time is moved forward without
+     * waiting
+     */
+    private static void slidingWindowBloomFilterTest() {
+        ManualClock clock = new ManualClock();
+        // 1000 msec time to live in 4 slices, a slice lasts for 333 msec
+        SlidingWindowBloomFilter bf = new SlidingWindowBloomFilter(1000, 0.001, 1000, 4, clock);
+
+        bf.add("alma".getBytes());
+        clock.advance(900);
+        System.out.println(bf.include("alma".getBytes())); // Expected output: True
+        System.out.println(bf.include("szilva".getBytes())); // Expected output: False
+
+        // Still in the Bloom Filter after the time to live, its slice is not cleared yet
+        clock.advance(200);
+        System.out.println(bf.include("alma".getBytes())); // Expected output: True
+        bf.add("körte".getBytes());
+
+        // The slice of the first element became active and it was cleared
+        clock.advance(300);
+        System.out.println(bf.include("alma".getBytes())); // Expected output: False
+        System.out.println(bf.include("körte".getBytes())); // Expected output: True
+
+        // Several Time To Live passed without any operation
+        clock.advance(5000);
+        System.out.println(bf.include("körte".getBytes())); // Expected output: False
+
+        // A zero Time To Live is rejected
+        boolean rejected = false;
+        try {
+            new SlidingWindowBloomFilter(1000, 0.01, 0);
+        } catch (IllegalArgumentException ex) {
+            rejected = true;
+        }
+        System.out.println(rejected); // Expected output: True
+    }
+
+    /**
+     * Test for the runtime metrics and their JMX registration
+     */
+    private static void metricsTest() throws JMException {
+        ConcurrentBloomFilter bf = new ConcurrentBloomFilter(10000, 0.01);
+        // every operation is timed
+        FilterMetrics metrics = bf.enableMetrics(0);
+
+        for (int i = 0; i < 10000; i++) {
+            bf.add(i);
+        }
+        for (int i = 0; i < 20000; i++) {
+            bf.include(i);
+        }
+        System.out.println(metrics.getAdds() == 10000 && metrics.getIncludes() == 20000); // Expected output: True
+        // every stored element is found and about 1% of the others
+        System.out.println(Math.abs(metrics.getPositiveRatio() - 0.505) < 0.005); // Expected output: True
+        // the estimate from the fill ratio is close to the designed probability
+        System.out.println(Math.abs(metrics.getEstimatedFalsePositiveProbability() - 0.01) < 0.002); // Expected output: True
+        System.out.println(metrics.getAddLatency(1) > 0 && metrics.getIncludeLatency(0.99) >= metrics.getIncludeLatency(0.5)); // Expected output: True
+
+        // 2.5 Time To Live passed, the active Bloom Filter was switched twice
+        ManualClock clock = new ManualClock();
+        A2BloomFilter a2 = new A2BloomFilter(1000, 0.001, 1000, clock);
+        FilterMetrics a2Metrics = a2.enableMetrics();
+        clock.advance(2500);
+        a2.add("alma".getBytes());
+        System.out.println(a2Metrics.getRotations() == 2 && a2Metrics.getLayers() == 2); // Expected output: True
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = metrics.register("test");
+        System.out.println(server.getAttribute(name, "Adds")); // Expected output: 10000
+        bf.disableMetrics();
+        System.out.println(server.isRegistered(name)); // Expected output: False
+    }
+
+    /**
+     * Test for the distinct item, union and intersection estimates
+     */
+    private static void cardinalityTest() {
+        BloomFilter a = new BloomFilter(100000, 0.01);
+        BloomFilter b = new BloomFilter(100000, 0.01);
+        // every item is added twice, b holds the upper half of a and 25000 others
+        for (int i = 0; i < 50000; i++) {
+            a.add(i);
+            a.add(i);
+            b.add(i + 25000);
+        }
+        System.out.println(Math.abs(a.estimateCardinality() - 50000) < 500); // Expected output: True
+        System.out.println(Math.abs(a.estimateUnionCardinality(b) - 75000) < 750); // Expected output: True
+        System.out.println(Math.abs(a.estimateIntersectionCardinality(b) - 25000) < 750); // Expected output: True
+
+        // 10000 items in the layers of a Scalable Bloom Filter of 1000 capacity
+        ScalableBloomFilter sbf = new ScalableBloomFilter(1000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            sbf.add(i);
+        }
+        System.out.println(Math.abs(sbf.estimateCardinality() - 10000) < 200); // Expected output: True
+
+        // 1000 items in both generations
+        ManualClock clock = new ManualClock();
+        A2BloomFilter a2 = new A2BloomFilter(1000, 0.01, 1000, clock);
+        for (int i = 0; i < 1000; i++) {
+            a2.add(i);
+        }
+        clock.advance(1000);
+        for (int i = 1000; i < 2000; i++) {
+            a2.add(i);
+        }
+        System.out.println(Math.abs(a2.estimateCardinality() - 2000) < 60
+                && Math.abs(a2.estimateActiveCardinality() - 1000) < 30); // Expected output: True
+    }
+
+    /**
+     * Clock of the tests, it is moved forward by hand
+     */
+    private static class ManualClock implements Clock {
+
+        private long now = 0;
+
+        void advance(long millis) {
+            now += millis * 1000000L;
+        }
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    }
+
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import pintergreg.bloomfilter.BitArray;
+import pintergreg.bloomfilter.BloomFilter;
+import pintergreg.bloomfilter.LongBitArray;
+
+/**
+ * Merges 64 Bloom Filters into one, like the hourly filters of 64 workers:
+ * word by word through the BitArray interface, one union after the other,
+ * and unionAll that merges every filter into a cached range of the target,
+ * on the calling thread and on a pool. The other whole-bitvector operations
+ * are timed on the merged filter.
+ *
+ * @author Gergő Pintér
+ */
+public class BulkBenchmark {
+
+    private static final int FILTERS = 64;
+    private static final long M = 1L << 26; // 8 MiB per filter
+    private static final int K = 7;
+    private static final int ITEMS = 100000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        Random rand = new Random(42);
+        BitArray[] bitvectors = new BitArray[FILTERS];
+        BloomFilter[] filters = new BloomFilter[FILTERS];
+        for (int f = 0; f < FILTERS; f++) {
+            bitvectors[f] = new LongBitArray(M);
+            filters[f] = new BloomFilter(bitvectors[f], K);
+            for (int i = 0; i < ITEMS; i++) {
+                filters[f].add(rand.nextLong());
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool();
+        double gib = (double) FILTERS * M / 8 / (1 << 30);
+        System.out.printf("%d filters of %d MiB, pool of %d threads%n", FILTERS, M >>> 23, pool.getParallelism());
+
+        for (int round = 0; round < ROUNDS; round++) {
+            BitArray target = new LongBitArray(M);
+            long words = M >>> 6;
+            long start = System.nanoTime();
+            for (BitArray source : bitvectors) {
+                for (long w = 0; w < words; w++) {
+                    target.setWord(w, target.getWord(w) | source.getWord(w));
+                }
+            }
+            long wordByWord = System.nanoTime() - start;
+
+            BloomFilter one = new BloomFilter(M, K);
+            start = System.nanoTime();
+            for (BloomFilter filter : filters) {
+                one.union(filter);
+            }
+            long sequential = System.nanoTime() - start;
+
+            BloomFilter all = new BloomFilter(M, K);
+            start = System.nanoTime();
+            all.unionAll(filters, null);
+            long blocked = System.nanoTime() - start;
+
+            BloomFilter parallel = new BloomFilter(M, K);
+            start = System.nanoTime();
+            parallel.unionAll(filters, pool);
+            long pooled = System.nanoTime() - start;
+
+            System.out.printf("merge: word by word %.2f GiB/s, union %.2f GiB/s, unionAll %.2f GiB/s, unionAll on pool %.2f GiB/s%n",
+                    gib / (wordByWord / 1e9), gib / (sequential / 1e9), gib / (blocked / 1e9), gib / (pooled / 1e9));
+
+            start = System.nanoTime();
+            long bits = parallel.cardinality();
+            long cardinality = System.nanoTime() - start;
+            start = System.nanoTime();
+            long difference = parallel.difference(filters[0], null);
+            long diff = System.nanoTime() - start;
+            start = System.nanoTime();
+            boolean same = parallel.contentEquals(all);
+            long equal = System.nanoTime() - start;
+            start = System.nanoTime();
+            parallel.clear();
+            long clear = System.nanoTime() - start;
+            System.out.printf("\t8 MiB: popcount %.2f ms, difference %.2f ms, equality %.2f ms, clear %.2f ms (%d %d %b)%n",
+                    cardinality / 1e6, diff / 1e6, equal / 1e6, clear / 1e6, bits, difference, same);
+        }
+        pool.shutdown();
+    }
+
+}
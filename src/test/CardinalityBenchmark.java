@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import pintergreg.bloomfilter.BlockedBloomFilter;
+import pintergreg.bloomfilter.BloomFilter;
+
+/**
+ * Accuracy and speed of the cardinality estimates from the one bits: the
+ * relative error of the distinct item count, the union and the intersection
+ * at several fill ratios of the capacity, every item is added twice.
+ *
+ * @author Gergő Pintér
+ */
+public class CardinalityBenchmark {
+
+    private static final int N = 1000000;
+    private static final double P = 0.01;
+    private static final double[] FILL = {0.1, 0.5, 1.0, 2.0, 4.0};
+
+    public static void main(String[] args) {
+        System.out.println("filter\tfill\tdistinct error\tunion error\tintersection error\testimate (ms)");
+        for (double fill : FILL) {
+            int count = (int) (N * fill);
+            // a holds [0, count), b holds [count / 2, count * 3 / 2)
+            run("bloom", new BloomFilter(N, P), new BloomFilter(N, P), fill, count);
+            run("blocked", new BlockedBloomFilter(N, P), new BlockedBloomFilter(N, P), fill, count);
+        }
+    }
+
+    private static void run(String name, BloomFilter a, BloomFilter b, double fill, int count) {
+        for (int i = 0; i < count; i++) {
+            a.add(i);
+            a.add(i);
+            b.add(i + count / 2);
+        }
+
+        long start = System.nanoTime();
+        double distinct = a.estimateCardinality();
+        long elapsed = System.nanoTime() - start;
+        double union = a.estimateUnionCardinality(b);
+        double intersection = a.estimateIntersectionCardinality(b);
+
+        System.out.printf("%s\t%.1f\t%+.4f\t\t%+.4f\t\t%+.4f\t\t\t%.2f%n", name, fill,
+                distinct / count - 1, union / (count + count / 2) - 1, intersection / (count - count / 2) - 1,
+                elapsed / 1e6);
+    }
+
+}
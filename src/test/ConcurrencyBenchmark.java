@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.concurrent.CountDownLatch;
+import pintergreg.bloomfilter.BloomFilter;
+import pintergreg.bloomfilter.ConcurrentBloomFilter;
+
+/**
+ * Contention benchmark of the lock-free Concurrent Bloom Filter and a Bloom
+ * Filter guarded by synchronized blocks. Every thread adds and searches its
+ * own keys, one add per three searches.
+ *
+ * @author Gergő Pintér
+ */
+public class ConcurrencyBenchmark {
+
+    private static final int N = 4000000;
+    private static final double P = 0.001;
+    private static final int OPERATIONS = 4000000;
+    // search results are written here, so the JIT cannot drop the searches
+    private static volatile boolean sink;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+        System.out.println("threads\tsynchronized (Mops/s)\tlock-free (Mops/s)\tlost items");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            // warm up both once before measuring
+            if (threads == 1) {
+                run(new BloomFilter(N, P), true, 1);
+                run(new ConcurrentBloomFilter(N, P), false, 1);
+            }
+            double locked = run(new BloomFilter(N, P), true, threads);
+            ConcurrentBloomFilter cbf = new ConcurrentBloomFilter(N, P);
+            double lockFree = run(cbf, false, threads);
+            System.out.printf("%d\t%.2f\t\t\t%.2f\t\t\t%d%n", threads, locked, lockFree, lost(cbf, threads));
+        }
+    }
+
+    /**
+     * Runs the mixed workload on the given number of threads
+     *
+     * @param bf - the Bloom Filter under test
+     * @param lock - whether the operations are guarded by synchronized blocks
+     * @param threads - number of threads
+     * @return million operations per second
+     */
+    private static double run(final BloomFilter bf, final boolean lock, int threads) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final int operations = OPERATIONS / threads;
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            final long base = (long) t * operations;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    boolean found = false;
+                    for (int i = 0; i < operations; i++) {
+                        long key = base + i;
+                        if (lock) {
+                            synchronized (bf) {
+                                if ((i & 3) == 0) {
+                                    bf.add(key);
+                                } else {
+                                    found ^= bf.include(key);
+                                }
+                            }
+                        } else if ((i & 3) == 0) {
+                            bf.add(key);
+                        } else {
+                            found ^= bf.include(key);
+                        }
+                    }
+                    sink = found;
+                }
+            };
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        return OPERATIONS / (elapsed / 1000.0);
+    }
+
+    /**
+     * Counts the added items that the Concurrent Bloom Filter does not
+     * contain, the expected result is 0
+     */
+    private static int lost(BloomFilter bf, int threads) {
+        int operations = OPERATIONS / threads;
+        int result = 0;
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < operations; i += 4) {
+                if (!bf.include((long) t * operations + i)) {
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+
+}
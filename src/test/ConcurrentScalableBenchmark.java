@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.concurrent.CountDownLatch;
+import pintergreg.bloomfilter.AbstractBloomFilter;
+import pintergreg.bloomfilter.ConcurrentScalableBloomFilter;
+import pintergreg.bloomfilter.ScalableBloomFilter;
+
+/**
+ * Ingest benchmark of the Concurrent Scalable Bloom Filter and a Scalable
+ * Bloom Filter guarded by synchronized blocks. The first layer is small, so
+ * several layers are created while the threads are adding their own keys.
+ *
+ * @author Gergő Pintér
+ */
+public class ConcurrentScalableBenchmark {
+
+    private static final int N = 100000;
+    private static final double P = 0.001;
+    private static final int ITEMS = 4000000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+        System.out.println("threads\tsynchronized (Mops/s)\tconcurrent (Mops/s)\tlayers\tlost items\tfalse positive rate");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            // warm up both once before measuring
+            if (threads == 1) {
+                run(new ScalableBloomFilter(N, P), true, 1);
+                run(new ConcurrentScalableBloomFilter(N, P), false, 1);
+            }
+            double locked = run(new ScalableBloomFilter(N, P), true, threads);
+            ConcurrentScalableBloomFilter csbf = new ConcurrentScalableBloomFilter(N, P);
+            double concurrent = run(csbf, false, threads);
+            System.out.printf("%d\t%.2f\t\t\t%.2f\t\t\t%d\t%d\t\t%.5f%n", threads, locked, concurrent,
+                    csbf.getSize(), lost(csbf, threads), falsePositiveRate(csbf));
+        }
+    }
+
+    /**
+     * Adds the items on the given number of threads
+     *
+     * @param bf - the Bloom Filter under test
+     * @param lock - whether the adds are guarded by synchronized blocks
+     * @param threads - number of threads
+     * @return million adds per second
+     */
+    private static double run(final AbstractBloomFilter bf, final boolean lock, int threads)
+            throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final int items = ITEMS / threads;
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            final long base = (long) t * items;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int i = 0; i < items; i++) {
+                        if (lock) {
+                            synchronized (bf) {
+                                bf.add(base + i);
+                            }
+                        } else {
+                            bf.add(base + i);
+                        }
+                    }
+                }
+            };
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        return ITEMS / (elapsed / 1000.0);
+    }
+
+    /**
+     * Counts the added items that the filter does not contain, the expected
+     * result is 0
+     */
+    private static int lost(AbstractBloomFilter bf, int threads) {
+        int items = ITEMS / threads;
+        int result = 0;
+        for (long i = 0; i < (long) items * threads; i++) {
+            if (!bf.include(i)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Measures the false positive rate on keys never added, it has to stay
+     * below P
+     */
+    private static double falsePositiveRate(AbstractBloomFilter bf) {
+        int positives = 0;
+        for (long i = ITEMS; i < 2L * ITEMS; i++) {
+            if (bf.include(i)) {
+                positives++;
+            }
+        }
+        return (double) positives / ITEMS;
+    }
+
+}
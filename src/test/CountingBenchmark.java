@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.Random;
+import pintergreg.bloomfilter.BloomFilter;
+import pintergreg.bloomfilter.BloomFilterUtils;
+import pintergreg.bloomfilter.CountingBloomFilter;
+
+/**
+ * Compares the memory usage and the add, remove and projection times of the
+ * Counting Bloom Filter with the plain Bloom Filter. The number of stored
+ * elements can be given as the first argument, the default is 10 million.
+ *
+ * @author Gergő Pintér
+ */
+public class CountingBenchmark {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        Random rand = new Random(42);
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = rand.nextLong();
+        }
+        long m = BloomFilterUtils.determineSize((long) n, 0.01);
+        System.out.printf("%d items, %d positions: plain %d MiB (1 bit), counting %d MiB (4 bits)%n",
+                n, m, m / 8 >> 20, m / 2 >> 20);
+
+        for (int round = 0; round < 3; round++) {
+            BloomFilter plain = new BloomFilter(n, 0.01);
+            CountingBloomFilter counting = new CountingBloomFilter(n, 0.01);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                plain.add(keys[i]);
+            }
+            long addPlain = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                counting.add(keys[i]);
+            }
+            long addCounting = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            BloomFilter projection = counting.toBloomFilter();
+            long project = System.nanoTime() - start;
+
+            // the projection has to contain the same bits as the plain filter
+            boolean same = true;
+            for (int i = 0; i < n && same; i += 97) {
+                same = projection.include(keys[i]) && projection.include(~keys[i]) == plain.include(~keys[i]);
+            }
+
+            start = System.nanoTime();
+            int removed = 0;
+            for (int i = 0; i < n; i += 2) {
+                if (counting.remove(keys[i])) {
+                    removed++;
+                }
+            }
+            long remove = System.nanoTime() - start;
+
+            System.out.printf("round %d: add %.1f vs %.1f ns/key (plain vs counting), remove %.1f ns/key, projection %d ms, same bits %b, removed %d%n",
+                    round, (double) addPlain / n, (double) addCounting / n,
+                    (double) remove / removed, project / 1000000, same, removed);
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.Random;
+import pintergreg.bloomfilter.BloomFilter;
+import pintergreg.bloomfilter.BloomFilterUtils;
+import pintergreg.bloomfilter.CuckooFilter;
+
+/**
+ * Compares the Cuckoo Filter with the Bloom Filter at the same false positive
+ * probability: memory per item, add and search time and the measured false
+ * positive rate. The number of stored elements can be given as the first
+ * argument, the default is 10 million, the probabilities are 0.01, 0.001 and
+ * 0.0001.
+ *
+ * @author Gergő Pintér
+ */
+public class CuckooBenchmark {
+
+    private static final int QUERIES = 10000000;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        Random rand = new Random(42);
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = rand.nextLong();
+        }
+        long[] absent = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            absent[i] = rand.nextLong();
+        }
+
+        for (double p : new double[]{0.01, 0.001, 0.0001}) {
+            BloomFilter bf = new BloomFilter(n, p);
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                bf.add(keys[i]);
+            }
+            long addBloom = System.nanoTime() - start;
+
+            CuckooFilter cf = new CuckooFilter(n, p);
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                cf.add(keys[i]);
+            }
+            long addCuckoo = System.nanoTime() - start;
+
+            int positivesBloom = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                if (bf.include(absent[i])) {
+                    positivesBloom++;
+                }
+            }
+            long includeBloom = System.nanoTime() - start;
+
+            int positivesCuckoo = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                if (cf.include(absent[i])) {
+                    positivesCuckoo++;
+                }
+            }
+            long includeCuckoo = System.nanoTime() - start;
+
+            long bloomBits = BloomFilterUtils.determineSize((long) n, p);
+            System.out.printf("p=%s: bits/item %.1f vs %.1f, add %.1f vs %.1f ns, search %.1f vs %.1f ns, false positive rate %.5f vs %.5f (Bloom vs Cuckoo)%n",
+                    p, (double) bloomBits / n, (double) cf.getBitSize() / n,
+                    (double) addBloom / n, (double) addCuckoo / n,
+                    (double) includeBloom / QUERIES, (double) includeCuckoo / QUERIES,
+                    (double) positivesBloom / QUERIES, (double) positivesCuckoo / QUERIES);
+        }
+    }
+
+}
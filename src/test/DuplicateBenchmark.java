@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.Random;
+import pintergreg.bloomfilter.ScalableBloomFilter;
+
+/**
+ * Scalable Bloom Filter fed with a stream in which 70% of the adds repeat an
+ * earlier item. Only the adds changing a layer are counted, so the layers
+ * follow the distinct items. For comparison, the filter counting every add
+ * would grow like a filter given every add as a new item, that one is built
+ * too.
+ *
+ * @author Gergő Pintér
+ */
+public class DuplicateBenchmark {
+
+    private static final int N = 100000;
+    private static final double P = 0.001;
+    private static final int ADDS = 5000000;
+    private static final double DUPLICATES = 0.7;
+    private static final int QUERIES = 1000000;
+
+    public static void main(String[] args) {
+        Random rand = new Random(42);
+        long[] stream = new long[ADDS];
+        int distinct = 0;
+        for (int i = 0; i < ADDS; i++) {
+            // keys are 0, 1, 2, ... in the order of their first add
+            stream[i] = distinct > 0 && rand.nextDouble() < DUPLICATES ? rand.nextInt(distinct) : distinct++;
+        }
+
+        ScalableBloomFilter deduplicated = new ScalableBloomFilter(N, P);
+        long start = System.nanoTime();
+        for (long key : stream) {
+            deduplicated.add(key);
+        }
+        double addRate = ADDS / ((System.nanoTime() - start) / 1000.0);
+
+        ScalableBloomFilter everyAdd = new ScalableBloomFilter(N, P);
+        for (long i = 0; i < ADDS; i++) {
+            everyAdd.add(i);
+        }
+
+        System.out.printf("%d adds, %d distinct items%n", ADDS, distinct);
+        System.out.println("filter\t\tlayers\tsize (MiB)\tsearch (ns)\tfalse positive rate");
+        print("distinct counted", deduplicated, distinct, addRate);
+        print("every add counted", everyAdd, ADDS, Double.NaN);
+    }
+
+    /**
+     * Prints the layers, the memory, the search time of absent items and the
+     * false positive rate
+     *
+     * @param stored - the keys from 0 to stored - 1 are in the filter
+     */
+    private static void print(String name, ScalableBloomFilter sbf, long stored, double addRate) {
+        int falsePositives = 0;
+        long start = System.nanoTime();
+        for (long i = stored; i < stored + QUERIES; i++) {
+            if (sbf.include(i)) {
+                falsePositives++;
+            }
+        }
+        double searchTime = (System.nanoTime() - start) / (double) QUERIES;
+
+        System.out.printf("%s\t%d\t%.2f\t\t%.1f\t\t%.5f", name, sbf.getSize(), sbf.getBitSize() / 8.0 / (1 << 20),
+                searchTime, (double) falsePositives / QUERIES);
+        if (!Double.isNaN(addRate)) {
+            System.out.printf("\t(%.2f Madds/s)", addRate);
+        }
+        System.out.println();
+    }
+
+}
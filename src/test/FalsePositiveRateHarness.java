@@ -0,0 +1,453 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import pintergreg.bloomfilter.A2BloomFilter;
+import pintergreg.bloomfilter.AbstractBloomFilter;
+import pintergreg.bloomfilter.AbstractFilter;
+import pintergreg.bloomfilter.BinaryFuseFilter;
+import pintergreg.bloomfilter.BlockedBloomFilter;
+import pintergreg.bloomfilter.BloomFilter;
+import pintergreg.bloomfilter.BloomFilterUtils;
+import pintergreg.bloomfilter.Clock;
+import pintergreg.bloomfilter.ConcurrentBloomFilter;
+import pintergreg.bloomfilter.CountingBloomFilter;
+import pintergreg.bloomfilter.CuckooFilter;
+import pintergreg.bloomfilter.ExtendedBloomFilter;
+import pintergreg.bloomfilter.ScalableBloomFilter;
+import pintergreg.bloomfilter.SlidingWindowBloomFilter;
+
+/**
+ * Reproducible validation of the false positive rate of every filter type. A
+ * grid of (n, p, fill ratio) cells is run for every filter on a
+ * @{link ForkJoinPool}: n × fill items are added, then one million never
+ * added items are searched. Every cell has its own seed derived from the
+ * given seed, so the results do not depend on the number of threads.
+ *
+ * The observed false positive rate is compared with the model of the filter:
+ * (1 - e^(-k × n / m))^k (with the double hashing term) for the bitvector
+ * filters, the Poisson model of
+ * @{link BlockedBloomFilter}, the per slice model of the sliding window, the
+ * fingerprint collision probability of the Cuckoo and Binary Fuse Filters,
+ * and the design bound p for the Scalable and A2 Bloom Filters. The cell fails
+ * if the lower end of the 99.9% Wilson confidence interval is above the
+ * expected rate × (1 + tolerance), or if an added item is not found. The A2
+ * and sliding window filters are only checked up to their capacity, Cuckoo
+ * Filters stop at their capacity.
+ *
+ * Usage: FalsePositiveRateHarness [seed] [tolerance] [threads], the defaults
+ * are 42, 0.1 and the number of processors. The exit code is 1 if a cell
+ * fails.
+ *
+ * @author Gergő Pintér
+ */
+public class FalsePositiveRateHarness {
+
+    private static final long[] N = {10000, 100000, 1000000};
+    private static final double[] P = {0.01, 0.001};
+    private static final double[] FILL = {0.5, 1.0, 1.5};
+    private static final int QUERIES = 1000000;
+    // 99.9% two-sided, many cells are tested at once
+    private static final double Z = 3.29;
+    private static final int TTL = 7000;
+    private static final int SLICES = 8;
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 42;
+        double tolerance = args.length > 1 ? Double.parseDouble(args[1]) : 0.1;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        List<Callable<String>> cells = new ArrayList<>();
+        int index = 0;
+        for (Model model : MODELS) {
+            for (long n : N) {
+                for (double p : P) {
+                    for (double fill : FILL) {
+                        cells.add(new Cell(model, n, p, fill, mix(seed + index++), tolerance));
+                    }
+                }
+            }
+        }
+
+        System.out.printf("seed %d, tolerance %.2f, %d threads, %d queries per cell%n", seed, tolerance, threads, QUERIES);
+        System.out.printf("%-10s %8s %6s %5s %9s %9s %9s %21s %8s %8s  %s%n", "filter", "n", "p", "fill",
+                "stored", "expected", "observed", "99.9% interval", "add M/s", "search M/s", "result");
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        int failures = 0;
+        // the results are printed in the order of the cells
+        for (Future<String> result : pool.invokeAll(cells)) {
+            String line = result.get();
+            if (line.endsWith("FAIL")) {
+                failures++;
+            }
+            System.out.println(line);
+        }
+        pool.shutdown();
+
+        System.out.println(failures == 0 ? "\nAll cells passed" : "\n" + failures + " cells failed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * One (filter, n, p, fill ratio) combination
+     */
+    private static class Cell implements Callable<String> {
+
+        private final Model model;
+        private final long n;
+        private final double p;
+        private final double fill;
+        private final long seed;
+        private final double tolerance;
+
+        Cell(Model model, long n, double p, double fill, long seed, double tolerance) {
+            this.model = model;
+            this.n = n;
+            this.p = p;
+            this.fill = fill;
+            this.seed = seed;
+            this.tolerance = tolerance;
+        }
+
+        @Override
+        public String call() {
+            int count = (int) Math.round(n * fill);
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = key(seed, i);
+            }
+
+            long start = System.nanoTime();
+            AbstractFilter filter = model.build(n, p, keys);
+            long addTime = System.nanoTime() - start;
+            int stored = model.stored(filter, count);
+
+            boolean found = true;
+            for (int i = 0; i < stored; i++) {
+                found &= filter.include(keys[i]);
+            }
+
+            int positives = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                if (filter.include(key(seed, count + i))) {
+                    positives++;
+                }
+            }
+            long includeTime = System.nanoTime() - start;
+
+            double observed = (double) positives / QUERIES;
+            double[] interval = wilson(positives, QUERIES);
+            double expected = model.expected(n, p, stored);
+            String result;
+            if (!found) {
+                result = "FAIL";
+            } else if (model.bound && fill > 1 && !(model instanceof ScalableModel)) {
+                result = "-";
+            } else if (interval[0] > expected * (1 + tolerance)) {
+                result = "FAIL";
+            } else {
+                result = stored < count ? "full" : "ok";
+            }
+            return String.format(Locale.ROOT, "%-10s %8d %6.3f %5.1f %9d %9.6f %9.6f [%9.6f, %9.6f] %8.1f %8.1f  %s",
+                    model.name, n, p, fill, stored, expected, observed, interval[0], interval[1],
+                    stored * 1000.0 / addTime, QUERIES * 1000.0 / includeTime, result);
+        }
+    }
+
+    /**
+     * Wilson score interval of a binomial proportion
+     *
+     * @return the lower and the upper end of the interval
+     */
+    static double[] wilson(int positives, int trials) {
+        double phat = (double) positives / trials;
+        double z2 = Z * Z;
+        double center = (phat + z2 / (2 * trials)) / (1 + z2 / trials);
+        double half = Z * Math.sqrt(phat * (1 - phat) / trials + z2 / (4.0 * trials * trials)) / (1 + z2 / trials);
+        return new double[]{Math.max(0, center - half), Math.min(1, center + half)};
+    }
+
+    /**
+     * The i-th item of a cell, the finalizer of SplitMix64, distinct for
+     * distinct i
+     */
+    static long key(long seed, long i) {
+        return mix(seed + i * 0x9E3779B97F4A7C15L);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * (1 - e^(-k × n / m))^k, plus n / m^2 for double hashing: if both halves
+     * of the hash of an item are the same as the ones of a stored item modulo
+     * m, every index is the same. It matters only for small filters at low
+     * rates.
+     */
+    static double bloom(long m, int k, long stored) {
+        return Math.pow(1 - Math.exp(-(double) k * stored / m), k) + (double) stored / m / m;
+    }
+
+    /* .......... MODELS .......... */
+    private static final Model[] MODELS = {
+        new BitvectorModel("bloom"),
+        new BitvectorModel("extended"),
+        new BitvectorModel("concurrent"),
+        new BitvectorModel("counting"),
+        new Model("blocked", false) {
+            @Override
+            AbstractBloomFilter create(long n, double p) {
+                return new BlockedBloomFilter(n, p);
+            }
+
+            @Override
+            double expected(long n, double p, long stored) {
+                int k = BloomFilterUtils.determineHashNumber(BloomFilterUtils.determineSize(n, p), n);
+                return BlockedBloomFilter.falsePositiveProbability(BlockedBloomFilter.determineSize(n, p), k, stored);
+            }
+        },
+        new ScalableModel(),
+        new Model("a2", true) {
+            @Override
+            AbstractBloomFilter create(long n, double p) {
+                return new A2BloomFilter(n, p, TTL, new ManualClock());
+            }
+        },
+        new SlidingWindowModel(),
+        new CuckooModel(),
+        new Model("fuse", false) {
+            @Override
+            AbstractFilter build(long n, double p, long[] keys) {
+                return BinaryFuseFilter.build(keys, bits(p));
+            }
+
+            @Override
+            AbstractBloomFilter create(long n, double p) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            double expected(long n, double p, long stored) {
+                return Math.pow(2, -bits(p));
+            }
+
+            private int bits(double p) {
+                return p >= 1.0 / 256 ? 8 : 16;
+            }
+        }
+    };
+
+    /**
+     * Filter type of the harness and its false positive model
+     */
+    private abstract static class Model {
+
+        final String name;
+        // the expected rate is the design bound p, not a model
+        final boolean bound;
+
+        Model(String name, boolean bound) {
+            this.name = name;
+            this.bound = bound;
+        }
+
+        abstract AbstractBloomFilter create(long n, double p);
+
+        /**
+         * Creates the filter for n items and adds the keys
+         */
+        AbstractFilter build(long n, double p, long[] keys) {
+            AbstractBloomFilter result = create(n, p);
+            for (long key : keys) {
+                result.add(key);
+            }
+            return result;
+        }
+
+        /**
+         * @return the number of stored keys, it is less than the number of
+         * keys if the filter became full
+         */
+        int stored(AbstractFilter filter, int count) {
+            return count;
+        }
+
+        /**
+         * @return the expected false positive rate
+         */
+        double expected(long n, double p, long stored) {
+            return p;
+        }
+    }
+
+    /**
+     * Filters with the indexes of @{link BloomFilter}
+     */
+    private static class BitvectorModel extends Model {
+
+        BitvectorModel(String name) {
+            super(name, false);
+        }
+
+        @Override
+        AbstractBloomFilter create(long n, double p) {
+            switch (name) {
+                case "bloom":
+                    return new BloomFilter(n, p);
+                case "extended":
+                    return new ExtendedBloomFilter(n, p);
+                case "concurrent":
+                    return new ConcurrentBloomFilter(n, p);
+                default:
+                    return new CountingBloomFilter(n, p);
+            }
+        }
+
+        @Override
+        double expected(long n, double p, long stored) {
+            long m = BloomFilterUtils.determineSize(n, p);
+            return bloom(m, BloomFilterUtils.determineHashNumber(m, n), stored);
+        }
+    }
+
+    private static class ScalableModel extends Model {
+
+        ScalableModel() {
+            super("scalable", true);
+        }
+
+        @Override
+        AbstractBloomFilter create(long n, double p) {
+            return new ScalableBloomFilter(n, p);
+        }
+    }
+
+    /**
+     * The items are added evenly over the N - 1 slices of the window
+     */
+    private static class SlidingWindowModel extends Model {
+
+        SlidingWindowModel() {
+            super("sliding", true);
+        }
+
+        @Override
+        AbstractBloomFilter create(long n, double p) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        AbstractFilter build(long n, double p, long[] keys) {
+            ManualClock clock = new ManualClock();
+            SlidingWindowBloomFilter result = new SlidingWindowBloomFilter(n, p, TTL, SLICES, clock);
+            for (int s = 0; s < SLICES - 1; s++) {
+                if (s > 0) {
+                    clock.now += TTL * 1000000L / (SLICES - 1);
+                }
+                for (int i = sliceStart(keys.length, s); i < sliceStart(keys.length, s + 1); i++) {
+                    result.add(keys[i]);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        double expected(long n, double p, long stored) {
+            // the sizing of SlidingWindowBloomFilter
+            double q = 1 - Math.pow(1 - p, 1.0 / SLICES);
+            long sliceN = Math.max(1, (n + SLICES - 2) / (SLICES - 1));
+            long m = BloomFilterUtils.determineSize(sliceN, q);
+            int k = BloomFilterUtils.determineHashNumber(m, sliceN);
+            double negative = 1;
+            for (int s = 0; s < SLICES - 1; s++) {
+                negative *= 1 - bloom(m, k, sliceStart(stored, s + 1) - sliceStart(stored, s));
+            }
+            return 1 - negative;
+        }
+
+        private static int sliceStart(long count, int s) {
+            return (int) (count * s / (SLICES - 1));
+        }
+    }
+
+    /**
+     * A search compares the fingerprint with the ones in two buckets
+     */
+    private static class CuckooModel extends Model {
+
+        CuckooModel() {
+            super("cuckoo", false);
+        }
+
+        @Override
+        AbstractBloomFilter create(long n, double p) {
+            return new CuckooFilter(n, p);
+        }
+
+        @Override
+        AbstractFilter build(long n, double p, long[] keys) {
+            CuckooFilter result = new CuckooFilter(n, p);
+            for (long key : keys) {
+                if (result.isFull()) {
+                    break;
+                }
+                result.add(key);
+            }
+            return result;
+        }
+
+        @Override
+        int stored(AbstractFilter filter, int count) {
+            return (int) ((CuckooFilter) filter).getSize();
+        }
+
+        @Override
+        double expected(long n, double p, long stored) {
+            long buckets = CuckooFilter.determineBuckets(n, CuckooFilter.DEFAULT_BUCKET_SIZE);
+            int f = CuckooFilter.determineFingerprintBits(p, CuckooFilter.DEFAULT_BUCKET_SIZE);
+            // zero marks an empty slot, it is never a fingerprint
+            return 1 - Math.pow(1 - 1.0 / ((1L << f) - 1), 2.0 * stored / buckets);
+        }
+    }
+
+    /**
+     * Clock moved by hand, the time based filters do not age during a cell
+     * unless the cell moves it
+     */
+    private static class ManualClock implements Clock {
+
+        long now;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    }
+
+}
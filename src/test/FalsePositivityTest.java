@@ -26,7 +26,7 @@ import pintergreg.bloomfilter.BloomFilter;
  */
 public class FalsePositivityTest {
 
-    private static final Random rand = new Random();
+    private static final Random rand = new Random(42);
     private static final HashSet<Long> hs = new HashSet<>();
 
     public static void main(String[] args) {
@@ -98,7 +98,8 @@ public class FalsePositivityTest {
         for (int i = 0; i < n; i++) {
             t = rand.nextLong();
             if (!hs.add(t)) {
-                i++;
+                i--;
+                continue;
             }
             result[i] = t;
         }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import pintergreg.bloomfilter.BloomFilter;
+import pintergreg.bloomfilter.BloomFilterFormat;
+
+/**
+ * Compares the binary format with Java serialization on a large Bloom Filter.
+ * The bitvector size in bits can be given as the first argument, the default
+ * is 2^33 (1 GiB), it needs about 3 GiB heap.
+ *
+ * @author Gergő Pintér
+ */
+public class FormatBenchmark {
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        long m = args.length > 0 ? Long.parseLong(args[0]) : 1L << 33;
+        BloomFilter bf = new BloomFilter(m, 7);
+        for (long i = 0; i < m / 20; i++) {
+            bf.add(i);
+        }
+
+        File file = File.createTempFile("bloomfilter", ".bin");
+        file.deleteOnExit();
+
+        long start = System.nanoTime();
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeObject(bf);
+        }
+        long serializationWrite = System.nanoTime() - start;
+        long serializationSize = file.length();
+
+        start = System.nanoTime();
+        BloomFilter deserialized;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            deserialized = (BloomFilter) in.readObject();
+        }
+        long serializationRead = System.nanoTime() - start;
+        deserialized = null;
+
+        start = System.nanoTime();
+        BloomFilterFormat.write(bf, file);
+        long formatWrite = System.nanoTime() - start;
+        long formatSize = file.length();
+
+        start = System.nanoTime();
+        BloomFilter read = (BloomFilter) BloomFilterFormat.read(file);
+        long formatRead = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        BloomFilter mapped = BloomFilterFormat.map(file, true);
+        long formatMap = System.nanoTime() - start;
+
+        System.out.println("\t\t\twrite (ms)\tread (ms)\tsize (bytes)");
+        System.out.printf("Java serialization\t%d\t\t%d\t\t%d%n", serializationWrite / 1000000, serializationRead / 1000000, serializationSize);
+        System.out.printf("binary format\t\t%d\t\t%d\t\t%d%n", formatWrite / 1000000, formatRead / 1000000, formatSize);
+        System.out.printf("memory-mapped open\t\t\t%d%n", formatMap / 1000000);
+        // both should be True
+        System.out.println(read.include(m / 40) + " " + mapped.include(m / 40));
+    }
+
+}
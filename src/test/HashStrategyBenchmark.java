@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.Random;
+import pintergreg.bloomfilter.BloomFilter;
+import pintergreg.bloomfilter.HashStrategy;
+
+/**
+ * Compares the built-in hash strategies on Bloom Filters of the same size:
+ * the time of adding and searching Long and 64 byte keys and the measured false
+ * positive rate. The original index mapping of MurmurHash64A divides once per
+ * probe, the others use multiply-shift.
+ *
+ * @author Gergő Pintér
+ */
+public class HashStrategyBenchmark {
+
+    private static final int N = 2000000;
+    private static final double P = 0.01;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        Random rand = new Random(42);
+        long[] keys = new long[N];
+        long[] absent = new long[N];
+        byte[][] strings = new byte[N][64];
+        for (int i = 0; i < N; i++) {
+            keys[i] = rand.nextLong();
+            absent[i] = rand.nextLong();
+            rand.nextBytes(strings[i]);
+        }
+
+        HashStrategy[] strategies = {HashStrategy.MURMUR_HASH_64A, HashStrategy.MURMUR_HASH_3, HashStrategy.XXHASH_64};
+        for (int round = 0; round < ROUNDS; round++) {
+            for (HashStrategy strategy : strategies) {
+                BloomFilter bf = new BloomFilter(N, P, strategy);
+                long start = System.nanoTime();
+                for (int i = 0; i < N; i++) {
+                    bf.add(keys[i]);
+                }
+                long add = System.nanoTime() - start;
+
+                int positives = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < N; i++) {
+                    if (bf.include(absent[i])) {
+                        positives++;
+                    }
+                }
+                long include = System.nanoTime() - start;
+
+                long sum = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < N; i++) {
+                    sum += strategy.hash(strings[i]);
+                }
+                long hash = System.nanoTime() - start;
+
+                System.out.printf("%-13s add %5.1f ns, search %5.1f ns, 64 byte hash %5.1f ns, false positive rate %.5f (%d)%n",
+                        strategy, (double) add / N, (double) include / N, (double) hash / N,
+                        (double) positives / N, sum & 1);
+            }
+        }
+    }
+
+}
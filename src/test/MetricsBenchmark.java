@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.concurrent.CountDownLatch;
+import pintergreg.bloomfilter.ConcurrentBloomFilter;
+import pintergreg.bloomfilter.FilterMetrics;
+
+/**
+ * Overhead of the runtime metrics on the Concurrent Bloom Filter: the same
+ * mixed workload as @{link ConcurrencyBenchmark}, one add per three searches,
+ * without metrics, with the default sampling and with every operation timed.
+ *
+ * @author Gergő Pintér
+ */
+public class MetricsBenchmark {
+
+    private static final int N = 4000000;
+    private static final double P = 0.001;
+    private static final int OPERATIONS = 8000000;
+    private static final int ROUNDS = 3;
+    // search results are written here, so the JIT cannot drop the searches
+    private static volatile boolean sink;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+        System.out.println("threads\tno metrics (Mops/s)\tsampled (Mops/s)\tevery op timed (Mops/s)");
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                double off = run(new ConcurrentBloomFilter(N, P), threads);
+
+                ConcurrentBloomFilter sampled = new ConcurrentBloomFilter(N, P);
+                FilterMetrics metrics = sampled.enableMetrics();
+                double on = run(sampled, threads);
+
+                ConcurrentBloomFilter timed = new ConcurrentBloomFilter(N, P);
+                timed.enableMetrics(0);
+                double all = run(timed, threads);
+
+                System.out.printf("%d\t%.2f\t\t\t%.2f\t\t\t%.2f%n", threads, off, on, all);
+                if (round == ROUNDS - 1) {
+                    System.out.printf("\tsampled add p50 %d ns, p99 %d ns, search p50 %d ns, p99 %d ns%n",
+                            metrics.getAddLatencyP50(), metrics.getAddLatencyP99(),
+                            metrics.getIncludeLatencyP50(), metrics.getIncludeLatencyP99());
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the mixed workload on the given number of threads
+     *
+     * @param bf - the Bloom Filter under test
+     * @param threads - number of threads
+     * @return million operations per second
+     */
+    private static double run(final ConcurrentBloomFilter bf, int threads) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final int operations = OPERATIONS / threads;
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            final long base = (long) t * operations;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    boolean found = false;
+                    for (int i = 0; i < operations; i++) {
+                        long key = base + i;
+                        if ((i & 3) == 0) {
+                            bf.add(key);
+                        } else {
+                            found ^= bf.include(key);
+                        }
+                    }
+                    sink = found;
+                }
+            };
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        return OPERATIONS / (elapsed / 1000.0);
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import pintergreg.bloomfilter.BloomFilter;
+import pintergreg.bloomfilter.ParallelBloomFilterBuilder;
+
+/**
+ * Compares building a Bloom Filter on one thread with the two modes of
+ * @{link ParallelBloomFilterBuilder}. The number of stored elements can be
+ * given as the first argument, the default is 50 million, the number of
+ * threads as the second one, the default is the number of processors.
+ *
+ * @author Gergő Pintér
+ */
+public class ParallelBuildBenchmark {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 50000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Random rand = new Random(42);
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = rand.nextLong();
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            BloomFilter single = new BloomFilter(n, 0.01);
+            single.addAll(keys);
+            long timeSingle = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            BloomFilter local = new ParallelBloomFilterBuilder(n, 0.01, pool, false).build(keys);
+            long timeLocal = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            BloomFilter shared = new ParallelBloomFilterBuilder(n, 0.01, pool, true).build(keys);
+            long timeShared = System.nanoTime() - start;
+
+            int found = 0;
+            for (int i = 0; i < n; i += 1000) {
+                if (local.include(keys[i]) && shared.include(keys[i])) {
+                    found++;
+                }
+            }
+
+            System.out.printf("round %d, %d threads: one thread %d ms, thread-local %d ms, shared %d ms, found %d of %d%n",
+                    round, threads, timeSingle / 1000000, timeLocal / 1000000, timeShared / 1000000,
+                    found, (n + 999) / 1000);
+        }
+        pool.shutdown();
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.nio.ByteBuffer;
+import pintergreg.bloomfilter.ExtendedBloomFilter;
+import pintergreg.bloomfilter.PartitionedBloomFilter;
+
+/**
+ * Compares the Partitioned Bloom Filter with the Bloom Filter on Long keys:
+ * the original way of byte array keys (the key is converted to bytes for
+ * every search), the allocation free single searches and the probe-major
+ * batch searches of both layouts. Half of the searched keys are stored.
+ *
+ * @author Gergő Pintér
+ */
+public class PartitionedBenchmark {
+
+    private static final int N = 8000000;
+    private static final double P = 0.01;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        long[] keys = new long[N];
+        long[] queries = new long[N];
+        for (int i = 0; i < N; i++) {
+            keys[i] = i * 0x9E3779B97F4A7C15L;
+            // every second query is a stored key
+            queries[i] = (i & 1) == 0 ? keys[i] : ~keys[i];
+        }
+        boolean[] result = new boolean[N];
+
+        ExtendedBloomFilter bf = new ExtendedBloomFilter(N, P);
+        PartitionedBloomFilter pbf = new PartitionedBloomFilter(N, P);
+        long start = System.nanoTime();
+        bf.addAll(keys);
+        long bfAdd = System.nanoTime() - start;
+        start = System.nanoTime();
+        pbf.addAll(keys);
+        long pbfAdd = System.nanoTime() - start;
+        System.out.printf("batch add: bloom %.1f ns, partitioned %.1f ns%n", (double) bfAdd / N, (double) pbfAdd / N);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            int found = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < N; i++) {
+                byte[] key = ByteBuffer.allocate(8).putLong(queries[i]).array();
+                if (bf.include(key)) {
+                    found++;
+                }
+            }
+            long bytes = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < N; i++) {
+                if (bf.include(queries[i])) {
+                    found++;
+                }
+            }
+            long single = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            bf.includeAll(queries, result);
+            long batch = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < N; i++) {
+                if (pbf.include(queries[i])) {
+                    found++;
+                }
+            }
+            long partitionedSingle = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            pbf.includeAll(queries, result);
+            long partitionedBatch = System.nanoTime() - start;
+
+            System.out.printf("search: bytes %.1f ns, bloom %.1f ns, bloom batch %.1f ns, "
+                    + "partitioned %.1f ns, partitioned batch %.1f ns (%d)%n",
+                    (double) bytes / N, (double) single / N, (double) batch / N,
+                    (double) partitionedSingle / N, (double) partitionedBatch / N, found & 1);
+        }
+    }
+
+}
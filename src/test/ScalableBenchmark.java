@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.Random;
+import pintergreg.bloomfilter.ScalableBloomFilter;
+
+/**
+ * Compares the geometric growth of the Scalable Bloom Filter with layers of
+ * the same size (growth factor and tightening ratio 1). Memory, search time
+ * and false positive rate are reported at 1x, 10x and 100x the initial
+ * capacity, which can be given as the first argument, the default is 100
+ * thousand at 0.01 false positive probability.
+ *
+ * @author Gergő Pintér
+ */
+public class ScalableBenchmark {
+
+    private static final int QUERIES = 1000000;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        double p = 0.01;
+
+        measure("geometric (s=2, r=0.9)", new ScalableBloomFilter(n, p), n);
+        measure("same size (s=1, r=1)", new ScalableBloomFilter(n, p, 1, 1, false), n);
+    }
+
+    private static void measure(String name, ScalableBloomFilter sbf, int n) {
+        Random rand = new Random(42);
+        long added = 0;
+        System.out.println(name);
+
+        for (int multiple = 1; multiple <= 100; multiple *= 10) {
+            for (; added < (long) multiple * n; added++) {
+                sbf.add(rand.nextLong());
+            }
+
+            // the keys are replayed to search stored items
+            Random replay = new Random(42);
+            long[] stored = new long[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                stored[i] = replay.nextLong();
+            }
+            long[] absent = new long[QUERIES];
+            Random other = new Random(4242);
+            for (int i = 0; i < QUERIES; i++) {
+                absent[i] = other.nextLong();
+            }
+
+            int hits = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                if (sbf.include(stored[(int) (i % added)])) {
+                    hits++;
+                }
+            }
+            long timeStored = System.nanoTime() - start;
+
+            int falsePositives = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                if (sbf.include(absent[i])) {
+                    falsePositives++;
+                }
+            }
+            long timeAbsent = System.nanoTime() - start;
+
+            System.out.printf("  %3dx: %d layers, %.2f MiB, %.1f bits/item, stored %.1f ns (%d found), absent %.1f ns, false positive rate %.5f%n",
+                    multiple, sbf.getSize(), sbf.getBitSize() / 8.0 / (1 << 20), (double) sbf.getBitSize() / added,
+                    (double) timeStored / QUERIES, hits, (double) timeAbsent / QUERIES,
+                    (double) falsePositives / QUERIES);
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 Gergő Pintér.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.Random;
+import pintergreg.bloomfilter.StableBloomFilter;
+
+/**
+ * Duplicate detection with Stable Bloom Filters of the same memory and
+ * different counter sizes. Half of the stream repeats an item from the last
+ * WINDOW items, the other half is new. A new item reported as seen is a
+ * false positive, a repeated item reported as new is a false negative.
+ *
+ * @author Gergő Pintér
+ */
+public class StableBenchmark {
+
+    private static final long MEMORY_BITS = 8L << 20;
+    private static final double P = 0.01;
+    private static final int ITEMS = 10000000;
+    private static final int WINDOW = 100000;
+
+    public static void main(String[] args) {
+        Random rand = new Random(42);
+        long[] stream = new long[ITEMS];
+        boolean[] repeated = new boolean[ITEMS];
+        long next = 0;
+        for (int i = 0; i < ITEMS; i++) {
+            repeated[i] = i >= WINDOW && rand.nextBoolean();
+            stream[i] = repeated[i] ? stream[i - 1 - rand.nextInt(WINDOW)] : next++;
+        }
+
+        System.out.printf("%d items, %d new, duplicates from the last %d items, %d KiB%n", ITEMS, next, WINDOW,
+                MEMORY_BITS / 8 / 1024);
+        System.out.println("counter bits\tk\tdecrements\tfalse positive rate (stable)\tfalse negative rate\tMadds/s");
+        for (int bits = 1; bits <= 8; bits <<= 1) {
+            long m = MEMORY_BITS / bits;
+            int k = Math.max(1, (int) Math.ceil(Math.log(1 / P) / Math.log(2)));
+            StableBloomFilter sbf = new StableBloomFilter(m, k, bits, P);
+
+            long falsePositives = 0;
+            long falseNegatives = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < ITEMS; i++) {
+                boolean seen = sbf.addAndCheck(stream[i]);
+                if (seen && !repeated[i]) {
+                    falsePositives++;
+                } else if (!seen && repeated[i]) {
+                    falseNegatives++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%d\t\t%d\t%d\t\t%.5f (%.5f)\t\t%.5f\t\t\t%.2f%n", bits, k, sbf.getDecrements(),
+                    (double) falsePositives / next, sbf.getStableFalsePositiveProbability(),
+                    (double) falseNegatives / (ITEMS - next), ITEMS / (elapsed / 1000.0));
+        }
+    }
+
+}